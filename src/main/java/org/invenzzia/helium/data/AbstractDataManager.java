@@ -15,21 +15,56 @@
  */
 package org.invenzzia.helium.data;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.invenzzia.helium.data.interfaces.ICRUDManager;
+import org.invenzzia.helium.data.interfaces.IFold;
 import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordListener;
+import org.invenzzia.helium.data.interfaces.IRecordStorage;
+import org.invenzzia.helium.data.storage.FrozenRecordStorage;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+import org.invenzzia.helium.data.utils.FootprintUtils;
 import org.invenzzia.helium.exception.ModelException;
 
 /**
  * The data manager is used for a custom semi-persistence solutions for in-memory
  * object graphs creating a data model.
  * 
+ * <p>By default, the records are kept in a {@link LongRecordMap} that preserves the
+ * insertion order. Managers that rarely remove records can pass a
+ * {@link org.invenzzia.helium.data.storage.DenseRecordStorage} to the constructor
+ * to index the records directly by their auto-incremented IDs.</p>
+ * 
+ * <p>Other lookups can be sped up by registering secondary indexes with
+ * {@link #registerIndex(String, Function)} for equality lookups and with
+ * {@link #registerRangeIndex(String, Function)} for range and top-N queries. The indexes are maintained automatically
+ * by all the operations, provided that every modification of the indexed properties
+ * is reported with {@link #updateItem}. The same applies to the aggregate views
+ * registered with {@link #registerView}.</p>
+ * 
+ * <p>Business keys can be declared unique with {@link #registerUniqueIndex}. The
+ * constraint is checked with a single hash lookup by every operation that adds
+ * or updates the records, and the violations are reported as {@link ModelException}.</p>
+ * 
+ * <p>References to the records of other managers are declared with
+ * {@link #registerForeignKey}. The child manager verifies that the referenced
+ * records exist, and the parent manager restricts or cascades the removals.</p>
+ * 
  * @param R The type of records stored in the data manager.
  * @author Tomasz Jędrzejewski
  */
@@ -41,10 +76,68 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	/**
 	 * Stores all the records.
 	 */
-	private Map<Long, R> records;
+	private IRecordStorage<R> records;
+	/**
+	 * Secondary indexes. Created on the first registration.
+	 */
+	private Map<String, RecordIndex<R, ?>> indexes;
+	/**
+	 * Unique indexes checked before adding and updating the records. Created on the
+	 * first registration.
+	 */
+	private List<HashIndex<R>> constraints;
+	/**
+	 * Foreign keys of this manager's records. Created on the first registration.
+	 */
+	private List<ForeignKey<R, ?>> foreignKeys;
+	/**
+	 * Foreign keys that refer to this manager's records. Created on the first
+	 * registration.
+	 */
+	private List<ForeignKey<?, R>> references;
+	/**
+	 * Records of this manager removed by the cascade in progress, or null.
+	 */
+	private List<R> cascadeRemovals;
+	/**
+	 * Records of this manager updated by the cascade in progress, or null.
+	 */
+	private List<R> cascadeUpdates;
+	/**
+	 * Aggregate views. Created on the first registration.
+	 */
+	private Map<String, AggregateView<R, ?, ?, ?>> views;
+	/**
+	 * Immutable snapshot of the records returned by {@link #getRecords()}. It is
+	 * dropped by every modification, and built again on the first request.
+	 */
+	private List<R> snapshot;
+	/**
+	 * Listeners notified about the successful modifications. Created on the first
+	 * registration.
+	 */
+	private List<IRecordListener<? super R>> listeners;
+	/**
+	 * Change feed. Created on the first request.
+	 */
+	private ChangeFeed<R> changeFeed;
+	/**
+	 * Whether the manager has been frozen.
+	 */
+	private boolean frozen;
 	
 	public AbstractDataManager() {
-		this.records = new LinkedHashMap<>();
+		this.records = new LongRecordMap<>();
+	}
+	
+	/**
+	 * Creates a data manager that keeps the records in the given storage.
+	 * 
+	 * @param storage Empty record storage.
+	 */
+	public AbstractDataManager(IRecordStorage<R> storage) {
+		Preconditions.checkArgument(Preconditions.checkNotNull(storage).size() == 0, "The record storage must be empty.");
+		this.records = storage;
 	}
 	
 	/**
@@ -54,6 +147,7 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	 * @param nextId 
 	 */
 	public final void setNextId(long nextId) {
+		this.checkWritable();
 		this.nextId = nextId;
 	}
 	
@@ -74,6 +168,7 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	 */
 	@Override
 	public final void addItem(R mot) throws ModelException {
+		this.checkWritable();
 		if(mot.getId() != IIdentifiable.NEUTRAL_ID) {
 			throw new IllegalArgumentException("Cannot add a previously added record.");
 		}
@@ -81,22 +176,105 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 			mot.setId(this.nextId++);
 
 			this.beforeCreate(mot);
+			this.checkConstraints(mot);
 			this.records.put(mot.getId(), mot);
+			this.snapshot = null;
+			this.indexCreated(mot);
 			this.afterCreate(mot);
 		} catch(ModelException exception) {
 			this.nextId--;
 			throw exception;
 		}
+		this.notifyCreated(mot);
 	}
 	
 	/**
-	 * Updates the internal data structures, when the record is changed.
+	 * Adds a group of new items to the manager. A block of consecutive IDs is reserved
+	 * for the whole group, and the batch hooks are called once. If the batch is
+	 * rejected, the ID counter is rolled back and no item is added.
+	 * 
+	 * @param items The new items to add.
+	 */
+	@Override
+	public final void addAll(Collection<? extends R> items) throws ModelException {
+		this.checkWritable();
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+				throw new IllegalArgumentException("Cannot add a previously added record.");
+			}
+		}
+		long firstId = this.nextId;
+		try {
+			this.nextId += batch.size();
+			long id = firstId;
+			for(R item: batch) {
+				item.setId(id++);
+			}
+			
+			this.beforeCreateBatch(batch);
+			this.checkBatchConstraints(batch);
+			this.records.ensureCapacity(this.records.size() + batch.size());
+			for(R item: batch) {
+				this.records.put(item.getId(), item);
+				this.indexCreated(item);
+			}
+			this.snapshot = null;
+			this.afterCreateBatch(batch);
+		} catch(ModelException exception) {
+			this.nextId = firstId;
+			throw exception;
+		}
+		for(R item: batch) {
+			this.notifyCreated(item);
+		}
+	}
+	
+	/**
+	 * Updates the internal data structures, when the record is changed. If the new
+	 * key of the record violates a unique constraint, the indexes are left untouched,
+	 * and the caller is responsible for reverting the change of the record.
 	 * 
 	 * @throws ModelException Problems with the data integrity.
 	 * @param mot Changed record.
 	 */
 	@Override
-	public void updateItem(R mot) throws ModelException {
+	public final void updateItem(R mot) throws ModelException {
+		this.checkWritable();
+		R stored = this.records.get(mot.getId());
+		if(null == stored || stored != mot) {
+			throw new ModelException("The record with ID #"+mot.getId()+" does not exist.");
+		}
+		this.beforeUpdate(mot);
+		this.checkConstraints(mot);
+		this.indexUpdated(mot);
+		this.afterUpdate(mot);
+		this.notifyUpdated(mot);
+	}
+	
+	/**
+	 * Updates the internal data structures, when a group of records is changed. The
+	 * batch hooks are called once. If the batch is rejected, the indexes are left
+	 * untouched, and the caller is responsible for reverting the changes of the
+	 * records.
+	 * 
+	 * @throws ModelException Problems with the data integrity.
+	 * @param items Changed records.
+	 */
+	public final void updateAll(Collection<? extends R> items) throws ModelException {
+		this.checkWritable();
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			R stored = this.records.get(item.getId());
+			if(null == stored || stored != item) {
+				throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+			}
+		}
+		Set<Object> updating = Sets.newIdentityHashSet();
+		updating.addAll(batch);
+		this.beforeUpdateBatch(batch);
+		this.checkUpdateConstraints(batch, updating);
+		this.applyUpdates(batch);
 	}
 	
 	/**
@@ -106,13 +284,23 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	 */
 	@Override
 	public final void removeItem(long id) throws ModelException {
+		this.checkWritable();
 		R item = this.records.get(id);
 		if(null == item) {
 			throw new ModelException("The record with ID #"+id+" does not exist.");
 		}
-		this.beforeRemove(item);
+		Cascade cascade = this.checkRemoval(ImmutableList.of(item));
+		try {
+			this.beforeRemove(item);
+			this.applyRemoval(cascade);
+		} finally {
+			this.releaseRemoval(cascade);
+		}
 		this.records.remove(id);
+		this.snapshot = null;
+		this.indexRemoved(item);
 		this.afterRemove(item);
+		this.notifyRemoved(item);
 	}
 	
 	/**
@@ -122,22 +310,70 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	 */
 	@Override
 	public final void removeItem(R mot) throws ModelException {
+		this.checkWritable();
 		R stored = this.records.get(mot.getId());
 		if(null == stored || stored != mot) {
 			throw new ModelException("The record with ID #"+mot.getId()+" does not exist.");
 		}
-		this.beforeRemove(mot);
+		Cascade cascade = this.checkRemoval(ImmutableList.of(mot));
+		try {
+			this.beforeRemove(mot);
+			this.applyRemoval(cascade);
+		} finally {
+			this.releaseRemoval(cascade);
+		}
 		this.records.remove(mot.getId());
+		this.snapshot = null;
+		this.indexRemoved(mot);
 		this.afterRemove(mot);
+		this.notifyRemoved(mot);
 	}
 	
 	/**
-	 * Returns all the means of transport.
+	 * Removes a group of records. The batch hooks are called once, and if the batch
+	 * is rejected, no record is removed.
+	 * 
+	 * @param items The records to remove.
+	 */
+	@Override
+	public final void removeAll(Collection<? extends R> items) throws ModelException {
+		this.checkWritable();
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			R stored = this.records.get(item.getId());
+			if(null == stored || stored != item) {
+				throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+			}
+		}
+		Cascade cascade = this.checkRemoval(batch);
+		try {
+			this.beforeRemoveBatch(batch);
+			this.applyRemoval(cascade);
+		} finally {
+			this.releaseRemoval(cascade);
+		}
+		for(R item: batch) {
+			this.records.remove(item.getId());
+			this.indexRemoved(item);
+		}
+		this.snapshot = null;
+		this.afterRemoveBatch(batch);
+		for(R item: batch) {
+			this.notifyRemoved(item);
+		}
+	}
+	
+	/**
+	 * Returns all the means of transport. The list is built at most once between
+	 * two modifications of the manager; until then, the same instance is returned.
 	 * 
 	 * @return Immutable list of means of transport.
 	 */
 	public final List<R> getRecords() {
-		return ImmutableList.copyOf(this.records.values());
+		if(null == this.snapshot) {
+			this.snapshot = ImmutableList.copyOf(this.records);
+		}
+		return this.snapshot;
 	}
 	
 	/**
@@ -149,6 +385,98 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 		return this.records.size();
 	}
 	
+	/**
+	 * Reclaims the space left in the storage by the removed records. The method may
+	 * be costly, so it shall be called after removing large groups of records.
+	 */
+	public final void compactStorage() {
+		this.records.compact();
+	}
+	
+	/**
+	 * Turns the manager into the read-only mode for good. The records are moved
+	 * into a {@link FrozenRecordStorage}: two sorted arrays with the IDs and the
+	 * records, and the record list is built in advance. Afterwards, every attempt
+	 * to modify the manager, or to register a new index, throws
+	 * {@link IllegalStateException}, and any number of threads can read the manager
+	 * without synchronization, once it has been safely published to them, e.g.
+	 * through a final or volatile field.
+	 * 
+	 * <p>The change feed shall be requested before freezing, if needed.</p>
+	 */
+	public final void freeze() {
+		if(!this.frozen) {
+			this.records = new FrozenRecordStorage<>(this.records, this.records.size());
+			this.snapshot = ImmutableList.copyOf(this.records);
+			this.frozen = true;
+		}
+	}
+	
+	/**
+	 * Returns true, if the manager has been frozen.
+	 * 
+	 * @return Whether the manager is read-only.
+	 */
+	public final boolean isFrozen() {
+		return this.frozen;
+	}
+	
+	/**
+	 * Prepares the storage for holding the given number of additional records.
+	 * 
+	 * @param capacity Number of records about to be added.
+	 */
+	final void reserveCapacity(int capacity) {
+		this.records.ensureCapacity(this.records.size() + capacity);
+	}
+	
+	/**
+	 * Registers a listener notified about every successful creation, update and
+	 * removal of a record. The listeners are called after the hooks, and are not
+	 * notified about the objects added with {@link #addObject}.
+	 * 
+	 * @param listener Record listener.
+	 */
+	public final void addRecordListener(IRecordListener<? super R> listener) {
+		if(null == this.listeners) {
+			this.listeners = new ArrayList<>();
+		}
+		this.listeners.add(Preconditions.checkNotNull(listener));
+	}
+	
+	/**
+	 * Unregisters the record listener.
+	 * 
+	 * @param listener Record listener.
+	 */
+	public final void removeRecordListener(IRecordListener<? super R> listener) {
+		if(null != this.listeners) {
+			this.listeners.remove(listener);
+		}
+	}
+	
+	/**
+	 * Returns the feed of the modifications of this manager, so that the other
+	 * components can find out what has changed without scanning all the records.
+	 * The feed is created on the first call, and publishes the modifications made
+	 * since then.
+	 * 
+	 * <p>Like the rest of the manager, this method is not thread-safe, because the
+	 * first call registers the feed as a listener. It must be called on the thread
+	 * that modifies the manager, or before the manager is shared with the other
+	 * threads. Only the returned feed can be read by the subscribers on the other
+	 * threads.</p>
+	 * 
+	 * @return Change feed.
+	 */
+	public final ChangeFeed<R> getChangeFeed() {
+		if(null == this.changeFeed) {
+			this.changeFeed = new ChangeFeed<>();
+			this.addRecordListener(this.changeFeed);
+		}
+		return this.changeFeed;
+	}
+	
 	/**
 	 * Filters the means of transport that match the specified condition.
 	 * 
@@ -157,7 +485,7 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	 */
 	public final List<R> filter(Predicate<R> predicate) {
 		List<R> results = new LinkedList<>();
-		for(R mot: this.records.values()) {
+		for(R mot: this.records) {
 			if(predicate.apply(mot)) {
 				results.add(mot);
 			}
@@ -165,6 +493,22 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 		return results;
 	}
 	
+	/**
+	 * Starts a lazy query over all the records. The sequential queries iterate
+	 * directly over the storage, and the parallel queries split the snapshot
+	 * returned by {@link #getRecords()}.
+	 * 
+	 * @return New query.
+	 */
+	public final Query<R> query() {
+		return new Query<>(this.records, new Supplier<List<R>>() {
+			@Override
+			public List<R> get() {
+				return getRecords();
+			}
+		});
+	}
+	
 	/**
 	 * Finds a single record with the given ID.
 	 * 
@@ -193,6 +537,283 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	protected void afterCreate(R item) {
 	}
 	
+	/**
+	 * Registers a new secondary hash index. The index is built from the current
+	 * records, and then maintained automatically.
+	 * 
+	 * @param name Unique index name.
+	 * @param keyExtractor Computes the index key of the record. Records with the null key are not indexed.
+	 * @return The new index.
+	 */
+	public final HashIndex<R> registerIndex(String name, Function<? super R, ?> keyExtractor) {
+		HashIndex<R> index = new HashIndex<>(name, keyExtractor);
+		this.addIndex(index);
+		return index;
+	}
+	
+	/**
+	 * Registers a new unique hash index. Adding or updating a record whose key is
+	 * already used by another record fails with {@link ModelException}. The check
+	 * is done after {@link #beforeCreate} and {@link #beforeUpdate}, so that the hooks
+	 * can still compute the key.
+	 * 
+	 * @param name Unique index name.
+	 * @param keyExtractor Computes the index key of the record. Records with the null key are not constrained.
+	 * @return The new index.
+	 * @throws IllegalArgumentException If the current records already contain duplicated keys.
+	 */
+	public final HashIndex<R> registerUniqueIndex(String name, Function<? super R, ?> keyExtractor) {
+		HashIndex<R> index = new HashIndex<>(name, keyExtractor, true);
+		this.addIndex(index);
+		if(null == this.constraints) {
+			this.constraints = new ArrayList<>();
+		}
+		this.constraints.add(index);
+		return index;
+	}
+	
+	/**
+	 * Registers a foreign key from the records of this manager to the records of
+	 * the parent manager. The reference is read from the {@link Parent} field of
+	 * the record, and the reverse index is registered under the name of the key.
+	 * 
+	 * @param name Unique key name.
+	 * @param parentManager Manager of the referenced records.
+	 * @param field Returns the reference field of the record.
+	 * @param rule What happens to the records, when their parent is removed.
+	 * @return The new foreign key.
+	 * @throws IllegalArgumentException If a current record refers to a missing parent.
+	 */
+	public final <P extends IIdentifiable> ForeignKey<R, P> registerForeignKey(String name, AbstractDataManager<P> parentManager, Function<? super R, Parent<P>> field, ForeignKey.Rule rule) {
+		ForeignKey<R, P> key = new ForeignKey<>(name, this, parentManager, field, rule);
+		parentManager.checkWritable();
+		for(R record: this.records) {
+			try {
+				key.checkReference(record);
+			} catch(ModelException exception) {
+				throw new IllegalArgumentException(exception.getMessage(), exception);
+			}
+		}
+		this.addIndex(key.getIndex());
+		if(null == this.foreignKeys) {
+			this.foreignKeys = new ArrayList<>();
+		}
+		this.foreignKeys.add(key);
+		if(null == parentManager.references) {
+			parentManager.references = new ArrayList<>();
+		}
+		parentManager.references.add(key);
+		return key;
+	}
+	
+	/**
+	 * Registers a new secondary range index that sorts the records by the natural
+	 * order of their keys.
+	 * 
+	 * @param name Unique index name.
+	 * @param keyExtractor Computes the index key of the record. Records with the null key are not indexed.
+	 * @return The new index.
+	 */
+	public final <K extends Comparable<? super K>> RangeIndex<R, K> registerRangeIndex(String name, Function<? super R, ? extends K> keyExtractor) {
+		return this.registerRangeIndex(name, keyExtractor, Ordering.<K>natural());
+	}
+	
+	/**
+	 * Registers a new secondary range index that sorts the records by their keys
+	 * with the given comparator.
+	 * 
+	 * @param name Unique index name.
+	 * @param keyExtractor Computes the index key of the record. Records with the null key are not indexed.
+	 * @param comparator Key comparator.
+	 * @return The new index.
+	 */
+	public final <K> RangeIndex<R, K> registerRangeIndex(String name, Function<? super R, ? extends K> keyExtractor, Comparator<? super K> comparator) {
+		RangeIndex<R, K> index = new RangeIndex<>(name, keyExtractor, comparator);
+		this.addIndex(index);
+		return index;
+	}
+	
+	/**
+	 * Returns the range index with the given name.
+	 * 
+	 * @param name Index name.
+	 * @return Range index.
+	 */
+	public final <K> RangeIndex<R, K> getRangeIndex(String name) {
+		RecordIndex<R, ?> index = this.getIndex(name);
+		if(!(index instanceof RangeIndex)) {
+			throw new IllegalArgumentException("Unknown range index: '"+name+"'.");
+		}
+		return (RangeIndex<R, K>) index;
+	}
+	
+	/**
+	 * Returns the secondary index with the given name.
+	 * 
+	 * @param name Index name.
+	 * @return Index or null.
+	 */
+	public final RecordIndex<R, ?> getIndex(String name) {
+		if(null == this.indexes) {
+			return null;
+		}
+		return this.indexes.get(name);
+	}
+	
+	/**
+	 * Finds all the records with the given key in the specified hash index. The
+	 * returned collection is a read-only view of the index content.
+	 * 
+	 * @param indexName Index name.
+	 * @param key Index key.
+	 * @return Collection of records, possibly empty.
+	 */
+	public final Collection<R> findBy(String indexName, Object key) {
+		RecordIndex<R, ?> index = this.getIndex(indexName);
+		if(!(index instanceof HashIndex)) {
+			throw new IllegalArgumentException("Unknown hash index: '"+indexName+"'.");
+		}
+		return ((HashIndex<R>) index).find(key);
+	}
+	
+	/**
+	 * Registers an aggregate view, which folds the values of all the records and
+	 * of the groups of records with the same group key. The view is filled with the
+	 * current records, and then maintained incrementally by all the operations.
+	 * 
+	 * @param name Unique view name.
+	 * @param groupExtractor Computes the group key of the record.
+	 * @param valueExtractor Computes the folded value of the record.
+	 * @param fold Invertible fold, i.e. one of {@link Folds}.
+	 * @return The new view.
+	 */
+	public final <K, V, A> AggregateView<R, K, V, A> registerView(String name, Function<? super R, ? extends K> groupExtractor, Function<? super R, ? extends V> valueExtractor, IFold<V, A> fold) {
+		AggregateView<R, K, V, A> view = new AggregateView<>(name, Preconditions.checkNotNull(groupExtractor, "The view needs a group extractor."), valueExtractor, fold);
+		this.addView(view);
+		return view;
+	}
+	
+	/**
+	 * Registers an aggregate view, which folds the values of all the records
+	 * without grouping them.
+	 * 
+	 * @param name Unique view name.
+	 * @param valueExtractor Computes the folded value of the record.
+	 * @param fold Invertible fold, i.e. one of {@link Folds}.
+	 * @return The new view.
+	 */
+	public final <V, A> AggregateView<R, Object, V, A> registerView(String name, Function<? super R, ? extends V> valueExtractor, IFold<V, A> fold) {
+		AggregateView<R, Object, V, A> view = new AggregateView<>(name, null, valueExtractor, fold);
+		this.addView(view);
+		return view;
+	}
+	
+	/**
+	 * Returns the aggregate view with the given name.
+	 * 
+	 * @param name View name.
+	 * @return The view.
+	 */
+	public final <K, V, A> AggregateView<R, K, V, A> getView(String name) {
+		AggregateView<R, ?, ?, ?> view = (null == this.views ? null : this.views.get(name));
+		if(null == view) {
+			throw new IllegalArgumentException("Unknown aggregate view: '"+name+"'.");
+		}
+		return (AggregateView<R, K, V, A>) view;
+	}
+	
+	/**
+	 * Custom code for adding a group of records can be put here. The method can terminate
+	 * the addition of the whole group by throwing an exception. By default, it calls
+	 * {@link #beforeCreate} for every record.
+	 * 
+	 * @param items The records to add, with the IDs already assigned.
+	 */
+	protected void beforeCreateBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeCreate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for adding a group of records can be put here. The method shall not
+	 * fail. By default, it calls {@link #afterCreate} for every record.
+	 * 
+	 * @param items The added records.
+	 */
+	protected void afterCreateBatch(List<R> items) {
+		for(R item: items) {
+			this.afterCreate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for removing a group of records can be put here. The method can terminate
+	 * the removal of the whole group by throwing an exception. By default, it calls
+	 * {@link #beforeRemove} for every record.
+	 * 
+	 * @param items The records to remove.
+	 */
+	protected void beforeRemoveBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeRemove(item);
+		}
+	}
+	
+	/**
+	 * Custom code for removing a group of records can be put here. The method shall not
+	 * fail. By default, it calls {@link #afterRemove} for every record.
+	 * 
+	 * @param items The removed records.
+	 */
+	protected void afterRemoveBatch(List<R> items) {
+		for(R item: items) {
+			this.afterRemove(item);
+		}
+	}
+	
+	/**
+	 * Custom code for updating a group of records can be put here. The method can
+	 * terminate the update of the whole group by throwing an exception. By default,
+	 * it calls {@link #beforeUpdate} for every record.
+	 * 
+	 * @param items The updated records.
+	 */
+	protected void beforeUpdateBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeUpdate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for updating a group of records can be put here. The method shall
+	 * not fail. By default, it calls {@link #afterUpdate} for every record.
+	 * 
+	 * @param items The updated records.
+	 */
+	protected void afterUpdateBatch(List<R> items) {
+		for(R item: items) {
+			this.afterUpdate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method can terminate the
+	 * update by throwing an exception.
+	 * 
+	 * @param item 
+	 */
+	protected void beforeUpdate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method shall not fail.
+	 * 
+	 * @param item 
+	 */
+	protected void afterUpdate(R item) {
+	}
+	
 	/**
 	 * Custom code for record removal can be put here. The method can terminate the
 	 * addition by throwing an exception.
@@ -217,10 +838,511 @@ public abstract class AbstractDataManager<R extends IIdentifiable> implements IC
 	 * @param item The object to add.
 	 */
 	protected void addObject(long id, R item) {
-		Long idVal = Long.valueOf(id);
-		if(this.records.containsKey(idVal)) {
-			throw new IllegalArgumentException("The object with the same ID #"+idVal+" is added twice. Check your memento/record implementation whether you have copied the ID.");
+		this.checkWritable();
+		if(this.records.containsKey(id)) {
+			throw new IllegalArgumentException("The object with the same ID #"+id+" is added twice. Check your memento/record implementation whether you have copied the ID.");
+		}
+		this.records.put(id, Preconditions.checkNotNull(item));
+		this.snapshot = null;
+		this.indexCreated(item);
+	}
+	
+	/**
+	 * Raw object replacement used by the journal replay. No hooks or listeners
+	 * are called.
+	 * 
+	 * @param id Id of the replaced object.
+	 * @param item The new version of the object.
+	 */
+	final void replaceObject(long id, R item) {
+		this.checkWritable();
+		R previous = this.records.get(id);
+		if(null == previous) {
+			throw new IllegalArgumentException("The object with ID #"+id+" does not exist.");
+		}
+		this.indexRemoved(previous);
+		this.records.put(id, Preconditions.checkNotNull(item));
+		this.snapshot = null;
+		this.indexCreated(item);
+	}
+	
+	/**
+	 * Raw object removal used by the journal replay. No hooks or listeners are
+	 * called.
+	 * 
+	 * @param id Id of the removed object.
+	 */
+	final void removeObject(long id) {
+		this.checkWritable();
+		R previous = this.records.remove(id);
+		if(null == previous) {
+			throw new IllegalArgumentException("The object with ID #"+id+" does not exist.");
+		}
+		this.snapshot = null;
+		this.indexRemoved(previous);
+	}
+	
+	/**
+	 * Copies the batch into an immutable list and verifies that no record occurs
+	 * twice. Shared by all the managers.
+	 * 
+	 * @param items Batch of records.
+	 * @return Immutable list of records.
+	 */
+	static <R> List<R> checkBatch(Collection<? extends R> items) {
+		List<R> batch = ImmutableList.copyOf(items);
+		Set<R> unique = Sets.newIdentityHashSet();
+		for(R item: batch) {
+			if(!unique.add(item)) {
+				throw new IllegalArgumentException("The record '"+item.toString()+"' occurs twice in the batch.");
+			}
+		}
+		return batch;
+	}
+	
+	/**
+	 * Registers the view and fills it with the current records.
+	 * 
+	 * @param view New view.
+	 */
+	private void addView(AggregateView<R, ?, ?, ?> view) {
+		this.checkWritable();
+		if(null == this.views) {
+			this.views = new LinkedHashMap<>();
+		} else if(this.views.containsKey(view.getName())) {
+			throw new IllegalArgumentException("The view '"+view.getName()+"' is already registered.");
+		}
+		for(R record: this.records) {
+			view.insert(record);
+		}
+		this.views.put(view.getName(), view);
+	}
+	
+	/**
+	 * Rejects the modifications of a frozen manager.
+	 */
+	private void checkWritable() {
+		if(this.frozen) {
+			throw new IllegalStateException("The data manager is frozen.");
+		}
+	}
+	
+	/**
+	 * Notifies the listeners about a created record.
+	 * 
+	 * @param item Created record.
+	 */
+	private void notifyCreated(R item) {
+		if(null != this.listeners) {
+			for(IRecordListener<? super R> listener: this.listeners) {
+				listener.recordCreated(item);
+			}
+		}
+	}
+	
+	/**
+	 * Notifies the listeners about an updated record.
+	 * 
+	 * @param item Updated record.
+	 */
+	private void notifyUpdated(R item) {
+		if(null != this.listeners) {
+			for(IRecordListener<? super R> listener: this.listeners) {
+				listener.recordUpdated(item);
+			}
+		}
+	}
+	
+	/**
+	 * Notifies the listeners about a removed record.
+	 * 
+	 * @param item Removed record.
+	 */
+	private void notifyRemoved(R item) {
+		if(null != this.listeners) {
+			for(IRecordListener<? super R> listener: this.listeners) {
+				listener.recordRemoved(item);
+			}
+		}
+	}
+	
+	/**
+	 * Registers the index and fills it with the current records.
+	 * 
+	 * @param index New index.
+	 */
+	private void addIndex(RecordIndex<R, ?> index) {
+		this.checkWritable();
+		if(null == this.indexes) {
+			this.indexes = new LinkedHashMap<>();
+		} else if(this.indexes.containsKey(index.getName())) {
+			throw new IllegalArgumentException("The index '"+index.getName()+"' is already registered.");
+		}
+		for(R record: this.records) {
+			index.insert(record);
+		}
+		if(index instanceof HashIndex && ((HashIndex<R>) index).isUnique()) {
+			for(R record: this.records) {
+				if(null != ((HashIndex<R>) index).findConflict(record)) {
+					throw new IllegalArgumentException("The index '"+index.getName()+"' cannot be unique: the key of the record #"+record.getId()+" is not unique.");
+				}
+			}
+		}
+		this.indexes.put(index.getName(), index);
+	}
+	
+	/**
+	 * Verifies that the key of the record is not used by any other record in the
+	 * unique indexes.
+	 * 
+	 * @param item New or updated record.
+	 * @throws ModelException If a unique constraint is violated.
+	 */
+	private void checkConstraints(R item) throws ModelException {
+		if(null != this.constraints) {
+			for(HashIndex<R> constraint: this.constraints) {
+				R other = constraint.findConflict(item);
+				if(null != other) {
+					throw new ModelException("The record with ID #"+item.getId()+" violates the unique index '"+constraint.getName()+"': the key is already used by the record #"+other.getId()+".");
+				}
+			}
+		}
+		if(null != this.foreignKeys) {
+			for(ForeignKey<R, ?> key: this.foreignKeys) {
+				key.checkReference(item);
+			}
+		}
+	}
+	
+	/**
+	 * Verifies the unique constraints for a batch of new records. The keys must not
+	 * be used by the existing records, and they must not repeat within the batch.
+	 * 
+	 * @param batch New records.
+	 * @throws ModelException If a unique constraint is violated.
+	 */
+	private void checkBatchConstraints(List<R> batch) throws ModelException {
+		if(null != this.constraints) {
+			for(HashIndex<R> constraint: this.constraints) {
+				Map<Object, R> keys = new HashMap<>();
+				for(R item: batch) {
+					Object key = constraint.extractKey(item);
+					if(null == key) {
+						continue;
+					}
+					R other = constraint.findOne(key);
+					if(null == other) {
+						other = keys.put(key, item);
+					}
+					if(null != other) {
+						throw new ModelException("The record with ID #"+item.getId()+" violates the unique index '"+constraint.getName()+"': the key is already used by the record #"+other.getId()+".");
+					}
+				}
+			}
+		}
+		if(null != this.foreignKeys) {
+			for(ForeignKey<R, ?> key: this.foreignKeys) {
+				for(R item: batch) {
+					key.checkReference(item);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Verifies the unique constraints and the foreign keys for a batch of updated
+	 * records. The keys must not be used by the other records, and they must not
+	 * repeat within the batch. The current keys of the excluded records are ignored,
+	 * because they are about to change.
+	 * 
+	 * @param batch Updated records.
+	 * @param excluded Records updated or removed by the same operation.
+	 * @throws ModelException If a constraint is violated.
+	 */
+	private void checkUpdateConstraints(List<R> batch, Set<Object> excluded) throws ModelException {
+		if(null != this.constraints) {
+			for(HashIndex<R> constraint: this.constraints) {
+				Map<Object, R> keys = new HashMap<>();
+				for(R item: batch) {
+					Object key = constraint.extractKey(item);
+					if(null == key) {
+						continue;
+					}
+					R other = keys.put(key, item);
+					if(null == other) {
+						other = constraint.findConflict(item);
+						if(excluded.contains(other)) {
+							other = null;
+						}
+					}
+					if(null != other) {
+						throw new ModelException("The record with ID #"+item.getId()+" violates the unique index '"+constraint.getName()+"': the key is already used by the record #"+other.getId()+".");
+					}
+				}
+			}
+		}
+		if(null != this.foreignKeys) {
+			for(ForeignKey<R, ?> key: this.foreignKeys) {
+				for(R item: batch) {
+					key.checkReference(item);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Moves the updated records within the indexes, and calls the after-hooks and
+	 * the listeners.
+	 * 
+	 * @param batch Updated records, already verified.
+	 */
+	private void applyUpdates(List<R> batch) {
+		for(R item: batch) {
+			this.indexUpdated(item);
+		}
+		this.afterUpdateBatch(batch);
+		for(R item: batch) {
+			this.notifyUpdated(item);
+		}
+	}
+	
+	/**
+	 * Verifies the foreign keys that refer to the removed records, and plans the
+	 * consequences of their rules.
+	 * 
+	 * @param batch Removed records.
+	 * @return Planned cascade, or null, if no foreign key refers to this manager.
+	 * @throws ModelException If a removed record is still referenced.
+	 */
+	private Cascade checkRemoval(List<R> batch) throws ModelException {
+		if(null == this.references) {
+			return null;
+		}
+		Cascade cascade = new Cascade();
+		cascade.removing.addAll(batch);
+		try {
+			this.checkReferences(batch, cascade);
+		} catch(ModelException | RuntimeException exception) {
+			cascade.release();
+			throw exception;
+		}
+		return cascade;
+	}
+	
+	/**
+	 * Validates and applies the planned cascade.
+	 * 
+	 * @param cascade Planned cascade or null.
+	 * @throws ModelException If a hook or a constraint of a child manager rejects the change.
+	 */
+	private void applyRemoval(Cascade cascade) throws ModelException {
+		if(null != cascade) {
+			cascade.prepare();
+			cascade.apply();
+		}
+	}
+	
+	/**
+	 * Forgets the planned cascade.
+	 * 
+	 * @param cascade Planned cascade or null.
+	 */
+	private void releaseRemoval(Cascade cascade) {
+		if(null != cascade) {
+			cascade.release();
+		}
+	}
+	
+	/**
+	 * Estimates the footprint of the manager and its components.
+	 * 
+	 * @param estimator Footprint estimator.
+	 * @return Footprint.
+	 */
+	final Footprint estimateFootprint(FootprintEstimator estimator) {
+		List<Footprint> components = new ArrayList<>();
+		int size = this.records.size();
+		components.add(new Footprint("records", size, estimator.estimateSize(this.records, size)));
+		components.add(new Footprint("storage", size, this.records.estimateOverhead()));
+		if(null != this.indexes) {
+			for(RecordIndex<R, ?> index: this.indexes.values()) {
+				components.add(new Footprint("index '"+index.getName()+"'", index.size(), index.estimateOverhead()));
+			}
+		}
+		if(null != this.views) {
+			for(AggregateView<R, ?, ?, ?> view: this.views.values()) {
+				components.add(new Footprint("view '"+view.getName()+"'", view.getGroups().size(), view.estimateOverhead()));
+			}
+		}
+		if(null != this.snapshot) {
+			components.add(new Footprint("snapshot", this.snapshot.size(), FootprintUtils.array(this.snapshot.size(), FootprintUtils.REFERENCE)));
+		}
+		if(null != this.changeFeed) {
+			components.add(new Footprint("change feed", this.changeFeed.getCapacity(), this.changeFeed.estimateOverhead()));
+		}
+		return new Footprint(this.getClass().getSimpleName(), size, FootprintUtils.object(11 * FootprintUtils.REFERENCE + 8 + 1), components);
+	}
+	
+	/**
+	 * Verifies the foreign keys that refer to the removed records, and plans the
+	 * consequences of their rules.
+	 * 
+	 * @param batch Removed records.
+	 * @param cascade Planned cascade.
+	 * @throws ModelException If a removed record is still referenced.
+	 */
+	final void checkReferences(List<R> batch, Cascade cascade) throws ModelException {
+		if(null != this.references) {
+			for(ForeignKey<?, R> key: this.references) {
+				key.checkRemoval(batch, cascade);
+			}
+		}
+	}
+	
+	/**
+	 * Plans the removal of the records as a part of the cascade. The records of
+	 * all the levels of the cascade are removed with a single batch.
+	 * 
+	 * @param batch Removed records.
+	 * @param cascade Planned cascade.
+	 */
+	final void enlistRemovals(List<R> batch, Cascade cascade) {
+		this.checkWritable();
+		if(null == this.cascadeRemovals) {
+			if(null == this.cascadeUpdates) {
+				cascade.enlist(this);
+			}
+			this.cascadeRemovals = new ArrayList<>();
+		}
+		this.cascadeRemovals.addAll(batch);
+	}
+	
+	/**
+	 * Plans the update of the record as a part of the cascade.
+	 * 
+	 * @param item Updated record.
+	 * @param cascade Planned cascade.
+	 */
+	final void enlistUpdate(R item, Cascade cascade) {
+		this.checkWritable();
+		if(cascade.updating.add(item)) {
+			if(null == this.cascadeUpdates) {
+				if(null == this.cascadeRemovals) {
+					cascade.enlist(this);
+				}
+				this.cascadeUpdates = new ArrayList<>();
+			}
+			this.cascadeUpdates.add(item);
+		}
+	}
+	
+	/**
+	 * Calls the before-hooks for the records removed by the cascade.
+	 * 
+	 * @throws ModelException If a hook rejects the removal.
+	 */
+	final void prepareRemovals() throws ModelException {
+		if(null != this.cascadeRemovals) {
+			this.beforeRemoveBatch(this.cascadeRemovals);
+		}
+	}
+	
+	/**
+	 * Calls the before-hooks and verifies the constraints for the records updated
+	 * by the cascade.
+	 * 
+	 * @param cascade Planned cascade.
+	 * @throws ModelException If a constraint or a hook rejects the update.
+	 */
+	final void prepareUpdates(Cascade cascade) throws ModelException {
+		if(null != this.cascadeUpdates) {
+			Set<Object> excluded = Sets.newIdentityHashSet();
+			excluded.addAll(cascade.removing);
+			excluded.addAll(cascade.updating);
+			this.beforeUpdateBatch(this.cascadeUpdates);
+			this.checkUpdateConstraints(this.cascadeUpdates, excluded);
+		}
+	}
+	
+	/**
+	 * Applies the prepared cascade to this manager. The method does not fail.
+	 */
+	final void applyCascade() {
+		if(null != this.cascadeRemovals) {
+			for(R item: this.cascadeRemovals) {
+				this.records.remove(item.getId());
+				this.indexRemoved(item);
+			}
+			this.snapshot = null;
+			this.afterRemoveBatch(this.cascadeRemovals);
+			for(R item: this.cascadeRemovals) {
+				this.notifyRemoved(item);
+			}
+		}
+		if(null != this.cascadeUpdates) {
+			this.applyUpdates(this.cascadeUpdates);
+		}
+	}
+	
+	/**
+	 * Forgets the cascade planned for this manager.
+	 */
+	final void releaseCascade() {
+		this.cascadeRemovals = null;
+		this.cascadeUpdates = null;
+	}
+	
+	/**
+	 * Adds the new record to all the indexes and views.
+	 * 
+	 * @param item New record.
+	 */
+	private void indexCreated(R item) {
+		if(null != this.indexes) {
+			for(RecordIndex<R, ?> index: this.indexes.values()) {
+				index.insert(item);
+			}
+		}
+		if(null != this.views) {
+			for(AggregateView<R, ?, ?, ?> view: this.views.values()) {
+				view.insert(item);
+			}
+		}
+	}
+	
+	/**
+	 * Moves the updated record within all the indexes and views.
+	 * 
+	 * @param item Updated record.
+	 */
+	private void indexUpdated(R item) {
+		if(null != this.indexes) {
+			for(RecordIndex<R, ?> index: this.indexes.values()) {
+				index.update(item);
+			}
+		}
+		if(null != this.views) {
+			for(AggregateView<R, ?, ?, ?> view: this.views.values()) {
+				view.update(item);
+			}
+		}
+	}
+	
+	/**
+	 * Removes the record from all the indexes and views.
+	 * 
+	 * @param item Removed record.
+	 */
+	private void indexRemoved(R item) {
+		if(null != this.indexes) {
+			for(RecordIndex<R, ?> index: this.indexes.values()) {
+				index.remove(item);
+			}
+		}
+		if(null != this.views) {
+			for(AggregateView<R, ?, ?, ?> view: this.views.values()) {
+				view.remove(item);
+			}
 		}
-		this.records.put(idVal, Preconditions.checkNotNull(item));
 	}
 }
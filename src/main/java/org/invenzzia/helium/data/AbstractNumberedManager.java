@@ -0,0 +1,408 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import org.invenzzia.helium.data.interfaces.INumberable;
+import org.invenzzia.helium.data.interfaces.INumberedManager;
+import org.invenzzia.helium.data.storage.IntRecordArray;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Counterpart of {@link AbstractDataManager} for the {@link INumberable} records.
+ * The records are kept in an {@link IntRecordArray}, an array indexed directly
+ * by the primitive record numbers, so that a lookup is a bounds check and an
+ * array load, and no key objects are created. The hooks are called exactly in the same way,
+ * as in {@link AbstractDataManager}.
+ * 
+ * <p>The manager suits the small catalogs with rare removals. The slots of the
+ * removed records in the middle of the number range are not reclaimed.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public abstract class AbstractNumberedManager<R extends INumberable> implements INumberedManager<R> {
+	/**
+	 * Auto-incrementation.
+	 */
+	private int nextNumber = INumberable.INCREMENTATION_START;
+	/**
+	 * Stores all the records.
+	 */
+	private final IntRecordArray<R> records = new IntRecordArray<>();
+	/**
+	 * Immutable snapshot of the records returned by {@link #getRecords()}. It is
+	 * dropped by every modification, and built again on the first request.
+	 */
+	private List<R> snapshot;
+	
+	/**
+	 * Sets the next number for automatic generation. The method shall be used only
+	 * when reading the state from the disk.
+	 * 
+	 * @param nextNumber 
+	 */
+	public final void setNextNumber(int nextNumber) {
+		this.nextNumber = nextNumber;
+	}
+	
+	/**
+	 * Retrieves the current value of the next number. The method shall be used only
+	 * when writing the state to the disk.
+	 * 
+	 * @return Next number value.
+	 */
+	public final int getNextNumber() {
+		return this.nextNumber;
+	}
+	
+	/**
+	 * Adds a new item to the manager.
+	 * 
+	 * @param item 
+	 */
+	@Override
+	public final void addItem(R item) throws ModelException {
+		if(item.getNumber() != INumberable.NEUTRAL_ID) {
+			throw new IllegalArgumentException("Cannot add a previously added record.");
+		}
+		if(this.nextNumber == Integer.MAX_VALUE) {
+			throw new ModelException("The record numbers have been exhausted.");
+		}
+		try {
+			item.setNumber(this.nextNumber++);
+			
+			this.beforeCreate(item);
+			this.records.put(item.getNumber(), item);
+			this.snapshot = null;
+			this.afterCreate(item);
+		} catch(ModelException exception) {
+			this.nextNumber--;
+			throw exception;
+		}
+	}
+	
+	/**
+	 * Adds a group of new items to the manager. A block of consecutive numbers is
+	 * reserved for the whole group, and the batch hooks are called once. If the batch
+	 * is rejected, the number counter is rolled back and no item is added.
+	 * 
+	 * @param items The new items to add.
+	 */
+	@Override
+	public final void addAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			if(item.getNumber() != INumberable.NEUTRAL_ID) {
+				throw new IllegalArgumentException("Cannot add a previously added record.");
+			}
+		}
+		if((long) this.nextNumber + batch.size() > Integer.MAX_VALUE) {
+			throw new ModelException("The record numbers have been exhausted.");
+		}
+		int firstNumber = this.nextNumber;
+		try {
+			this.nextNumber += batch.size();
+			int number = firstNumber;
+			for(R item: batch) {
+				item.setNumber(number++);
+			}
+			
+			this.beforeCreateBatch(batch);
+			this.records.ensureCapacity(this.records.size() + batch.size());
+			for(R item: batch) {
+				this.records.put(item.getNumber(), item);
+			}
+			this.snapshot = null;
+			this.afterCreateBatch(batch);
+		} catch(ModelException exception) {
+			this.nextNumber = firstNumber;
+			throw exception;
+		}
+	}
+	
+	/**
+	 * Reports the modification of the record.
+	 * 
+	 * @throws ModelException Problems with the data integrity.
+	 * @param item Changed record.
+	 */
+	@Override
+	public final void updateItem(R item) throws ModelException {
+		this.checkStored(item);
+		this.beforeUpdate(item);
+		this.afterUpdate(item);
+	}
+	
+	/**
+	 * Removes the record with the specified number.
+	 * 
+	 * @param number 
+	 */
+	@Override
+	public final void removeItem(int number) throws ModelException {
+		R item = this.records.get(number);
+		if(null == item) {
+			throw new ModelException("The record with number #"+number+" does not exist.");
+		}
+		this.beforeRemove(item);
+		this.records.remove(number);
+		this.snapshot = null;
+		this.afterRemove(item);
+	}
+	
+	/**
+	 * Removes the specified record.
+	 * 
+	 * @param item 
+	 */
+	@Override
+	public final void removeItem(R item) throws ModelException {
+		this.checkStored(item);
+		this.beforeRemove(item);
+		this.records.remove(item.getNumber());
+		this.snapshot = null;
+		this.afterRemove(item);
+	}
+	
+	/**
+	 * Removes a group of records. The batch hooks are called once, and if the batch
+	 * is rejected, no record is removed.
+	 * 
+	 * @param items The records to remove.
+	 */
+	@Override
+	public final void removeAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			this.checkStored(item);
+		}
+		this.beforeRemoveBatch(batch);
+		for(R item: batch) {
+			this.records.remove(item.getNumber());
+		}
+		this.snapshot = null;
+		this.afterRemoveBatch(batch);
+	}
+	
+	/**
+	 * Finds a single record with the given number.
+	 * 
+	 * @param number Record number.
+	 * @return Data record or NULL.
+	 */
+	@Override
+	public final R findByNumber(int number) {
+		return this.records.get(number);
+	}
+	
+	/**
+	 * Returns all the records in the number order. The list is built at most once
+	 * between two modifications of the manager; until then, the same instance is
+	 * returned.
+	 * 
+	 * @return Immutable list of records.
+	 */
+	public final List<R> getRecords() {
+		if(null == this.snapshot) {
+			this.snapshot = ImmutableList.copyOf(this.records);
+		}
+		return this.snapshot;
+	}
+	
+	/**
+	 * Returns the number of currently stored records.
+	 * 
+	 * @return Number of records.
+	 */
+	public final int size() {
+		return this.records.size();
+	}
+	
+	/**
+	 * Reclaims the space left in the storage by the removed records at the end
+	 * of the number range.
+	 */
+	public final void compactStorage() {
+		this.records.compact();
+	}
+	
+	/**
+	 * Filters the records that match the specified condition.
+	 * 
+	 * @param predicate
+	 * @return 
+	 */
+	public final List<R> filter(Predicate<R> predicate) {
+		List<R> results = new LinkedList<>();
+		for(R item: this.records) {
+			if(predicate.apply(item)) {
+				results.add(item);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Starts a lazy query over the records. The sequential queries iterate directly
+	 * over the storage, and the parallel queries split the snapshot returned by
+	 * {@link #getRecords()}.
+	 * 
+	 * @return New query.
+	 */
+	public final Query<R> query() {
+		return new Query<>(this.records, new Supplier<List<R>>() {
+			@Override
+			public List<R> get() {
+				return getRecords();
+			}
+		});
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method can terminate the
+	 * addition by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeCreate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterCreate(R item) {
+	}
+	
+	/**
+	 * Custom code for adding a group of records can be put here. The method can terminate
+	 * the addition of the whole group by throwing an exception. By default, it calls
+	 * {@link #beforeCreate} for every record.
+	 * 
+	 * @param items The records to add, with the numbers already assigned.
+	 */
+	protected void beforeCreateBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeCreate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for adding a group of records can be put here. The method shall not
+	 * fail. By default, it calls {@link #afterCreate} for every record.
+	 * 
+	 * @param items The added records.
+	 */
+	protected void afterCreateBatch(List<R> items) {
+		for(R item: items) {
+			this.afterCreate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for removing a group of records can be put here. The method can terminate
+	 * the removal of the whole group by throwing an exception. By default, it calls
+	 * {@link #beforeRemove} for every record.
+	 * 
+	 * @param items The records to remove.
+	 */
+	protected void beforeRemoveBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeRemove(item);
+		}
+	}
+	
+	/**
+	 * Custom code for removing a group of records can be put here. The method shall not
+	 * fail. By default, it calls {@link #afterRemove} for every record.
+	 * 
+	 * @param items The removed records.
+	 */
+	protected void afterRemoveBatch(List<R> items) {
+		for(R item: items) {
+			this.afterRemove(item);
+		}
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method can terminate the
+	 * update by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeUpdate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterUpdate(R item) {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method can terminate the
+	 * removal by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeRemove(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterRemove(R item) {
+	}
+	
+	/**
+	 * Raw object adding, i.e. for implementing mementos etc.
+	 * 
+	 * @param number Number of the object to add.
+	 * @param item The object to add.
+	 */
+	protected void addObject(int number, R item) {
+		if(this.records.containsKey(number)) {
+			throw new IllegalArgumentException("The object with the same number #"+number+" is added twice. Check your memento/record implementation whether you have copied the number.");
+		}
+		this.records.put(number, Preconditions.checkNotNull(item));
+		this.snapshot = null;
+	}
+	
+	/**
+	 * Verifies that the given instance is the stored one.
+	 * 
+	 * @param item Record.
+	 * @throws ModelException If the record is not stored in this manager.
+	 */
+	private void checkStored(R item) throws ModelException {
+		R stored = this.records.get(item.getNumber());
+		if(null == stored || stored != item) {
+			throw new ModelException("The record with number #"+item.getNumber()+" does not exist.");
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.invenzzia.helium.data.interfaces.IFold;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Materialized aggregate of the records of {@link AbstractDataManager}. Every
+ * record contributes a value to the total, and to the group selected by the
+ * group key, using an invertible {@link IFold}. The view remembers the
+ * contribution of every record, so that an update removes the old one and adds
+ * the new one without visiting the other records. Reading the aggregates never
+ * scans the manager. The records with the <strong>null</strong> group key
+ * contribute only to the total.
+ * 
+ * <p>The views are maintained by the data manager and cannot be modified
+ * directly.</p>
+ * 
+ * @param R The type of aggregated records.
+ * @param K The type of group keys.
+ * @param V The type of folded values.
+ * @param A The type of the accumulators.
+ * @author Tomasz Jędrzejewski
+ */
+public final class AggregateView<R extends IIdentifiable, K, V, A> {
+	/**
+	 * View name.
+	 */
+	private final String name;
+	/**
+	 * Computes the group key of the record, or null for no grouping.
+	 */
+	private final Function<? super R, ? extends K> groupExtractor;
+	/**
+	 * Computes the folded value of the record.
+	 */
+	private final Function<? super R, ? extends V> valueExtractor;
+	/**
+	 * Fold.
+	 */
+	private final IFold<V, A> fold;
+	/**
+	 * Current contributions of the records.
+	 */
+	private final LongRecordMap<Contribution<K, V>> contributions = new LongRecordMap<>();
+	/**
+	 * Aggregates of the groups.
+	 */
+	private final Map<K, Group<A>> groups = new HashMap<>();
+	/**
+	 * Aggregate of all the records.
+	 */
+	private final Group<A> total;
+	/**
+	 * Read-only view of the group accumulators.
+	 */
+	private final Map<K, A> groupView;
+	
+	AggregateView(String name, Function<? super R, ? extends K> groupExtractor, Function<? super R, ? extends V> valueExtractor, IFold<V, A> fold) {
+		this.name = Preconditions.checkNotNull(name, "The view name cannot be empty.");
+		this.groupExtractor = groupExtractor;
+		this.valueExtractor = Preconditions.checkNotNull(valueExtractor, "The view needs a value extractor.");
+		this.fold = Preconditions.checkNotNull(fold, "The view needs a fold.");
+		this.total = new Group<>(fold.empty());
+		this.groupView = Collections.unmodifiableMap(Maps.transformValues(this.groups, new Function<Group<A>, A>() {
+			@Override
+			public A apply(Group<A> group) {
+				return group.accumulator;
+			}
+		}));
+	}
+	
+	/**
+	 * Returns the view name.
+	 * 
+	 * @return View name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Returns the aggregate of all the records.
+	 * 
+	 * @return Accumulator.
+	 */
+	public A get() {
+		return this.total.accumulator;
+	}
+	
+	/**
+	 * Returns the number of all the records.
+	 * 
+	 * @return Number of records.
+	 */
+	public int getCount() {
+		return this.total.count;
+	}
+	
+	/**
+	 * Returns the aggregate of the given group.
+	 * 
+	 * @param key Group key.
+	 * @return Accumulator or null, if the group is empty.
+	 */
+	public A get(K key) {
+		Group<A> group = this.groups.get(key);
+		if(null == group) {
+			return null;
+		}
+		return group.accumulator;
+	}
+	
+	/**
+	 * Returns the number of records in the given group.
+	 * 
+	 * @param key Group key.
+	 * @return Number of records.
+	 */
+	public int getCount(K key) {
+		Group<A> group = this.groups.get(key);
+		if(null == group) {
+			return 0;
+		}
+		return group.count;
+	}
+	
+	/**
+	 * Returns a read-only view of the aggregates of all the non-empty groups.
+	 * 
+	 * @return Map of the group keys to the accumulators.
+	 */
+	public Map<K, A> getGroups() {
+		return this.groupView;
+	}
+	
+	/**
+	 * Adds the contribution of a new record.
+	 * 
+	 * @param record The record.
+	 */
+	void insert(R record) {
+		Contribution<K, V> contribution = new Contribution<K, V>(this.extractGroup(record), this.valueExtractor.apply(record));
+		this.contributions.put(record.getId(), contribution);
+		this.add(contribution);
+	}
+	
+	/**
+	 * Replaces the contribution of the updated record.
+	 * 
+	 * @param record The record.
+	 */
+	void update(R record) {
+		Contribution<K, V> previous = this.contributions.get(record.getId());
+		if(null != previous) {
+			this.subtract(previous);
+		}
+		this.insert(record);
+	}
+	
+	/**
+	 * Removes the contribution of the record.
+	 * 
+	 * @param record The record.
+	 */
+	void remove(R record) {
+		Contribution<K, V> previous = this.contributions.remove(record.getId());
+		if(null != previous) {
+			this.subtract(previous);
+		}
+	}
+	
+	/**
+	 * Returns the approximate number of bytes used by the view, without the values
+	 * and the accumulators.
+	 * 
+	 * @return Size in bytes.
+	 */
+	long estimateOverhead() {
+		long groupSize = FootprintUtils.object(FootprintUtils.REFERENCE + 4);
+		return this.contributions.estimateOverhead()
+			+ this.contributions.size() * FootprintUtils.object(2 * FootprintUtils.REFERENCE)
+			+ FootprintUtils.hashMap(this.groups.size(), FootprintUtils.HASH_ENTRY)
+			+ (this.groups.size() + 1) * groupSize;
+	}
+	
+	/**
+	 * Computes the group key of the record.
+	 * 
+	 * @param record The record.
+	 * @return Group key or null.
+	 */
+	private K extractGroup(R record) {
+		if(null == this.groupExtractor) {
+			return null;
+		}
+		return this.groupExtractor.apply(record);
+	}
+	
+	/**
+	 * Adds the contribution to the total and to its group.
+	 * 
+	 * @param contribution Contribution of a record.
+	 */
+	private void add(Contribution<K, V> contribution) {
+		this.total.accumulator = this.fold.add(this.total.accumulator, contribution.value);
+		this.total.count++;
+		if(null != contribution.key) {
+			Group<A> group = this.groups.get(contribution.key);
+			if(null == group) {
+				group = new Group<>(this.fold.empty());
+				this.groups.put(contribution.key, group);
+			}
+			group.accumulator = this.fold.add(group.accumulator, contribution.value);
+			group.count++;
+		}
+	}
+	
+	/**
+	 * Removes the contribution from the total and from its group. The empty groups
+	 * are dropped.
+	 * 
+	 * @param contribution Contribution of a record.
+	 */
+	private void subtract(Contribution<K, V> contribution) {
+		this.total.accumulator = this.fold.remove(this.total.accumulator, contribution.value);
+		this.total.count--;
+		if(null != contribution.key) {
+			Group<A> group = this.groups.get(contribution.key);
+			if(--group.count == 0) {
+				this.groups.remove(contribution.key);
+			} else {
+				group.accumulator = this.fold.remove(group.accumulator, contribution.value);
+			}
+		}
+	}
+	
+	/**
+	 * The group key and the value contributed by a record.
+	 */
+	private static final class Contribution<K, V> {
+		final K key;
+		final V value;
+		
+		Contribution(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * Accumulator and the number of records of a group.
+	 */
+	private static final class Group<A> {
+		A accumulator;
+		int count;
+		
+		Group(A accumulator) {
+			this.accumulator = accumulator;
+		}
+	}
+}
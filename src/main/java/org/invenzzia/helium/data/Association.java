@@ -0,0 +1,289 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
+import java.util.List;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Many-to-many association between the records of two data managers. The
+ * association keeps both the forward adjacency (the targets of every source) and
+ * the reverse one (the sources of every target) in {@link Relation} objects found
+ * by the record IDs. Both directions can be navigated and counted in constant time,
+ * and the records without links take no memory.
+ * 
+ * <p>The association does not watch the data managers: the links of a removed
+ * record should be dropped with {@link #unlinkSource} or {@link #unlinkTarget}.
+ * The association is not thread-safe.</p>
+ * 
+ * @param S The type of source records.
+ * @param T The type of target records.
+ * @author Tomasz Jędrzejewski
+ */
+public class Association<S extends IIdentifiable, T extends IIdentifiable> {
+	/**
+	 * Targets of the sources, by the source ID.
+	 */
+	private final LongRecordMap<Relation<T>> forward = new LongRecordMap<>();
+	/**
+	 * Sources of the targets, by the target ID.
+	 */
+	private final LongRecordMap<Relation<S>> reverse = new LongRecordMap<>();
+	/**
+	 * Number of links.
+	 */
+	private int size;
+	
+	/**
+	 * Links the source with the target.
+	 * 
+	 * @param source Source record.
+	 * @param target Target record.
+	 * @throws ModelException If the records are already linked.
+	 */
+	public void link(S source, T target) throws ModelException {
+		this.checkStored(source);
+		this.checkStored(target);
+		if(this.isLinked(source, target)) {
+			throw new ModelException("The record #"+source.getId()+" is already linked with the record #"+target.getId()+".");
+		}
+		this.add(source, target);
+	}
+	
+	/**
+	 * Links the source with all the given targets. Either all the links are created,
+	 * or none of them.
+	 * 
+	 * @param source Source record.
+	 * @param targets Target records.
+	 * @throws ModelException If the source is already linked with one of the targets.
+	 */
+	public void linkAll(S source, Collection<? extends T> targets) throws ModelException {
+		this.checkStored(source);
+		List<T> batch = ImmutableList.copyOf(targets);
+		if(ImmutableSet.copyOf(batch).size() != batch.size()) {
+			throw new IllegalArgumentException("The batch contains duplicated targets.");
+		}
+		Relation<T> current = this.forward.get(source.getId());
+		for(T target: batch) {
+			this.checkStored(target);
+			if(null != current && current.isAttached(target)) {
+				throw new ModelException("The record #"+source.getId()+" is already linked with the record #"+target.getId()+".");
+			}
+		}
+		for(T target: batch) {
+			this.add(source, target);
+		}
+	}
+	
+	/**
+	 * Removes the link between the source and the target.
+	 * 
+	 * @param source Source record.
+	 * @param target Target record.
+	 * @throws ModelException If the records are not linked.
+	 */
+	public void unlink(S source, T target) throws ModelException {
+		if(!this.isLinked(source, target)) {
+			throw new ModelException("The record #"+source.getId()+" is not linked with the record #"+target.getId()+".");
+		}
+		detach(this.forward, source.getId(), target);
+		detach(this.reverse, target.getId(), source);
+		this.size--;
+	}
+	
+	/**
+	 * Removes all the links of the source.
+	 * 
+	 * @param source Source record.
+	 * @return Targets that have been linked with the source.
+	 */
+	public Collection<T> unlinkSource(S source) {
+		Relation<T> targets = this.forward.remove(source.getId());
+		if(null == targets) {
+			return ImmutableSet.of();
+		}
+		Collection<T> unlinked = targets.getRelated();
+		for(T target: unlinked) {
+			detach(this.reverse, target.getId(), source);
+		}
+		this.size -= unlinked.size();
+		return unlinked;
+	}
+	
+	/**
+	 * Removes all the links of the target.
+	 * 
+	 * @param target Target record.
+	 * @return Sources that have been linked with the target.
+	 */
+	public Collection<S> unlinkTarget(T target) {
+		Relation<S> sources = this.reverse.remove(target.getId());
+		if(null == sources) {
+			return ImmutableSet.of();
+		}
+		Collection<S> unlinked = sources.getRelated();
+		for(S source: unlinked) {
+			detach(this.forward, source.getId(), target);
+		}
+		this.size -= unlinked.size();
+		return unlinked;
+	}
+	
+	/**
+	 * Returns true, if the source is linked with the target.
+	 * 
+	 * @param source Source record.
+	 * @param target Target record.
+	 * @return True, if there is a link.
+	 */
+	public boolean isLinked(S source, T target) {
+		Relation<T> targets = this.forward.get(source.getId());
+		return null != targets && targets.isAttached(target);
+	}
+	
+	/**
+	 * Returns the targets linked with the source.
+	 * 
+	 * @param source Source record.
+	 * @return Immutable collection of targets.
+	 */
+	public Collection<T> getTargets(S source) {
+		return related(this.forward, source.getId());
+	}
+	
+	/**
+	 * Returns the sources linked with the target.
+	 * 
+	 * @param target Target record.
+	 * @return Immutable collection of sources.
+	 */
+	public Collection<S> getSources(T target) {
+		return related(this.reverse, target.getId());
+	}
+	
+	/**
+	 * Returns the number of targets linked with the source.
+	 * 
+	 * @param source Source record.
+	 * @return Number of targets.
+	 */
+	public int getOutDegree(S source) {
+		Relation<T> targets = this.forward.get(source.getId());
+		return null == targets ? 0 : targets.size();
+	}
+	
+	/**
+	 * Returns the number of sources linked with the target.
+	 * 
+	 * @param target Target record.
+	 * @return Number of sources.
+	 */
+	public int getInDegree(T target) {
+		Relation<S> sources = this.reverse.get(target.getId());
+		return null == sources ? 0 : sources.size();
+	}
+	
+	/**
+	 * Returns the number of links.
+	 * 
+	 * @return Number of links.
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Adds the verified link to both directions.
+	 * 
+	 * @param source Source record.
+	 * @param target Target record.
+	 * @throws ModelException Never thrown for the verified links.
+	 */
+	private void add(S source, T target) throws ModelException {
+		attach(this.forward, source.getId(), target);
+		attach(this.reverse, target.getId(), source);
+		this.size++;
+	}
+	
+	/**
+	 * Verifies that the record has been added to a data manager.
+	 * 
+	 * @param record The record.
+	 */
+	private void checkStored(IIdentifiable record) {
+		if(record.getId() == IIdentifiable.NEUTRAL_ID) {
+			throw new IllegalArgumentException("The record '"+record.toString()+"' has not been added to a data manager.");
+		}
+	}
+	
+	/**
+	 * Attaches the record to the relation of the given ID, creating it, if necessary.
+	 * 
+	 * @param relations Relations by the record ID.
+	 * @param id Record ID.
+	 * @param record Attached record.
+	 * @throws ModelException If the record is already attached.
+	 */
+	private static <X> void attach(LongRecordMap<Relation<X>> relations, long id, X record) throws ModelException {
+		Relation<X> relation = relations.get(id);
+		if(null == relation) {
+			relation = new Relation<>();
+			relations.put(id, relation);
+		}
+		relation.attach(record);
+	}
+	
+	/**
+	 * Detaches the record from the relation of the given ID, and drops the relation,
+	 * once it is empty.
+	 * 
+	 * @param relations Relations by the record ID.
+	 * @param id Record ID.
+	 * @param record Detached record.
+	 */
+	private static <X> void detach(LongRecordMap<Relation<X>> relations, long id, X record) {
+		Relation<X> relation = relations.get(id);
+		try {
+			relation.detach(record);
+		} catch(ModelException exception) {
+			throw new IllegalStateException("The association is corrupted.", exception);
+		}
+		if(relation.isEmpty()) {
+			relations.remove(id);
+		}
+	}
+	
+	/**
+	 * Returns the records attached to the relation of the given ID.
+	 * 
+	 * @param relations Relations by the record ID.
+	 * @param id Record ID.
+	 * @return Immutable collection of records.
+	 */
+	private static <X> Collection<X> related(LongRecordMap<Relation<X>> relations, long id) {
+		Relation<X> relation = relations.get(id);
+		if(null == relation) {
+			return ImmutableSet.of();
+		}
+		return relation.getRelated();
+	}
+}
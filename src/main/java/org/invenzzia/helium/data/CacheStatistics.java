@@ -0,0 +1,99 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+/**
+ * Immutable copy of the counters of the {@link TieredDataManager} cache.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public final class CacheStatistics {
+	/**
+	 * Number of the lookups answered from the memory.
+	 */
+	private final long hits;
+	/**
+	 * Number of the lookups that had to load the record from the disk.
+	 */
+	private final long misses;
+	/**
+	 * Number of the records moved out of the memory.
+	 */
+	private final long evictions;
+	/**
+	 * Number of the records written to the disk.
+	 */
+	private final long spillWrites;
+	
+	CacheStatistics(long hits, long misses, long evictions, long spillWrites) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.spillWrites = spillWrites;
+	}
+	
+	/**
+	 * Returns the number of the lookups answered from the memory.
+	 * 
+	 * @return Number of hits.
+	 */
+	public long getHits() {
+		return this.hits;
+	}
+	
+	/**
+	 * Returns the number of the lookups that had to load the record from the disk.
+	 * 
+	 * @return Number of misses.
+	 */
+	public long getMisses() {
+		return this.misses;
+	}
+	
+	/**
+	 * Returns the number of the records moved out of the memory.
+	 * 
+	 * @return Number of evictions.
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+	
+	/**
+	 * Returns the number of the records written to the disk. The evicted records
+	 * that have not changed since they were loaded are not written again.
+	 * 
+	 * @return Number of writes.
+	 */
+	public long getSpillWrites() {
+		return this.spillWrites;
+	}
+	
+	/**
+	 * Returns the fraction of the lookups answered from the memory.
+	 * 
+	 * @return Hit ratio between 0 and 1.
+	 */
+	public double getHitRatio() {
+		long total = this.hits + this.misses;
+		return (0L == total ? 0.0 : (double) this.hits / total);
+	}
+	
+	@Override
+	public String toString() {
+		return "CacheStatistics[hits="+this.hits+", misses="+this.misses+", evictions="+this.evictions+", spillWrites="+this.spillWrites+"]";
+	}
+}
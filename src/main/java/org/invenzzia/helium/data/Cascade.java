@@ -0,0 +1,116 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Plan of the consequences of removing the referenced records. The removal is
+ * done in three phases: first, the rules of the foreign keys are verified and
+ * the affected records are collected into a single batch per manager; then all
+ * the hooks and the constraints of the affected managers are checked, and if any
+ * of them fails, the cleared references are restored; finally, the managers are
+ * modified, which cannot fail anymore.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+final class Cascade {
+	/**
+	 * All the records removed by the operation.
+	 */
+	final Set<Object> removing = Sets.newIdentityHashSet();
+	/**
+	 * All the records updated by the operation.
+	 */
+	final Set<Object> updating = Sets.newIdentityHashSet();
+	/**
+	 * Managers with the planned removals or updates, in the order of planning.
+	 */
+	private final List<AbstractDataManager<?>> managers = new ArrayList<>();
+	/**
+	 * Foreign keys with the planned clearing of the references.
+	 */
+	private final List<ForeignKey<?, ?>> keys = new ArrayList<>();
+	
+	/**
+	 * Registers a manager with the planned removals or updates.
+	 * 
+	 * @param manager Data manager.
+	 */
+	void enlist(AbstractDataManager<?> manager) {
+		this.managers.add(manager);
+	}
+	
+	/**
+	 * Registers a foreign key with the planned clearing of the references.
+	 * 
+	 * @param key Foreign key.
+	 */
+	void enlist(ForeignKey<?, ?> key) {
+		this.keys.add(key);
+	}
+	
+	/**
+	 * Calls the before-hooks and verifies the constraints of all the affected
+	 * managers. The references are cleared, so that the hooks see the new state
+	 * of the records. If the cascade is rejected, they are restored.
+	 * 
+	 * @throws ModelException If a hook or a constraint rejects the cascade.
+	 */
+	void prepare() throws ModelException {
+		for(AbstractDataManager<?> manager: this.managers) {
+			manager.prepareRemovals();
+		}
+		try {
+			for(ForeignKey<?, ?> key: this.keys) {
+				key.clearReferences(this);
+			}
+			for(int i = 0; i < this.managers.size(); i++) {
+				this.managers.get(i).prepareUpdates(this);
+			}
+		} catch(ModelException | RuntimeException exception) {
+			for(ForeignKey<?, ?> key: this.keys) {
+				key.restoreReferences();
+			}
+			throw exception;
+		}
+	}
+	
+	/**
+	 * Removes and updates the records in all the affected managers.
+	 */
+	void apply() {
+		for(AbstractDataManager<?> manager: this.managers) {
+			manager.applyCascade();
+		}
+	}
+	
+	/**
+	 * Forgets the plan.
+	 */
+	void release() {
+		for(AbstractDataManager<?> manager: this.managers) {
+			manager.releaseCascade();
+		}
+		for(ForeignKey<?, ?> key: this.keys) {
+			key.releaseReferences();
+		}
+	}
+}
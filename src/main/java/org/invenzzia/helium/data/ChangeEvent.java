@@ -0,0 +1,101 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+
+/**
+ * Single event published by the {@link ChangeFeed}. The event refers to the
+ * record instance, so the subscribers see its current state rather than the
+ * state from the moment of the modification.
+ * 
+ * @param R The type of records.
+ * @author Tomasz Jędrzejewski
+ */
+public final class ChangeEvent<R extends IIdentifiable> {
+	/**
+	 * Kind of the modification.
+	 */
+	public static enum Type {
+		CREATED,
+		UPDATED,
+		REMOVED
+	}
+	/**
+	 * Sequence number of the event.
+	 */
+	private final long sequence;
+	/**
+	 * Kind of the modification.
+	 */
+	private final Type type;
+	/**
+	 * ID of the record at the moment of the modification.
+	 */
+	private final long id;
+	/**
+	 * Modified record.
+	 */
+	private final R record;
+	
+	ChangeEvent(long sequence, Type type, R record) {
+		this.sequence = sequence;
+		this.type = type;
+		this.id = record.getId();
+		this.record = record;
+	}
+	
+	/**
+	 * Returns the sequence number of the event.
+	 * 
+	 * @return Sequence number.
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+	
+	/**
+	 * Returns the kind of the modification.
+	 * 
+	 * @return Modification type.
+	 */
+	public Type getType() {
+		return this.type;
+	}
+	
+	/**
+	 * Returns the ID of the modified record.
+	 * 
+	 * @return Record ID.
+	 */
+	public long getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Returns the modified record.
+	 * 
+	 * @return Record.
+	 */
+	public R getRecord() {
+		return this.record;
+	}
+	
+	@Override
+	public String toString() {
+		return "ChangeEvent#"+this.sequence+"["+this.type+" #"+this.id+"]";
+	}
+}
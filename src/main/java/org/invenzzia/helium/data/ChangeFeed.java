@@ -0,0 +1,187 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordListener;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+import org.invenzzia.helium.exception.ChangeFeedOverrunException;
+
+/**
+ * Bounded feed of the modifications of a data manager. The events are numbered
+ * from 1 and kept in a ring buffer, where the newest events overwrite the oldest
+ * ones. The feed is written by the single thread that modifies the manager, and
+ * can be read by any number of subscribers from other threads. Neither the writer,
+ * nor the readers take any locks: each subscriber remembers the sequence number of
+ * the last event it has seen, and asks for the next batch with {@link #poll}.
+ * The feed shall be obtained with {@link AbstractDataManager#getChangeFeed()} on
+ * the writer thread, and then handed over to the subscribers.
+ * 
+ * <p>A subscriber that falls behind by more than the capacity of the feed gets
+ * a {@link ChangeFeedOverrunException}, and must rebuild its state from the
+ * manager.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public class ChangeFeed<R extends IIdentifiable> implements IRecordListener<R> {
+	/**
+	 * Default number of kept events.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+	/**
+	 * Ring buffer with the events.
+	 */
+	private final AtomicReferenceArray<ChangeEvent<R>> events;
+	/**
+	 * Mask for turning the sequence numbers into the buffer positions.
+	 */
+	private final int mask;
+	/**
+	 * Sequence number of the last published event.
+	 */
+	private final AtomicLong lastSequence = new AtomicLong();
+	
+	public ChangeFeed() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a feed that keeps the given number of the most recent events. The
+	 * number is rounded up to the nearest power of two.
+	 * 
+	 * @param capacity Number of kept events.
+	 */
+	public ChangeFeed(int capacity) {
+		Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30), "Invalid change feed capacity: "+capacity);
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) {
+			size <<= 1;
+		}
+		this.events = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+	
+	/**
+	 * Returns the number of kept events.
+	 * 
+	 * @return Feed capacity.
+	 */
+	public int getCapacity() {
+		return this.events.length();
+	}
+	
+	/**
+	 * Returns the sequence number of the last published event, or 0, if there
+	 * are no events yet. New subscribers shall start from here.
+	 * 
+	 * @return Sequence number.
+	 */
+	public long getLastSequence() {
+		return this.lastSequence.get();
+	}
+	
+	/**
+	 * Returns the sequence number of the oldest event still kept in the feed.
+	 * 
+	 * @return Sequence number.
+	 */
+	public long getOldestSequence() {
+		return Math.max(1L, this.lastSequence.get() - this.mask);
+	}
+	
+	/**
+	 * Returns at most <tt>maxEvents</tt> events following the given sequence number.
+	 * The returned list is empty, if there are no new events.
+	 * 
+	 * @param afterSequence Sequence number of the last event seen by the subscriber.
+	 * @param maxEvents Maximum number of returned events.
+	 * @return List of events in the sequence order.
+	 * @throws ChangeFeedOverrunException If some of the events have already been overwritten.
+	 */
+	public List<ChangeEvent<R>> poll(long afterSequence, int maxEvents) throws ChangeFeedOverrunException {
+		Preconditions.checkArgument(maxEvents > 0, "The number of events must be positive.");
+		long last = this.lastSequence.get();
+		if(afterSequence < 0 || afterSequence > last) {
+			throw new IllegalArgumentException("The sequence number "+afterSequence+" has not been published yet.");
+		}
+		long end = Math.min(last, afterSequence + maxEvents);
+		List<ChangeEvent<R>> result = new ArrayList<>((int) (end - afterSequence));
+		for(long sequence = afterSequence + 1; sequence <= end; sequence++) {
+			ChangeEvent<R> event = this.events.get((int) sequence & this.mask);
+			if(null == event || event.getSequence() != sequence) {
+				throw this.overrun(afterSequence);
+			}
+			result.add(event);
+		}
+		return result;
+	}
+	
+	@Override
+	public void recordCreated(R record) {
+		this.publish(ChangeEvent.Type.CREATED, record);
+	}
+	
+	@Override
+	public void recordUpdated(R record) {
+		this.publish(ChangeEvent.Type.UPDATED, record);
+	}
+	
+	@Override
+	public void recordRemoved(R record) {
+		this.publish(ChangeEvent.Type.REMOVED, record);
+	}
+	
+	/**
+	 * Returns the approximate number of bytes used by the buffer and the events
+	 * kept in it, without the records.
+	 * 
+	 * @return Size in bytes.
+	 */
+	long estimateOverhead() {
+		long eventNum = Math.min(this.lastSequence.get(), this.events.length());
+		return FootprintUtils.array(this.events.length(), FootprintUtils.REFERENCE)
+			+ eventNum * FootprintUtils.object(2 * 8 + 2 * FootprintUtils.REFERENCE);
+	}
+	
+	/**
+	 * Writes the event to the buffer and publishes its sequence number.
+	 * 
+	 * @param type Kind of the modification.
+	 * @param record Modified record.
+	 */
+	private void publish(ChangeEvent.Type type, R record) {
+		long sequence = this.lastSequence.get() + 1;
+		this.events.set((int) sequence & this.mask, new ChangeEvent<>(sequence, type, record));
+		this.lastSequence.set(sequence);
+	}
+	
+	/**
+	 * Creates the exception for a subscriber that has fallen behind.
+	 * 
+	 * @param afterSequence Sequence number of the last event seen by the subscriber.
+	 * @return Exception.
+	 */
+	private ChangeFeedOverrunException overrun(long afterSequence) {
+		long oldest = this.getOldestSequence();
+		return new ChangeFeedOverrunException("The events following #"+afterSequence+" have been overwritten; the oldest available event is #"+oldest+".", oldest);
+	}
+}
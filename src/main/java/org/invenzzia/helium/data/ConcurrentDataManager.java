@@ -0,0 +1,498 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.invenzzia.helium.data.interfaces.ICRUDManager;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Thread-safe counterpart of {@link AbstractDataManager}. The IDs are taken from
+ * an atomic allocator, the readers never take any locks, and the writers lock only
+ * the stripe the modified record belongs to, so that the threads working on different
+ * records do not block each other.
+ * 
+ * <p>The hooks are called while holding the stripe lock of the processed record.
+ * They shall not wait for other threads that modify this manager, and must be
+ * thread-safe themselves. The failure semantics are the same, as in
+ * {@link AbstractDataManager}.</p>
+ * 
+ * <p>Unlike in {@link AbstractDataManager}, the records are returned in no
+ * particular order.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public abstract class ConcurrentDataManager<R extends IIdentifiable> implements ICRUDManager<R> {
+	/**
+	 * Default number of writer lock stripes.
+	 */
+	private static final int DEFAULT_STRIPE_NUM = 16;
+	/**
+	 * Auto-incrementation.
+	 */
+	private final AtomicLong nextId = new AtomicLong(IIdentifiable.INCREMENTATION_START);
+	/**
+	 * Stores all the records.
+	 */
+	private final ConcurrentMap<Long, R> records;
+	/**
+	 * Writer locks. The record with the given ID is guarded by the stripe
+	 * selected by the ID bits.
+	 */
+	private final ReentrantLock stripes[];
+	/**
+	 * Incremented after every modification of the record map.
+	 */
+	private final AtomicLong version = new AtomicLong();
+	/**
+	 * The last snapshot of the records, together with the version it was taken at.
+	 */
+	private volatile Snapshot<R> snapshot;
+	
+	public ConcurrentDataManager() {
+		this(DEFAULT_STRIPE_NUM);
+	}
+	
+	/**
+	 * Creates a manager with the given number of writer lock stripes. The number
+	 * is rounded up to the nearest power of two.
+	 * 
+	 * @param stripeNum Expected number of concurrent writers.
+	 */
+	public ConcurrentDataManager(int stripeNum) {
+		Preconditions.checkArgument(stripeNum > 0 && stripeNum <= (1 << 16), "Invalid number of lock stripes: "+stripeNum);
+		int size = Integer.highestOneBit(stripeNum);
+		if(size < stripeNum) {
+			size <<= 1;
+		}
+		this.stripes = new ReentrantLock[size];
+		for(int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.records = new ConcurrentHashMap<>(16, 0.75f, size);
+	}
+	
+	/**
+	 * Sets the next ID for automatic generation. The method shall be used only when reading
+	 * the state from the disk.
+	 * 
+	 * @param nextId
+	 */
+	public final void setNextId(long nextId) {
+		this.nextId.set(nextId);
+	}
+	
+	/**
+	 * Retrieves the current value of the next ID. The method shall be used only when
+	 * writing the state to the disk.
+	 * 
+	 * @return Next ID value.
+	 */
+	public final long getNextId() {
+		return this.nextId.get();
+	}
+	
+	/**
+	 * Adds a new item to the manager. If the creation fails, the ID is given back
+	 * to the allocator, unless another thread has already taken the next one.
+	 * 
+	 * @param item
+	 */
+	@Override
+	public final void addItem(R item) throws ModelException {
+		if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+			throw new IllegalArgumentException("Cannot add a previously added record.");
+		}
+		long id = this.nextId.getAndIncrement();
+		ReentrantLock lock = this.lockFor(id);
+		lock.lock();
+		try {
+			item.setId(id);
+			
+			this.beforeCreate(item);
+			this.records.put(id, item);
+			this.version.incrementAndGet();
+			this.afterCreate(item);
+		} catch(ModelException exception) {
+			this.nextId.compareAndSet(id + 1, id);
+			throw exception;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Adds a group of new items to the manager. A block of consecutive IDs is taken
+	 * from the allocator with a single atomic operation, and all the lock stripes
+	 * are held while the batch is processed, so that the other writers see either
+	 * the whole batch, or nothing. The readers take no locks, and they may see a
+	 * part of the batch, while it is being added. If the batch is rejected, the ID
+	 * block is given back, unless another thread has already taken the IDs after it.
+	 * 
+	 * @param items The new items to add.
+	 */
+	@Override
+	public final void addAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+				throw new IllegalArgumentException("Cannot add a previously added record.");
+			}
+		}
+		long firstId = this.nextId.getAndAdd(batch.size());
+		this.lockAll();
+		try {
+			long id = firstId;
+			for(R item: batch) {
+				item.setId(id++);
+			}
+			
+			this.beforeCreateBatch(batch);
+			for(R item: batch) {
+				this.records.put(item.getId(), item);
+			}
+			this.version.incrementAndGet();
+			this.afterCreateBatch(batch);
+		} catch(ModelException exception) {
+			this.nextId.compareAndSet(firstId + batch.size(), firstId);
+			throw exception;
+		} finally {
+			this.unlockAll();
+		}
+	}
+	
+	/**
+	 * Reports the modification of the record. The hooks are called while holding
+	 * the stripe lock of the record.
+	 * 
+	 * @throws ModelException Problems with the data integrity.
+	 * @param item Changed record.
+	 */
+	@Override
+	public final void updateItem(R item) throws ModelException {
+		ReentrantLock lock = this.lockFor(item.getId());
+		lock.lock();
+		try {
+			R stored = this.records.get(item.getId());
+			if(null == stored || stored != item) {
+				throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+			}
+			this.beforeUpdate(item);
+			this.afterUpdate(item);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes the record with the specified ID.
+	 * 
+	 * @param id
+	 */
+	@Override
+	public final void removeItem(long id) throws ModelException {
+		ReentrantLock lock = this.lockFor(id);
+		lock.lock();
+		try {
+			R item = this.records.get(id);
+			if(null == item) {
+				throw new ModelException("The record with ID #"+id+" does not exist.");
+			}
+			this.beforeRemove(item);
+			this.records.remove(id);
+			this.version.incrementAndGet();
+			this.afterRemove(item);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes the specified record.
+	 * 
+	 * @param item
+	 */
+	@Override
+	public final void removeItem(R item) throws ModelException {
+		ReentrantLock lock = this.lockFor(item.getId());
+		lock.lock();
+		try {
+			R stored = this.records.get(item.getId());
+			if(null == stored || stored != item) {
+				throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+			}
+			this.beforeRemove(item);
+			this.records.remove(item.getId());
+			this.version.incrementAndGet();
+			this.afterRemove(item);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes a group of records. All the lock stripes are held while the batch is
+	 * processed, so that the other writers see either the whole batch removed, or
+	 * nothing, but the readers may see a part of the batch removed. If the batch is
+	 * rejected, no record is removed.
+	 * 
+	 * @param items The records to remove.
+	 */
+	@Override
+	public final void removeAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		this.lockAll();
+		try {
+			for(R item: batch) {
+				R stored = this.records.get(item.getId());
+				if(null == stored || stored != item) {
+					throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+				}
+			}
+			this.beforeRemoveBatch(batch);
+			for(R item: batch) {
+				this.records.remove(item.getId());
+			}
+			this.version.incrementAndGet();
+			this.afterRemoveBatch(batch);
+		} finally {
+			this.unlockAll();
+		}
+	}
+	
+	/**
+	 * Returns all the records. The list reflects the state of the manager at some
+	 * point during the call. If the manager has not been modified since the last
+	 * call, the same list is returned without copying.
+	 * 
+	 * @return Immutable list of records.
+	 */
+	public final List<R> getRecords() {
+		long currentVersion = this.version.get();
+		Snapshot<R> current = this.snapshot;
+		if(null != current && current.version == currentVersion) {
+			return current.records;
+		}
+		List<R> list = ImmutableList.copyOf(this.records.values());
+		this.snapshot = new Snapshot<>(currentVersion, list);
+		return list;
+	}
+	
+	/**
+	 * Returns the number of currently stored records.
+	 * 
+	 * @return Number of records.
+	 */
+	public final int size() {
+		return this.records.size();
+	}
+	
+	/**
+	 * Filters the records that match the specified condition. The records modified
+	 * concurrently may or may not be included.
+	 * 
+	 * @param predicate
+	 * @return
+	 */
+	public final List<R> filter(Predicate<R> predicate) {
+		List<R> results = new LinkedList<>();
+		for(R item: this.records.values()) {
+			if(predicate.apply(item)) {
+				results.add(item);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Finds a single record with the given ID.
+	 * 
+	 * @param id Internal ID.
+	 * @return Data record or NULL.
+	 */
+	@Override
+	public final R findById(long id) {
+		return this.records.get(id);
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method can terminate the
+	 * addition by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeCreate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterCreate(R item) {
+	}
+	
+	/**
+	 * Custom code for adding a group of records can be put here. The method can terminate
+	 * the addition of the whole group by throwing an exception. By default, it calls
+	 * {@link #beforeCreate} for every record.
+	 * 
+	 * @param items The records to add, with the IDs already assigned.
+	 */
+	protected void beforeCreateBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeCreate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for adding a group of records can be put here. The method shall not
+	 * fail. By default, it calls {@link #afterCreate} for every record.
+	 * 
+	 * @param items The added records.
+	 */
+	protected void afterCreateBatch(List<R> items) {
+		for(R item: items) {
+			this.afterCreate(item);
+		}
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method can terminate the
+	 * update by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeUpdate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterUpdate(R item) {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method can terminate the
+	 * addition by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeRemove(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterRemove(R item) {
+	}
+	
+	/**
+	 * Custom code for removing a group of records can be put here. The method can terminate
+	 * the removal of the whole group by throwing an exception. By default, it calls
+	 * {@link #beforeRemove} for every record.
+	 * 
+	 * @param items The records to remove.
+	 */
+	protected void beforeRemoveBatch(List<R> items) throws ModelException {
+		for(R item: items) {
+			this.beforeRemove(item);
+		}
+	}
+	
+	/**
+	 * Custom code for removing a group of records can be put here. The method shall not
+	 * fail. By default, it calls {@link #afterRemove} for every record.
+	 * 
+	 * @param items The removed records.
+	 */
+	protected void afterRemoveBatch(List<R> items) {
+		for(R item: items) {
+			this.afterRemove(item);
+		}
+	}
+	
+	/**
+	 * Raw object adding, i.e. for implementing mementos etc.
+	 * 
+	 * @param id Id of the object to add.
+	 * @param item The object to add.
+	 */
+	protected void addObject(long id, R item) {
+		if(null != this.records.putIfAbsent(id, Preconditions.checkNotNull(item))) {
+			throw new IllegalArgumentException("The object with the same ID #"+id+" is added twice. Check your memento/record implementation whether you have copied the ID.");
+		}
+		this.version.incrementAndGet();
+	}
+	
+	/**
+	 * Selects the writer lock for the given record ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Lock stripe.
+	 */
+	private ReentrantLock lockFor(long id) {
+		return this.stripes[(int) (id ^ (id >>> 32)) & (this.stripes.length - 1)];
+	}
+	
+	/**
+	 * Takes all the writer locks, always in the same order.
+	 */
+	private void lockAll() {
+		for(ReentrantLock lock: this.stripes) {
+			lock.lock();
+		}
+	}
+	
+	/**
+	 * Releases all the writer locks.
+	 */
+	private void unlockAll() {
+		for(int i = this.stripes.length - 1; i >= 0; i--) {
+			this.stripes[i].unlock();
+		}
+	}
+		
+	/**
+	 * Immutable list of records tagged with the version of the manager. The version
+	 * is read before copying the records, so the snapshot is never newer than its
+	 * tag says, and a concurrent modification only causes an extra rebuild.
+	 */
+	private static final class Snapshot<R> {
+		final long version;
+		final List<R> records;
+		
+		Snapshot(long version, List<R> records) {
+			this.version = version;
+			this.records = records;
+		}
+	}
+}
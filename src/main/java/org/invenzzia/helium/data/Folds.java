@@ -0,0 +1,207 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import java.util.Comparator;
+import java.util.TreeMap;
+import org.invenzzia.helium.data.interfaces.IFold;
+
+/**
+ * The common folds for the aggregate views. The null values are ignored.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public final class Folds {
+	private Folds() {
+	}
+	
+	/**
+	 * Sums the values as longs.
+	 * 
+	 * @return Fold.
+	 */
+	public static IFold<Number, Long> longSum() {
+		return LongSum.INSTANCE;
+	}
+	
+	/**
+	 * Sums the values as doubles. The removals are exact only as long as the
+	 * floating point precision allows.
+	 * 
+	 * @return Fold.
+	 */
+	public static IFold<Number, Double> doubleSum() {
+		return DoubleSum.INSTANCE;
+	}
+	
+	/**
+	 * Tracks the lowest and the highest value in their natural order.
+	 * 
+	 * @return Fold.
+	 */
+	public static <V extends Comparable<? super V>> IFold<V, Extremes<V>> extremes() {
+		return new ExtremesFold<>(Ordering.<V>natural());
+	}
+	
+	/**
+	 * Tracks the lowest and the highest value in the order of the comparator.
+	 * 
+	 * @param comparator Value order.
+	 * @return Fold.
+	 */
+	public static <V> IFold<V, Extremes<V>> extremes(Comparator<? super V> comparator) {
+		return new ExtremesFold<>(Preconditions.checkNotNull(comparator));
+	}
+	
+	/**
+	 * Lowest and highest value of a group. The values are kept sorted with their
+	 * multiplicities, so that removing the current minimum or maximum is cheap.
+	 * 
+	 * @param V The type of values.
+	 */
+	public static final class Extremes<V> {
+		/**
+		 * Values and their multiplicities.
+		 */
+		private final TreeMap<V, Integer> values;
+		
+		Extremes(Comparator<? super V> comparator) {
+			this.values = new TreeMap<>(comparator);
+		}
+		
+		/**
+		 * Returns the lowest value.
+		 * 
+		 * @return Value or null, if there are no values.
+		 */
+		public V getMin() {
+			return (this.values.isEmpty() ? null : this.values.firstKey());
+		}
+		
+		/**
+		 * Returns the highest value.
+		 * 
+		 * @return Value or null, if there are no values.
+		 */
+		public V getMax() {
+			return (this.values.isEmpty() ? null : this.values.lastKey());
+		}
+		
+		/**
+		 * Adds a value.
+		 * 
+		 * @param value Value.
+		 */
+		void add(V value) {
+			Integer count = this.values.get(value);
+			this.values.put(value, null == count ? 1 : count + 1);
+		}
+		
+		/**
+		 * Removes a single occurrence of the value.
+		 * 
+		 * @param value Value.
+		 */
+		void remove(V value) {
+			Integer count = this.values.get(value);
+			if(null != count) {
+				if(count == 1) {
+					this.values.remove(value);
+				} else {
+					this.values.put(value, count - 1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sum of long values.
+	 */
+	private static final class LongSum implements IFold<Number, Long> {
+		static final LongSum INSTANCE = new LongSum();
+		
+		@Override
+		public Long empty() {
+			return 0L;
+		}
+		
+		@Override
+		public Long add(Long accumulator, Number value) {
+			return (null == value ? accumulator : accumulator + value.longValue());
+		}
+		
+		@Override
+		public Long remove(Long accumulator, Number value) {
+			return (null == value ? accumulator : accumulator - value.longValue());
+		}
+	}
+	
+	/**
+	 * Sum of double values.
+	 */
+	private static final class DoubleSum implements IFold<Number, Double> {
+		static final DoubleSum INSTANCE = new DoubleSum();
+		
+		@Override
+		public Double empty() {
+			return 0.0;
+		}
+		
+		@Override
+		public Double add(Double accumulator, Number value) {
+			return (null == value ? accumulator : accumulator + value.doubleValue());
+		}
+		
+		@Override
+		public Double remove(Double accumulator, Number value) {
+			return (null == value ? accumulator : accumulator - value.doubleValue());
+		}
+	}
+	
+	/**
+	 * Collects the values into {@link Extremes}, updated in place.
+	 */
+	private static final class ExtremesFold<V> implements IFold<V, Extremes<V>> {
+		private final Comparator<? super V> comparator;
+		
+		ExtremesFold(Comparator<? super V> comparator) {
+			this.comparator = comparator;
+		}
+		
+		@Override
+		public Extremes<V> empty() {
+			return new Extremes<>(this.comparator);
+		}
+		
+		@Override
+		public Extremes<V> add(Extremes<V> accumulator, V value) {
+			if(null != value) {
+				accumulator.add(value);
+			}
+			return accumulator;
+		}
+		
+		@Override
+		public Extremes<V> remove(Extremes<V> accumulator, V value) {
+			if(null != value) {
+				accumulator.remove(value);
+			}
+			return accumulator;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * Estimated heap footprint of a component, such as a data manager or one of its
+ * indexes. The footprint reports the number of entries, the bytes used by the
+ * component itself, and the footprints of its sub-components. The estimates are
+ * approximate and are meant for capacity planning, not for exact accounting.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public final class Footprint {
+	/**
+	 * Component name.
+	 */
+	private final String name;
+	/**
+	 * Number of entries.
+	 */
+	private final long entryNum;
+	/**
+	 * Bytes used by the component, without the sub-components.
+	 */
+	private final long bytes;
+	/**
+	 * Sub-components.
+	 */
+	private final List<Footprint> components;
+	
+	public Footprint(String name, long entryNum, long bytes) {
+		this(name, entryNum, bytes, ImmutableList.<Footprint>of());
+	}
+	
+	public Footprint(String name, long entryNum, long bytes, List<Footprint> components) {
+		this.name = Preconditions.checkNotNull(name, "The component name cannot be empty.");
+		this.entryNum = entryNum;
+		this.bytes = bytes;
+		this.components = ImmutableList.copyOf(components);
+	}
+	
+	/**
+	 * Returns the component name.
+	 * 
+	 * @return Component name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Returns the number of entries of the component.
+	 * 
+	 * @return Number of entries.
+	 */
+	public long getEntryNum() {
+		return this.entryNum;
+	}
+	
+	/**
+	 * Returns the bytes used by the component itself, without the sub-components.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+	
+	/**
+	 * Returns the bytes used by the component and all its sub-components.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public long getTotalBytes() {
+		long total = this.bytes;
+		for(Footprint component: this.components) {
+			total += component.getTotalBytes();
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns the sub-components.
+	 * 
+	 * @return Immutable list of footprints.
+	 */
+	public List<Footprint> getComponents() {
+		return this.components;
+	}
+	
+	/**
+	 * Returns the footprint of the sub-component with the given name.
+	 * 
+	 * @param name Component name.
+	 * @return Footprint or null.
+	 */
+	public Footprint getComponent(String name) {
+		for(Footprint component: this.components) {
+			if(component.name.equals(name)) {
+				return component;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Produces a multi-line report with one component per line, indented by the
+	 * nesting level.
+	 * 
+	 * @return Report.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		this.print(builder, 0);
+		return builder.toString();
+	}
+	
+	/**
+	 * Appends the report line of this component and its sub-components.
+	 * 
+	 * @param builder Report builder.
+	 * @param level Nesting level.
+	 */
+	private void print(StringBuilder builder, int level) {
+		for(int i = 0; i < level; i++) {
+			builder.append("  ");
+		}
+		builder.append(this.name).append(": ").append(this.entryNum).append(" entries, ").append(this.getTotalBytes()).append(" bytes\n");
+		for(Footprint component: this.components) {
+			component.print(builder, level + 1);
+		}
+	}
+}
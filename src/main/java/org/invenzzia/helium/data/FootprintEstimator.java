@@ -0,0 +1,244 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.invenzzia.helium.data.interfaces.ISizeEstimator;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+import org.invenzzia.helium.history.History;
+
+/**
+ * Estimates the heap footprint of the data managers, relations, units of work
+ * and histories. The sizes of the internal structures are computed from their
+ * capacities without visiting the entries. The records are estimated by the
+ * size estimators registered for their classes; the records without an
+ * estimator are assumed to take the default size.
+ * 
+ * <p>Large record sets are sampled: the estimators are called for at most
+ * {@link #getSampleSize()} records evenly spread over the set, and the result
+ * is extrapolated. The records are still iterated, but that is much cheaper than
+ * the estimation, so the estimator can be run periodically in production.</p>
+ * 
+ * <p>The estimator should be configured before the first use. The estimates do
+ * not lock the estimated components, and must be run by the thread that is
+ * allowed to read them.</p>
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public class FootprintEstimator {
+	/**
+	 * Default maximum number of sampled records.
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 256;
+	/**
+	 * Default size of a record without an estimator: the header, the ID and two
+	 * references.
+	 */
+	public static final long DEFAULT_RECORD_SIZE = FootprintUtils.object(8 + 2 * FootprintUtils.REFERENCE);
+	/**
+	 * Maximum number of sampled records; 0 means all of them.
+	 */
+	private int sampleSize = DEFAULT_SAMPLE_SIZE;
+	/**
+	 * Size of the objects without an estimator.
+	 */
+	private long defaultSize = DEFAULT_RECORD_SIZE;
+	/**
+	 * Registered estimators.
+	 */
+	private final Map<Class<?>, ISizeEstimator<Object>> estimators = new HashMap<>();
+	/**
+	 * Estimators found for the classes of the estimated objects; null values mean
+	 * no estimator.
+	 */
+	private final Map<Class<?>, ISizeEstimator<Object>> resolved = new HashMap<>();
+	
+	/**
+	 * Returns the maximum number of sampled records.
+	 * 
+	 * @return Sample size; 0 means all the records.
+	 */
+	public int getSampleSize() {
+		return this.sampleSize;
+	}
+	
+	/**
+	 * Sets the maximum number of records passed to the estimators per component.
+	 * 
+	 * @param sampleSize Sample size; 0 means all the records.
+	 */
+	public void setSampleSize(int sampleSize) {
+		Preconditions.checkArgument(sampleSize >= 0, "The sample size cannot be negative.");
+		this.sampleSize = sampleSize;
+	}
+	
+	/**
+	 * Returns the size of the objects without an estimator.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public long getDefaultSize() {
+		return this.defaultSize;
+	}
+	
+	/**
+	 * Sets the size of the objects without an estimator.
+	 * 
+	 * @param defaultSize Size in bytes.
+	 */
+	public void setDefaultSize(long defaultSize) {
+		Preconditions.checkArgument(defaultSize >= 0, "The default size cannot be negative.");
+		this.defaultSize = defaultSize;
+	}
+	
+	/**
+	 * Registers the size estimator for the objects of the given class and its
+	 * subclasses, unless they have their own estimators.
+	 * 
+	 * @param type Object class.
+	 * @param estimator Size estimator.
+	 */
+	public <T> void registerEstimator(Class<T> type, ISizeEstimator<? super T> estimator) {
+		Preconditions.checkNotNull(type);
+		Preconditions.checkNotNull(estimator, "The size estimator cannot be empty.");
+		this.estimators.put(type, (ISizeEstimator<Object>) estimator);
+		this.resolved.clear();
+	}
+	
+	/**
+	 * Estimates the size of a single object with the estimator of its class.
+	 * 
+	 * @param object Estimated object.
+	 * @return Size in bytes.
+	 */
+	public long estimateSize(Object object) {
+		ISizeEstimator<Object> estimator = this.findEstimator(object.getClass());
+		if(null == estimator) {
+			return this.defaultSize;
+		}
+		return estimator.estimateSize(object);
+	}
+	
+	/**
+	 * Estimates the total size of the objects, sampling them, if there are more of
+	 * them than the sample size.
+	 * 
+	 * @param objects Estimated objects.
+	 * @param size Number of objects.
+	 * @return Size in bytes.
+	 */
+	public long estimateSize(Iterable<?> objects, int size) {
+		if(0 == size) {
+			return 0L;
+		}
+		int step = 1;
+		if(this.sampleSize > 0 && size > this.sampleSize) {
+			step = size / this.sampleSize;
+		}
+		long total = 0L;
+		int sampled = 0;
+		int position = 0;
+		for(Object object: objects) {
+			if(position++ % step == 0) {
+				total += this.estimateSize(object);
+				sampled++;
+			}
+		}
+		if(0 == sampled) {
+			return 0L;
+		}
+		if(sampled == position) {
+			return total;
+		}
+		return total * position / sampled;
+	}
+	
+	/**
+	 * Estimates the footprint of the data manager: the records, the storage, the
+	 * indexes, the views, and the caches.
+	 * 
+	 * @param manager Data manager.
+	 * @return Footprint.
+	 */
+	public Footprint estimate(AbstractDataManager<?> manager) {
+		return manager.estimateFootprint(this);
+	}
+	
+	/**
+	 * Estimates the footprint of the relation. The related objects belong to their
+	 * data managers and are not included.
+	 * 
+	 * @param name Component name.
+	 * @param relation Relation.
+	 * @return Footprint.
+	 */
+	public Footprint estimate(String name, Relation<?> relation) {
+		return new Footprint(name, relation.size(), relation.estimateOverhead());
+	}
+	
+	/**
+	 * Estimates the footprint of the unit of work. The records belong to their
+	 * data managers and are not included.
+	 * 
+	 * @param name Component name.
+	 * @param unitOfWork Unit of work.
+	 * @return Footprint.
+	 */
+	public Footprint estimate(String name, UnitOfWork<?> unitOfWork) {
+		return new Footprint(name, unitOfWork.size(), unitOfWork.estimateOverhead());
+	}
+	
+	/**
+	 * Estimates the footprint of the history, including the commands that it keeps
+	 * for undoing and redoing.
+	 * 
+	 * @param name Component name.
+	 * @param history History.
+	 * @return Footprint.
+	 */
+	public Footprint estimate(String name, History<?> history) {
+		int commandNum = history.getPastOperationNum() + history.getFutureOperationNum();
+		List<Footprint> components = new ArrayList<>(1);
+		components.add(new Footprint("commands", commandNum, this.estimateSize(history.getCommands(), commandNum)));
+		return new Footprint(name, commandNum, history.estimateOverhead(), components);
+	}
+	
+	/**
+	 * Finds the estimator for the given class, walking up the class hierarchy. The
+	 * result is remembered for the class.
+	 * 
+	 * @param type Object class.
+	 * @return Estimator or null.
+	 */
+	private ISizeEstimator<Object> findEstimator(Class<?> type) {
+		ISizeEstimator<Object> estimator = this.resolved.get(type);
+		if(null != estimator || this.resolved.containsKey(type)) {
+			return estimator;
+		}
+		for(Class<?> current = type; null != current; current = current.getSuperclass()) {
+			estimator = this.estimators.get(current);
+			if(null != estimator) {
+				break;
+			}
+		}
+		this.resolved.put(type, estimator);
+		return estimator;
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Link between the records of two data managers: every child record may refer
+ * to a parent record through a {@link Parent} field. The foreign key keeps a
+ * reverse index in the child manager, which maps the parent IDs to the referring
+ * children, so that both the reference checks and the cascades visit only the
+ * actual references.
+ * 
+ * <p>The child manager rejects the records that refer to a parent which is not
+ * stored in the parent manager. The parent manager applies the {@link Rule} of
+ * the key, when a referenced parent is removed. The removal is atomic: all the
+ * restrictions along the whole cascade, and then all the before-hooks and the
+ * constraints of the affected managers are verified before any record is removed.
+ * The cascaded children are removed with a single batch per manager, so the batch
+ * hooks of the child manager are called instead of {@link AbstractDataManager#beforeRemove}.
+ * The cleared references are reported with a single batch per manager, too, and
+ * if the removal is rejected, they are restored.</p>
+ * 
+ * <p>The foreign keys are created with {@link AbstractDataManager#registerForeignKey}.
+ * Every change of the reference must be reported to the child manager with
+ * {@link AbstractDataManager#updateItem}.</p>
+ * 
+ * @param C The type of child records.
+ * @param P The type of parent records.
+ * @author Tomasz Jędrzejewski
+ */
+public final class ForeignKey<C extends IIdentifiable, P extends IIdentifiable> {
+	/**
+	 * What happens to the children, when their parent is removed.
+	 */
+	public static enum Rule {
+		/**
+		 * The parent cannot be removed, while it is referenced.
+		 */
+		RESTRICT,
+		/**
+		 * The children are removed together with the parent.
+		 */
+		CASCADE,
+		/**
+		 * The reference of the children is cleared.
+		 */
+		SET_NULL
+	}
+	
+	/**
+	 * Key name, also used as the name of the reverse index.
+	 */
+	private final String name;
+	/**
+	 * Manager of the referring records.
+	 */
+	private final AbstractDataManager<C> childManager;
+	/**
+	 * Manager of the referenced records.
+	 */
+	private final AbstractDataManager<P> parentManager;
+	/**
+	 * Returns the reference field of the child.
+	 */
+	private final Function<? super C, Parent<P>> field;
+	/**
+	 * Removal rule.
+	 */
+	private final Rule rule;
+	/**
+	 * Reverse index: parent ID to the children.
+	 */
+	private final HashIndex<C> index;
+	/**
+	 * Children, whose references are going to be cleared by the cascade in progress.
+	 */
+	private List<C> pending;
+	/**
+	 * Children, whose references have been cleared by the cascade in progress.
+	 */
+	private List<C> cleared;
+	/**
+	 * The cleared references and their previous instances, for restoring them.
+	 */
+	private List<P> replaced;
+	private List<P> replacedPrevious;
+	/**
+	 * Positions of the cleared references, whose previous instances had been captured.
+	 */
+	private BitSet replacedCaptured;
+	
+	ForeignKey(String name, AbstractDataManager<C> childManager, AbstractDataManager<P> parentManager, Function<? super C, Parent<P>> field, Rule rule) {
+		this.name = Preconditions.checkNotNull(name, "The foreign key name cannot be empty.");
+		this.childManager = Preconditions.checkNotNull(childManager);
+		this.parentManager = Preconditions.checkNotNull(parentManager, "The foreign key needs a parent manager.");
+		this.field = Preconditions.checkNotNull(field, "The foreign key needs a reference field.");
+		this.rule = Preconditions.checkNotNull(rule, "The foreign key needs a removal rule.");
+		this.index = new HashIndex<>(name, new Function<C, Object>() {
+			@Override
+			public Object apply(C child) {
+				P parent = referenced(child);
+				if(null == parent) {
+					return null;
+				}
+				return parent.getId();
+			}
+		});
+	}
+	
+	/**
+	 * Returns the key name.
+	 * 
+	 * @return Key name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Returns the removal rule.
+	 * 
+	 * @return Removal rule.
+	 */
+	public Rule getRule() {
+		return this.rule;
+	}
+	
+	/**
+	 * Returns the manager of the referenced records.
+	 * 
+	 * @return Parent manager.
+	 */
+	public AbstractDataManager<P> getParentManager() {
+		return this.parentManager;
+	}
+	
+	/**
+	 * Returns the children that refer to the given parent. The returned collection
+	 * is a read-only view, and it is not copied.
+	 * 
+	 * @param parent Parent record.
+	 * @return Collection of children, possibly empty.
+	 */
+	public Collection<C> findReferences(P parent) {
+		return this.index.find(parent.getId());
+	}
+	
+	/**
+	 * Returns the number of children that refer to the given parent.
+	 * 
+	 * @param parent Parent record.
+	 * @return Number of children.
+	 */
+	public int countReferences(P parent) {
+		return this.index.count(parent.getId());
+	}
+	
+	/**
+	 * Returns the reverse index registered in the child manager.
+	 * 
+	 * @return Reverse index.
+	 */
+	final HashIndex<C> getIndex() {
+		return this.index;
+	}
+	
+	/**
+	 * Verifies that the parent referred by the child is stored in the parent manager.
+	 * 
+	 * @param child Child record.
+	 * @throws ModelException If the parent does not exist.
+	 */
+	final void checkReference(C child) throws ModelException {
+		P parent = this.referenced(child);
+		if(null != parent && this.parentManager.findById(parent.getId()) != parent) {
+			throw new ModelException("The record with ID #"+child.getId()+" refers to the record #"+parent.getId()+" that does not exist.");
+		}
+	}
+	
+	/**
+	 * Verifies that the parents can be removed, and plans the rule. The children
+	 * removed by a cascade are added to the set of the removed records, and their
+	 * own references are verified, too.
+	 * 
+	 * @param parents Removed parents.
+	 * @param cascade Planned cascade.
+	 * @throws ModelException If a removed parent is still referenced.
+	 */
+	final void checkRemoval(List<P> parents, Cascade cascade) throws ModelException {
+		List<C> children = this.collect(parents, cascade.removing);
+		if(children.isEmpty()) {
+			return;
+		}
+		switch(this.rule) {
+			case RESTRICT:
+				C child = children.get(0);
+				throw new ModelException("The record with ID #"+this.referenced(child).getId()+" is referenced by the record #"+child.getId()+" through the foreign key '"+this.name+"'.");
+			case CASCADE:
+				this.checkWritable();
+				cascade.removing.addAll(children);
+				this.childManager.enlistRemovals(children, cascade);
+				this.childManager.checkReferences(children, cascade);
+				break;
+			case SET_NULL:
+				this.checkWritable();
+				if(null == this.pending) {
+					this.pending = new ArrayList<>();
+					cascade.enlist(this);
+				}
+				this.pending.addAll(children);
+				break;
+		}
+	}
+	
+	/**
+	 * Clears the planned references, skipping the children removed by the cascade,
+	 * and plans the update of the children.
+	 * 
+	 * @param cascade Planned cascade.
+	 */
+	final void clearReferences(Cascade cascade) {
+		this.cleared = new ArrayList<>(this.pending.size());
+		this.replaced = new ArrayList<>(this.pending.size());
+		this.replacedPrevious = new ArrayList<>(this.pending.size());
+		this.replacedCaptured = new BitSet(this.pending.size());
+		for(C child: this.pending) {
+			if(!cascade.removing.contains(child)) {
+				Parent<P> reference = this.field.apply(child);
+				this.replacedCaptured.set(this.cleared.size(), reference.isCaptured());
+				this.cleared.add(child);
+				this.replaced.add(reference.get());
+				this.replacedPrevious.add(reference.getPrevious());
+				reference.set(null);
+				this.childManager.enlistUpdate(child, cascade);
+			}
+		}
+	}
+	
+	/**
+	 * Restores the cleared references, when the cascade is rejected.
+	 */
+	final void restoreReferences() {
+		if(null != this.cleared) {
+			for(int i = 0; i < this.cleared.size(); i++) {
+				this.field.apply(this.cleared.get(i)).restore(this.replaced.get(i), this.replacedPrevious.get(i), this.replacedCaptured.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Forgets the planned references.
+	 */
+	final void releaseReferences() {
+		this.pending = null;
+		this.cleared = null;
+		this.replaced = null;
+		this.replacedPrevious = null;
+		this.replacedCaptured = null;
+	}
+	
+	/**
+	 * Copies the children of the given parents, skipping the excluded records.
+	 * 
+	 * @param parents Parent records.
+	 * @param excluded Records to skip.
+	 * @return List of children.
+	 */
+	private List<C> collect(List<P> parents, Set<Object> excluded) {
+		List<C> children = null;
+		for(P parent: parents) {
+			for(C child: this.index.find(parent.getId())) {
+				if(!excluded.contains(child)) {
+					if(null == children) {
+						children = new ArrayList<>();
+					}
+					children.add(child);
+				}
+			}
+		}
+		if(null == children) {
+			return ImmutableList.of();
+		}
+		return children;
+	}
+	
+	/**
+	 * Returns the parent referred by the child.
+	 * 
+	 * @param child Child record.
+	 * @return Parent record or null.
+	 */
+	private P referenced(C child) {
+		Parent<P> reference = this.field.apply(child);
+		if(null == reference) {
+			return null;
+		}
+		return reference.get();
+	}
+	
+	/**
+	 * Rejects the rules that would modify a frozen child manager.
+	 */
+	private void checkWritable() {
+		if(this.childManager.isFrozen()) {
+			throw new IllegalStateException("The data manager is frozen.");
+		}
+	}
+}
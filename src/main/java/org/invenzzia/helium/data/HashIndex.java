@@ -0,0 +1,152 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Secondary index for equality lookups. A unique index additionally acts as
+ * a constraint: the data manager refuses to create or update a record, if its
+ * key is already used by another record.
+ * 
+ * @param R The type of indexed records.
+ * @author Tomasz Jędrzejewski
+ */
+public final class HashIndex<R extends IIdentifiable> extends RecordIndex<R, Object> {
+	/**
+	 * Maps the keys either to a single record, or to a set of records.
+	 */
+	private final Map<Object, Object> buckets;
+	/**
+	 * Whether the index is a unique constraint.
+	 */
+	private final boolean unique;
+	
+	HashIndex(String name, Function<? super R, ?> keyExtractor) {
+		this(name, keyExtractor, false);
+	}
+	
+	HashIndex(String name, Function<? super R, ?> keyExtractor, boolean unique) {
+		super(name, keyExtractor);
+		this.buckets = new HashMap<>();
+		this.unique = unique;
+	}
+	
+	/**
+	 * Returns true, if the index is a unique constraint.
+	 * 
+	 * @return True for the unique indexes.
+	 */
+	public boolean isUnique() {
+		return this.unique;
+	}
+	
+	/**
+	 * Returns all the records indexed under the given key. The returned collection
+	 * is a read-only view, and it is not copied.
+	 * 
+	 * @param key Index key.
+	 * @return Collection of records, possibly empty.
+	 */
+	public Collection<R> find(Object key) {
+		return RecordIndex.<R>bucketView(this.buckets.get(key));
+	}
+	
+	/**
+	 * Returns any record indexed under the given key. The method is useful for the
+	 * keys that identify the records uniquely.
+	 * 
+	 * @param key Index key.
+	 * @return Record or null.
+	 */
+	public R findOne(Object key) {
+		return RecordIndex.<R>bucketRecord(this.buckets.get(key));
+	}
+	
+	/**
+	 * Returns the number of records indexed under the given key.
+	 * 
+	 * @param key Index key.
+	 * @return Number of records.
+	 */
+	public int count(Object key) {
+		return RecordIndex.bucketSize(this.buckets.get(key));
+	}
+	
+	/**
+	 * Returns true, if there is at least one record with the given key.
+	 * 
+	 * @param key Index key.
+	 * @return True, if the key is used.
+	 */
+	public boolean containsKey(Object key) {
+		return this.buckets.containsKey(key);
+	}
+	
+	/**
+	 * Returns the number of distinct keys.
+	 * 
+	 * @return Number of keys.
+	 */
+	public int keyNum() {
+		return this.buckets.size();
+	}
+	
+	/**
+	 * Returns another record that is indexed under the current key of the given
+	 * record. The record itself is not considered a conflict.
+	 * 
+	 * @param record The record.
+	 * @return Conflicting record or null.
+	 */
+	final R findConflict(R record) {
+		Object key = this.extractKey(record);
+		if(null == key) {
+			return null;
+		}
+		for(R other: this.find(key)) {
+			if(other != record) {
+				return other;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	long estimateOverhead() {
+		return this.estimateKeys(this.buckets.size()) + FootprintUtils.hashMap(this.buckets.size(), FootprintUtils.HASH_ENTRY);
+	}
+	
+	@Override
+	void addEntry(Object key, R record) {
+		this.buckets.put(key, RecordIndex.addToBucket(this.buckets.get(key), record));
+	}
+	
+	@Override
+	void removeEntry(Object key, R record) {
+		Object bucket = RecordIndex.removeFromBucket(this.buckets.get(key), record);
+		if(null == bucket) {
+			this.buckets.remove(key);
+		} else {
+			this.buckets.put(key, bucket);
+		}
+	}
+}
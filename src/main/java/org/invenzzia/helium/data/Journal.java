@@ -0,0 +1,431 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordCodec;
+import org.invenzzia.helium.data.interfaces.IRecordListener;
+
+/**
+ * Append-only journal of the modifications of a data manager. Registered as a
+ * record listener, it encodes every successful creation, update and removal as
+ * a binary entry with a sequence number and a checksum. The entries are collected
+ * in memory and written to the file together by {@link #commit()}, so that a whole
+ * group of modifications costs a single write and at most a single <tt>fsync</tt>,
+ * as selected by the {@link SyncPolicy}.
+ * 
+ * <p>The recovery loads the latest snapshot and replays the journal tail:</p>
+ * <pre>
+ * long sequence = new SnapshotReader&lt;&gt;(codec).read(manager, snapshotPath);
+ * Journal&lt;R&gt; journal = new Journal&lt;&gt;(journalPath, codec, SyncPolicy.ON_COMMIT);
+ * journal.replay(manager, sequence);
+ * manager.addRecordListener(journal);
+ * </pre>
+ * <p>The entries damaged by a crash in the middle of a write are detected by their
+ * checksums and cut off, when the journal is opened. {@link #checkpoint} writes
+ * a new snapshot and truncates the journal.</p>
+ * 
+ * <p>The listener methods do not fail. If an entry cannot be encoded or written,
+ * the failure is remembered, no more entries are recorded, and the failure is
+ * reported by the next {@link #commit()}, {@link #checkpoint} and {@link #close()}.
+ * The journal cannot be used afterwards, and the state shall be recovered from
+ * the last snapshot and the committed entries.</p>
+ * 
+ * <p>The journal is not thread-safe, just like {@link AbstractDataManager}.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public class Journal<R extends IIdentifiable> implements IRecordListener<R>, Closeable {
+	/**
+	 * When the written entries are forced to the disk.
+	 */
+	public static enum SyncPolicy {
+		/**
+		 * Never; it is left to the operating system.
+		 */
+		NEVER,
+		/**
+		 * After every commit.
+		 */
+		ON_COMMIT,
+		/**
+		 * On commit, if the given time has passed since the last synchronization.
+		 */
+		PERIODIC
+	}
+	/**
+	 * Default minimum time between the synchronizations for the periodic policy, in milliseconds.
+	 */
+	public static final long DEFAULT_SYNC_INTERVAL = 1000L;
+	private static final byte OP_CREATE = 1;
+	private static final byte OP_UPDATE = 2;
+	private static final byte OP_REMOVE = 3;
+	/**
+	 * Size of the sequence number, the operation code and the record ID.
+	 */
+	private static final int ENTRY_HEADER_SIZE = 17;
+	/**
+	 * The uncommitted entries above this size are written to the file without
+	 * waiting for the commit.
+	 */
+	private static final int MAX_PENDING_SIZE = 1 << 20;
+	/**
+	 * Record codec.
+	 */
+	private final IRecordCodec<R> codec;
+	/**
+	 * Synchronization policy.
+	 */
+	private final SyncPolicy policy;
+	/**
+	 * Minimum time between the periodic synchronizations, in nanoseconds.
+	 */
+	private final long syncInterval;
+	/**
+	 * Journal file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Entries waiting for the commit.
+	 */
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream(SnapshotWriter.BUFFER_SIZE);
+	private final DataOutputStream pendingOutput = new DataOutputStream(this.pending);
+	/**
+	 * Buffer for encoding a single entry.
+	 */
+	private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+	private final DataOutputStream entryOutput = new DataOutputStream(this.entry);
+	private final CRC32 checksum = new CRC32();
+	/**
+	 * Sequence number of the last entry.
+	 */
+	private long lastSequence;
+	/**
+	 * Time of the last synchronization.
+	 */
+	private long lastSync = System.nanoTime();
+	/**
+	 * Whether some entries have been written since the last synchronization.
+	 */
+	private boolean dirty;
+	/**
+	 * The first failure of recording an entry, or null.
+	 */
+	private IOException failure;
+	
+	public Journal(Path path, IRecordCodec<R> codec, SyncPolicy policy) throws IOException {
+		this(path, codec, policy, DEFAULT_SYNC_INTERVAL);
+	}
+	
+	/**
+	 * Opens or creates the journal file. The damaged entries at the end of the file
+	 * are removed.
+	 * 
+	 * @param path Journal file.
+	 * @param codec Record codec.
+	 * @param policy Synchronization policy.
+	 * @param syncInterval Minimum time between the periodic synchronizations, in milliseconds.
+	 * @throws IOException 
+	 */
+	public Journal(Path path, IRecordCodec<R> codec, SyncPolicy policy, long syncInterval) throws IOException {
+		Preconditions.checkArgument(syncInterval >= 0, "The synchronization interval cannot be negative.");
+		this.codec = Preconditions.checkNotNull(codec, "The journal needs a record codec.");
+		this.policy = Preconditions.checkNotNull(policy);
+		this.syncInterval = syncInterval * 1000000L;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long end = this.scan(null, 0L);
+			if(end < this.channel.size()) {
+				this.channel.truncate(end);
+			}
+			this.channel.position(end);
+		} catch(IOException | RuntimeException exception) {
+			this.channel.close();
+			throw exception;
+		}
+	}
+	
+	/**
+	 * Returns the sequence number of the last entry.
+	 * 
+	 * @return Sequence number.
+	 */
+	public long getLastSequence() {
+		return this.lastSequence;
+	}
+	
+	/**
+	 * Applies the committed entries newer than the given sequence number to the
+	 * manager. The records go directly to the storage and the indexes, without
+	 * calling the hooks or the listeners. The journal shall not be registered in
+	 * the manager yet. The method shall be called also for an empty journal, so
+	 * that the new entries are numbered after the snapshot.
+	 * 
+	 * @param manager The recovered data manager.
+	 * @param afterSequence Sequence number returned by {@link SnapshotReader#read}, or 0.
+	 * @throws IOException 
+	 */
+	public void replay(AbstractDataManager<R> manager, long afterSequence) throws IOException {
+		Preconditions.checkNotNull(manager);
+		if(this.pending.size() > 0) {
+			throw new IllegalStateException("Cannot replay the journal with uncommitted entries.");
+		}
+		long end = this.scan(manager, afterSequence);
+		this.channel.position(end);
+	}
+	
+	@Override
+	public void recordCreated(R record) {
+		this.append(OP_CREATE, record);
+	}
+	
+	@Override
+	public void recordUpdated(R record) {
+		this.append(OP_UPDATE, record);
+	}
+	
+	@Override
+	public void recordRemoved(R record) {
+		this.append(OP_REMOVE, record);
+	}
+	
+	/**
+	 * Writes all the collected entries to the file with a single write, and
+	 * synchronizes the file according to the policy.
+	 * 
+	 * @throws IOException 
+	 */
+	public void commit() throws IOException {
+		this.checkFailure();
+		this.flushPending();
+		if(this.dirty) {
+			if(this.policy == SyncPolicy.ON_COMMIT ||
+				(this.policy == SyncPolicy.PERIODIC && System.nanoTime() - this.lastSync >= this.syncInterval)) {
+				this.sync();
+			}
+		}
+	}
+	
+	/**
+	 * Forces the written entries to the disk, regardless of the policy.
+	 * 
+	 * @throws IOException 
+	 */
+	public void sync() throws IOException {
+		this.channel.force(false);
+		this.lastSync = System.nanoTime();
+		this.dirty = false;
+	}
+	
+	/**
+	 * Saves the current state of the manager as a snapshot and truncates the journal.
+	 * The {@link SnapshotWriter} replaces the old snapshot atomically, so that a
+	 * crash never leaves a damaged snapshot. The manager shall be the one observed
+	 * by this journal.
+	 * 
+	 * @param manager The observed data manager.
+	 * @param snapshot Snapshot file.
+	 * @throws IOException 
+	 */
+	public void checkpoint(AbstractDataManager<R> manager, Path snapshot) throws IOException {
+		this.commit();
+		new SnapshotWriter<>(this.codec).write(manager, snapshot, this.lastSequence);
+		this.channel.truncate(0L);
+		this.channel.position(0L);
+		this.sync();
+	}
+	
+	/**
+	 * Commits the remaining entries and closes the file.
+	 * 
+	 * @throws IOException 
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.checkFailure();
+			this.flushPending();
+			if(this.dirty && this.policy != SyncPolicy.NEVER) {
+				this.sync();
+			}
+		} finally {
+			this.channel.close();
+		}
+	}
+	
+	/**
+	 * Encodes a single entry and adds it to the pending ones. The failures are
+	 * remembered and reported by {@link #commit()}.
+	 * 
+	 * @param operation Operation code.
+	 * @param record Modified record.
+	 */
+	private void append(byte operation, R record) {
+		if(null != this.failure) {
+			return;
+		}
+		try {
+			this.entry.reset();
+			this.entryOutput.writeLong(this.lastSequence + 1);
+			this.entryOutput.writeByte(operation);
+			this.entryOutput.writeLong(record.getId());
+			if(OP_REMOVE != operation) {
+				this.codec.encode(record, this.entryOutput);
+			}
+			byte body[] = this.entry.toByteArray();
+			this.checksum.reset();
+			this.checksum.update(body, 0, body.length);
+			this.pendingOutput.writeInt(body.length);
+			this.pendingOutput.write(body);
+			this.pendingOutput.writeInt((int) this.checksum.getValue());
+			this.lastSequence++;
+			if(this.pending.size() >= MAX_PENDING_SIZE) {
+				this.flushPending();
+			}
+		} catch(IOException exception) {
+			this.failure = new IOException("Cannot write the record #"+record.getId()+" to the journal.", exception);
+		}
+	}
+	
+	/**
+	 * Reports the remembered failure of recording an entry.
+	 * 
+	 * @throws IOException If an entry has not been recorded.
+	 */
+	private void checkFailure() throws IOException {
+		if(null != this.failure) {
+			throw new IOException("The journal is incomplete: "+this.failure.getMessage(), this.failure);
+		}
+	}
+	
+	/**
+	 * Writes the pending entries to the file.
+	 * 
+	 * @throws IOException 
+	 */
+	private void flushPending() throws IOException {
+		if(this.pending.size() > 0) {
+			ByteBuffer buffer = ByteBuffer.wrap(this.pending.toByteArray());
+			while(buffer.hasRemaining()) {
+				this.channel.write(buffer);
+			}
+			this.pending.reset();
+			this.dirty = true;
+		}
+	}
+	
+	/**
+	 * Reads the file from the beginning, stopping at the first incomplete or damaged
+	 * entry. If the manager is given, the entries newer than the given sequence are
+	 * applied to it.
+	 * 
+	 * @param manager The recovered data manager or null.
+	 * @param afterSequence The last entry already present in the manager.
+	 * @return Position of the end of the last valid entry.
+	 * @throws IOException 
+	 */
+	private long scan(AbstractDataManager<R> manager, long afterSequence) throws IOException {
+		long size = this.channel.size();
+		long position = 0L;
+		long sequence = 0L;
+		this.channel.position(0L);
+		DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel), SnapshotWriter.BUFFER_SIZE));
+		byte body[] = new byte[256];
+		try {
+			while(position < size) {
+				int length = input.readInt();
+				if(length < ENTRY_HEADER_SIZE || length > size - position) {
+					break;
+				}
+				if(body.length < length) {
+					body = new byte[Math.max(length, body.length << 1)];
+				}
+				input.readFully(body, 0, length);
+				int expected = input.readInt();
+				this.checksum.reset();
+				this.checksum.update(body, 0, length);
+				if((int) this.checksum.getValue() != expected) {
+					break;
+				}
+				DataInputStream entryInput = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+				long entrySequence = entryInput.readLong();
+				if(entrySequence <= sequence) {
+					throw new IOException("The journal entry #"+entrySequence+" is out of order.");
+				}
+				byte operation = entryInput.readByte();
+				long id = entryInput.readLong();
+				if(null != manager && entrySequence > afterSequence) {
+					this.apply(manager, operation, id, entryInput);
+				}
+				sequence = entrySequence;
+				position += length + 8;
+			}
+		} catch(EOFException exception) {
+			// Incomplete entry at the end of the file.
+		}
+		this.lastSequence = Math.max(sequence, afterSequence);
+		return position;
+	}
+	
+	/**
+	 * Applies a single entry to the manager.
+	 * 
+	 * @param manager The recovered data manager.
+	 * @param operation Operation code.
+	 * @param id Record ID.
+	 * @param input Record data.
+	 * @throws IOException 
+	 */
+	private void apply(AbstractDataManager<R> manager, byte operation, long id, DataInputStream input) throws IOException {
+		R record;
+		switch(operation) {
+			case OP_CREATE:
+				record = this.codec.decode(input);
+				record.setId(id);
+				manager.addObject(id, record);
+				if(id >= manager.getNextId()) {
+					manager.setNextId(id + 1);
+				}
+				break;
+			case OP_UPDATE:
+				record = this.codec.decode(input);
+				record.setId(id);
+				manager.replaceObject(id, record);
+				break;
+			case OP_REMOVE:
+				manager.removeObject(id);
+				break;
+			default:
+				throw new IOException("Unknown journal operation: "+operation+".");
+		}
+	}
+}
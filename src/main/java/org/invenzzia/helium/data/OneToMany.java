@@ -0,0 +1,243 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Bidirectional one-to-many relationship: the parent keeps its children in
+ * a {@link Relation}, and every child points back to the parent with a
+ * {@link Parent} field. The operations of this class update both sides, so that
+ * they never drift apart. A single instance describes the relationship for all
+ * the parents and children, and it does not keep any state.
+ * 
+ * <p>Every operation verifies all its arguments and the current state of both
+ * sides before modifying anything. If an operation throws an exception, nothing
+ * has been changed.</p>
+ * 
+ * @param P The type of parents.
+ * @param C The type of children.
+ * @author Tomasz Jędrzejewski
+ */
+public class OneToMany<P, C> {
+	/**
+	 * Returns the relation with the children of the parent.
+	 */
+	private final Function<? super P, Relation<C>> children;
+	/**
+	 * Returns the back-reference of the child.
+	 */
+	private final Function<? super C, Parent<P>> parent;
+	
+	public OneToMany(Function<? super P, Relation<C>> children, Function<? super C, Parent<P>> parent) {
+		this.children = Preconditions.checkNotNull(children, "The relationship needs the children relation.");
+		this.parent = Preconditions.checkNotNull(parent, "The relationship needs the parent field.");
+	}
+	
+	/**
+	 * Returns the current parent of the child.
+	 * 
+	 * @param child The child.
+	 * @return Parent or null.
+	 */
+	public P getParent(C child) {
+		return this.parent.apply(child).get();
+	}
+	
+	/**
+	 * Returns the children of the parent.
+	 * 
+	 * @param parent The parent.
+	 * @return Immutable collection of children.
+	 */
+	public Collection<C> getChildren(P parent) {
+		return this.children.apply(parent).getRelated();
+	}
+	
+	/**
+	 * Attaches the child to the parent. If the child belongs to another parent,
+	 * it is moved.
+	 * 
+	 * @param parent New parent.
+	 * @param child The child.
+	 * @throws ModelException If the child is already attached to this parent, or the sides are out of sync.
+	 */
+	public void attach(P parent, C child) throws ModelException {
+		Preconditions.checkNotNull(parent, "The parent cannot be null.");
+		P current = this.verify(child);
+		if(current == parent) {
+			throw new ModelException("The record '"+child.toString()+"' is already attached to this relation.");
+		}
+		this.verifyDetached(parent, child);
+		this.retarget(child, current, parent);
+	}
+	
+	/**
+	 * Detaches the child from its parent.
+	 * 
+	 * @param parent Current parent.
+	 * @param child The child.
+	 * @throws ModelException If the child does not belong to the parent, or the sides are out of sync.
+	 */
+	public void detach(P parent, C child) throws ModelException {
+		Preconditions.checkNotNull(parent, "The parent cannot be null.");
+		if(this.verify(child) != parent) {
+			throw new ModelException("The record '"+child.toString()+"' cannot be detached: not attached.");
+		}
+		this.retarget(child, parent, null);
+	}
+	
+	/**
+	 * Moves all the given children to the new parent in a single pass. The children
+	 * that already belong to that parent are left untouched.
+	 * 
+	 * @param children Moved children.
+	 * @param newParent New parent.
+	 * @throws ModelException If one of the children has its sides out of sync.
+	 */
+	public void move(Collection<? extends C> children, P newParent) throws ModelException {
+		Preconditions.checkNotNull(newParent, "The parent cannot be null.");
+		List<C> batch = ImmutableList.copyOf(children);
+		Set<C> unique = Sets.newIdentityHashSet();
+		List<P> currents = new ArrayList<>(batch.size());
+		for(C child: batch) {
+			if(!unique.add(child)) {
+				throw new IllegalArgumentException("The record '"+child.toString()+"' occurs twice in the batch.");
+			}
+			P current = this.verify(child);
+			if(current != newParent) {
+				this.verifyDetached(newParent, child);
+			}
+			currents.add(current);
+		}
+		int i = 0;
+		for(C child: batch) {
+			P current = currents.get(i++);
+			if(current != newParent) {
+				this.retarget(child, current, newParent);
+			}
+		}
+	}
+	
+	/**
+	 * Moves all the children of one parent to another. The source relation is
+	 * emptied at once, instead of detaching the children one by one.
+	 * 
+	 * @param from Current parent.
+	 * @param to New parent.
+	 * @return Moved children.
+	 * @throws ModelException If the sides are out of sync.
+	 */
+	public Collection<C> reassign(P from, P to) throws ModelException {
+		Preconditions.checkNotNull(from, "The parent cannot be null.");
+		Preconditions.checkNotNull(to, "The parent cannot be null.");
+		Relation<C> source = this.children.apply(from);
+		Collection<C> moved = source.getRelated();
+		if(from == to || moved.isEmpty()) {
+			return moved;
+		}
+		for(C child: moved) {
+			if(this.parent.apply(child).get() != from) {
+				throw new ModelException("The record '"+child.toString()+"' is out of sync with its parent.");
+			}
+			this.verifyDetached(to, child);
+		}
+		source.clear();
+		Relation<C> target = this.children.apply(to);
+		for(C child: moved) {
+			target.attach(child);
+			this.parent.apply(child).set(to);
+		}
+		return moved;
+	}
+	
+	/**
+	 * Detaches all the children of the parent.
+	 * 
+	 * @param parent The parent.
+	 * @return Detached children.
+	 * @throws ModelException If the sides are out of sync.
+	 */
+	public Collection<C> detachAll(P parent) throws ModelException {
+		Relation<C> relation = this.children.apply(parent);
+		Collection<C> detached = relation.getRelated();
+		for(C child: detached) {
+			if(this.parent.apply(child).get() != parent) {
+				throw new ModelException("The record '"+child.toString()+"' is out of sync with its parent.");
+			}
+		}
+		relation.clear();
+		for(C child: detached) {
+			this.parent.apply(child).set(null);
+		}
+		return detached;
+	}
+	
+	/**
+	 * Returns the current parent of the child, after verifying that the parent's
+	 * relation contains the child.
+	 * 
+	 * @param child The child.
+	 * @return Current parent or null.
+	 * @throws ModelException If the sides are out of sync.
+	 */
+	private P verify(C child) throws ModelException {
+		P current = this.parent.apply(child).get();
+		if(null != current && !this.children.apply(current).isAttached(child)) {
+			throw new ModelException("The record '"+child.toString()+"' is out of sync with its parent.");
+		}
+		return current;
+	}
+	
+	/**
+	 * Verifies that the relation of the parent does not contain the child.
+	 * 
+	 * @param parent The parent.
+	 * @param child The child.
+	 * @throws ModelException If the sides are out of sync.
+	 */
+	private void verifyDetached(P parent, C child) throws ModelException {
+		if(this.children.apply(parent).isAttached(child)) {
+			throw new ModelException("The record '"+child.toString()+"' is out of sync with its parent.");
+		}
+	}
+	
+	/**
+	 * Moves the verified child between the parents.
+	 * 
+	 * @param child The child.
+	 * @param from Current parent or null.
+	 * @param to New parent or null.
+	 * @throws ModelException Never thrown for the verified arguments.
+	 */
+	private void retarget(C child, P from, P to) throws ModelException {
+		if(null != from) {
+			this.children.apply(from).detach(child);
+		}
+		if(null != to) {
+			this.children.apply(to).attach(child);
+		}
+		this.parent.apply(child).set(to);
+	}
+}
@@ -15,11 +15,22 @@
  */
 package org.invenzzia.helium.data;
 
-import java.lang.ref.WeakReference;
-
 /**
  * In a relation, represents a reverse mapping.
  * 
+ * <p>The parent remembers the previous instance in a plain field, so changing the
+ * instance does not allocate anything. The previous instance is kept until
+ * {@link #resetPrevious()} is called, or, for the parents created with a
+ * {@link ParentRegistry}, until the registry is committed. The registry collects
+ * the changed parents, so that the whole model can be reset at once.</p>
+ * 
+ * <p>Without a registry, the previous instance is the one replaced by the last
+ * change. With a registry, it is the instance from the last commit point: it is
+ * captured by the first change since the last commit or reset, and the further
+ * changes keep it. A parent set back to that instance is therefore no longer
+ * changed. A parent that was undefined at the commit point has no previous
+ * instance.</p>
+ * 
  * @param R master object type.
  * @author Tomasz Jędrzejewski
  */
@@ -29,9 +40,37 @@ public final class Parent<R> {
 	 */
 	private R object;
 	/**
-	 * Weak reference to the previous object in case of modification.
+	 * Previous object in case of modification.
+	 */
+	private R previousObject;
+	/**
+	 * Registry notified about the changes, or null.
+	 */
+	private final ParentRegistry registry;
+	/**
+	 * Registry generation, in which this parent has been registered as changed.
+	 */
+	private long generation = -1L;
+	/**
+	 * Whether the previous instance has been captured since the last reset.
+	 */
+	private boolean captured;
+	
+	/**
+	 * Creates a parent without a change registry.
+	 */
+	public Parent() {
+		this.registry = null;
+	}
+	
+	/**
+	 * Creates a parent that reports its changes to the given registry.
+	 * 
+	 * @param registry Change registry.
 	 */
-	private WeakReference<R> previousObject;
+	public Parent(ParentRegistry registry) {
+		this.registry = registry;
+	}
 	
 	/**
 	 * Sets the new instance.
@@ -39,12 +78,31 @@ public final class Parent<R> {
 	 * @param newObject 
 	 */
 	public void set(R newObject) {
-		if(null != this.object) {
-			this.previousObject = new WeakReference<>(this.object);
-		} else {
-			this.previousObject = null;
+		if(null == this.registry) {
+			this.previousObject = this.object;
+		} else if(!this.captured) {
+			this.previousObject = this.object;
+			this.captured = true;
+		}
+		this.object = newObject;
+		if(null != this.registry && this.generation != this.registry.getGeneration()) {
+			this.generation = this.registry.getGeneration();
+			this.registry.register(this);
 		}
-		this.object = newObject;	
+	}
+	
+	/**
+	 * Brings back the instance and the previous instance after a rejected change.
+	 * The registry is not notified.
+	 * 
+	 * @param object Restored instance.
+	 * @param previousObject Restored previous instance.
+	 * @param captured Whether the previous instance had been captured.
+	 */
+	void restore(R object, R previousObject, boolean captured) {
+		this.object = object;
+		this.previousObject = previousObject;
+		this.captured = captured;
 	}
 	
 	/**
@@ -62,18 +120,26 @@ public final class Parent<R> {
 	 * @return 
 	 */
 	public R getPrevious() {
-		if(null != this.previousObject) {
-			return this.previousObject.get();
-		}
-		return null;
+		return this.previousObject;
 	}
 	
 	/**
-	 * Resets the reference to the previous instance. Not absolutely necessary, because
-	 * the previous value is a weak reference, but can reduce the number of some operations.
+	 * Resets the reference to the previous instance. The previous instance is a strong
+	 * reference, so it should be reset once the change has been processed.
 	 */
 	public void resetPrevious() {
 		this.previousObject = null;
+		this.captured = false;
+	}
+	
+	/**
+	 * Returns true, if the previous instance has been captured since the last
+	 * reset.
+	 * 
+	 * @return True, if the previous instance has been captured.
+	 */
+	boolean isCaptured() {
+		return this.captured;
 	}
 	
 	/**
@@ -91,6 +157,6 @@ public final class Parent<R> {
 	 * @return True, if the value has been changed.
 	 */
 	public boolean isChanged() {
-		return null != this.previousObject && this.previousObject.get() != this.object;
+		return null != this.previousObject && this.previousObject != this.object;
 	}
 }
@@ -0,0 +1,99 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the {@link Parent} objects changed since the last commit. Every
+ * parent created with the registry reports itself on its first change in the
+ * current generation, which is checked by comparing the generation numbers, so
+ * the registry never holds duplicates and needs no lookups. Committing resets the
+ * previous instances of all the changed parents, and starts a new generation;
+ * the list of the changed parents is reused.
+ * 
+ * <p>The registry is not thread-safe, like the parents themselves.</p>
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public class ParentRegistry {
+	/**
+	 * Parents changed in the current generation.
+	 */
+	private final List<Parent<?>> changed = new ArrayList<>();
+	/**
+	 * Read-only view of the changed parents.
+	 */
+	private final List<Parent<?>> changedView = Collections.unmodifiableList(this.changed);
+	/**
+	 * Current generation.
+	 */
+	private long generation;
+	
+	/**
+	 * Returns the number of the current generation, incremented by every commit.
+	 * 
+	 * @return Generation number.
+	 */
+	public long getGeneration() {
+		return this.generation;
+	}
+	
+	/**
+	 * Returns the parents changed in the current generation, in the order of their
+	 * first change. The previous instance of a listed parent is the one from the
+	 * last commit point, so a parent that has been set back to it is still listed,
+	 * but {@link Parent#isChanged()} returns false for it. The list is a read-only
+	 * view, and it is not copied.
+	 * 
+	 * @return Changed parents.
+	 */
+	public List<Parent<?>> getChanged() {
+		return this.changedView;
+	}
+	
+	/**
+	 * Returns the number of the parents changed in the current generation.
+	 * 
+	 * @return Number of parents.
+	 */
+	public int getChangedNum() {
+		return this.changed.size();
+	}
+	
+	/**
+	 * Resets the previous instances of all the changed parents, and starts a new
+	 * generation.
+	 */
+	public void commit() {
+		for(Parent<?> parent: this.changed) {
+			parent.resetPrevious();
+		}
+		this.changed.clear();
+		this.generation++;
+	}
+	
+	/**
+	 * Adds the parent changed for the first time in the current generation.
+	 * 
+	 * @param parent Changed parent.
+	 */
+	void register(Parent<?> parent) {
+		this.changed.add(parent);
+	}
+}
@@ -0,0 +1,586 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.collect.AbstractIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lazy query over the records of a data manager or a relation. The conditions
+ * and projections are only recorded, and they are evaluated when a terminal
+ * operation is called. No intermediate collections are built, and the short-circuiting
+ * operations, such as {@link #findFirst()} or {@link #anyMatch(Predicate)}, stop
+ * at the first matching record.
+ * 
+ * <p>In the sequential mode, the query iterates directly over the source, so the
+ * source must not be modified until the query finishes. In the parallel mode
+ * enabled by {@link #parallel()}, the query works on the immutable snapshot of
+ * the source, splits it into chunks and evaluates them in a fork-join pool. The
+ * conditions and projections must be thread-safe then. The result order is the
+ * same in both modes. Once the chunks scanned so far give enough results for
+ * the short-circuiting operation or the limit, the remaining chunks are skipped,
+ * and the tasks that have already started stop at the next element. Queries
+ * that limit the number of results before applying further conditions are always
+ * evaluated sequentially.</p>
+ * 
+ * @param T The type of query results.
+ * @author Tomasz Jędrzejewski
+ */
+public final class Query<T> implements Iterable<T> {
+	/**
+	 * Marks the elements rejected by the pipeline.
+	 */
+	private static final Object REJECTED = new Object();
+	/**
+	 * Sources smaller than this are never split.
+	 */
+	private static final int MIN_CHUNK_SIZE = 1024;
+	/**
+	 * Default pool for parallel queries and other parallel scans in this package.
+	 */
+	static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+	/**
+	 * Elements to process.
+	 */
+	private final Iterable<?> source;
+	/**
+	 * Provides a random-access snapshot of the source for the parallel mode. May
+	 * be null, if the source cannot be split.
+	 */
+	private final Supplier<? extends List<?>> snapshotSupplier;
+	/**
+	 * Composition of the conditions and projections. Returns {@link #REJECTED} for
+	 * the elements that do not match.
+	 */
+	private final Function<Object, Object> pipeline;
+	/**
+	 * Maximum number of results, or -1.
+	 */
+	private final int limit;
+	/**
+	 * Pool for the parallel mode, or null in the sequential mode.
+	 */
+	private final ForkJoinPool pool;
+	
+	Query(Iterable<?> source, Supplier<? extends List<?>> snapshotSupplier) {
+		this(source, snapshotSupplier, null, -1, null);
+	}
+	
+	private Query(Iterable<?> source, Supplier<? extends List<?>> snapshotSupplier, Function<Object, Object> pipeline, int limit, ForkJoinPool pool) {
+		this.source = Preconditions.checkNotNull(source);
+		this.snapshotSupplier = snapshotSupplier;
+		this.pipeline = pipeline;
+		this.limit = limit;
+		this.pool = pool;
+	}
+	
+	/**
+	 * Narrows the query to the results that satisfy the given condition.
+	 * 
+	 * @param predicate Condition.
+	 * @return New query.
+	 */
+	public Query<T> where(final Predicate<? super T> predicate) {
+		Preconditions.checkNotNull(predicate);
+		return this.then(new Function<Object, Object>() {
+			@Override
+			public Object apply(Object input) {
+				return predicate.apply((T) input) ? input : REJECTED;
+			}
+		});
+	}
+	
+	/**
+	 * Projects the results with the given function.
+	 * 
+	 * @param function Projection.
+	 * @return New query.
+	 */
+	public <V> Query<V> transform(final Function<? super T, ? extends V> function) {
+		Preconditions.checkNotNull(function);
+		return this.then(new Function<Object, Object>() {
+			@Override
+			public Object apply(Object input) {
+				return function.apply((T) input);
+			}
+		});
+	}
+	
+	/**
+	 * Limits the number of results.
+	 * 
+	 * @param maxResults Maximum number of results.
+	 * @return New query.
+	 */
+	public Query<T> limit(int maxResults) {
+		Preconditions.checkArgument(maxResults >= 0, "The limit cannot be negative.");
+		int newLimit = (this.limit < 0 ? maxResults : Math.min(this.limit, maxResults));
+		return new Query<>(this.source, this.snapshotSupplier, this.pipeline, newLimit, this.pool);
+	}
+	
+	/**
+	 * Evaluates the query in parallel in the default fork-join pool.
+	 * 
+	 * @return New query.
+	 */
+	public Query<T> parallel() {
+		return this.parallel(DEFAULT_POOL);
+	}
+	
+	/**
+	 * Evaluates the query in parallel in the given fork-join pool.
+	 * 
+	 * @param pool Fork-join pool.
+	 * @return New query.
+	 */
+	public Query<T> parallel(ForkJoinPool pool) {
+		return new Query<>(this.source, this.snapshotSupplier, this.pipeline, this.limit, Preconditions.checkNotNull(pool));
+	}
+	
+	/**
+	 * Evaluates the query sequentially in the calling thread.
+	 * 
+	 * @return New query.
+	 */
+	public Query<T> sequential() {
+		return new Query<>(this.source, this.snapshotSupplier, this.pipeline, this.limit, null);
+	}
+	
+	/**
+	 * Returns the first result.
+	 * 
+	 * @return First result or null.
+	 */
+	public T findFirst() {
+		if(0 == this.limit) {
+			return null;
+		}
+		List<?> snapshot = this.snapshot();
+		if(null != snapshot) {
+			Object result = this.pool.invoke(new FindFirstTask(snapshot, 0, snapshot.size(), this.chunkSize(snapshot), new AtomicInteger(snapshot.size())));
+			return (result == REJECTED ? null : (T) result);
+		}
+		Iterator<T> it = this.iterator();
+		return (it.hasNext() ? it.next() : null);
+	}
+	
+	/**
+	 * Returns true, if any result satisfies the given condition.
+	 * 
+	 * @param predicate Condition.
+	 * @return True, if there is a matching result.
+	 */
+	public boolean anyMatch(Predicate<? super T> predicate) {
+		if(0 == this.limit) {
+			return false;
+		}
+		List<?> snapshot = (this.limit < 0 ? this.snapshot() : null);
+		if(null != snapshot) {
+			return this.pool.invoke(new AnyMatchTask(snapshot, 0, snapshot.size(), this.chunkSize(snapshot), new AtomicInteger(snapshot.size()), predicate));
+		}
+		for(T result: this) {
+			if(predicate.apply(result)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns true, if all the results satisfy the given condition. Returns true
+	 * for empty queries.
+	 * 
+	 * @param predicate Condition.
+	 * @return True, if there is no result that does not match.
+	 */
+	public boolean allMatch(final Predicate<? super T> predicate) {
+		Preconditions.checkNotNull(predicate);
+		return !this.anyMatch(new Predicate<T>() {
+			@Override
+			public boolean apply(T input) {
+				return !predicate.apply(input);
+			}
+		});
+	}
+	
+	/**
+	 * Returns the number of results.
+	 * 
+	 * @return Number of results.
+	 */
+	public int count() {
+		if(0 == this.limit) {
+			return 0;
+		}
+		List<?> snapshot = this.snapshot();
+		if(null != snapshot) {
+			return this.pool.invoke(new CountTask(snapshot, 0, snapshot.size(), this.chunkSize(snapshot), new AtomicInteger(snapshot.size())));
+		}
+		int count = 0;
+		for(Iterator<T> it = this.iterator(); it.hasNext(); it.next()) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Evaluates the query and returns the results in a list.
+	 * 
+	 * @return Unmodifiable list of results.
+	 */
+	public List<T> toList() {
+		if(0 == this.limit) {
+			return Collections.emptyList();
+		}
+		List<?> snapshot = this.snapshot();
+		if(null != snapshot) {
+			List<Object> results = this.pool.invoke(new CollectTask(snapshot, 0, snapshot.size(), this.chunkSize(snapshot), new AtomicInteger(snapshot.size())));
+			return Collections.unmodifiableList((List<T>) results);
+		}
+		List<T> results = new ArrayList<>();
+		for(T result: this) {
+			results.add(result);
+		}
+		return Collections.unmodifiableList(results);
+	}
+	
+	/**
+	 * Iterates lazily over the results in the calling thread, regardless of the
+	 * mode.
+	 * 
+	 * @return Result iterator.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		final Iterator<?> it = this.source.iterator();
+		return new AbstractIterator<T>() {
+			private int remaining = limit;
+			
+			@Override
+			protected T computeNext() {
+				if(0 == this.remaining) {
+					return this.endOfData();
+				}
+				while(it.hasNext()) {
+					Object result = apply(it.next());
+					if(result != REJECTED) {
+						if(this.remaining > 0) {
+							this.remaining--;
+						}
+						return (T) result;
+					}
+				}
+				return this.endOfData();
+			}
+		};
+	}
+	
+	/**
+	 * Appends a new stage to the pipeline. A limited query becomes the source of
+	 * the new one, because the limit must be applied before the new stage.
+	 * 
+	 * @param stage New stage.
+	 * @return New query.
+	 */
+	private <V> Query<V> then(final Function<Object, Object> stage) {
+		if(this.limit >= 0) {
+			return new Query<>(this, null, stage, -1, null);
+		}
+		final Function<Object, Object> previous = this.pipeline;
+		if(null == previous) {
+			return new Query<>(this.source, this.snapshotSupplier, stage, -1, this.pool);
+		}
+		return new Query<>(this.source, this.snapshotSupplier, new Function<Object, Object>() {
+			@Override
+			public Object apply(Object input) {
+				Object result = previous.apply(input);
+				return (result == REJECTED ? REJECTED : stage.apply(result));
+			}
+		}, -1, this.pool);
+	}
+	
+	/**
+	 * Runs the element through the pipeline.
+	 * 
+	 * @param input Source element.
+	 * @return Result or {@link #REJECTED}.
+	 */
+	private Object apply(Object input) {
+		return (null == this.pipeline ? input : this.pipeline.apply(input));
+	}
+	
+	/**
+	 * Returns the snapshot to split, if the query shall run in parallel.
+	 * 
+	 * @return Snapshot of the source or null.
+	 */
+	private List<?> snapshot() {
+		if(null == this.pool || null == this.snapshotSupplier) {
+			return null;
+		}
+		return this.snapshotSupplier.get();
+	}
+	
+	/**
+	 * Selects the chunk size that gives a few chunks per worker thread.
+	 * 
+	 * @param snapshot Snapshot of the source.
+	 * @return Chunk size.
+	 */
+	private int chunkSize(List<?> snapshot) {
+		return Math.max(MIN_CHUNK_SIZE, snapshot.size() / (this.pool.getParallelism() << 2));
+	}
+	
+	/**
+	 * Common code of the parallel tasks: a range of the snapshot that is either split
+	 * in halves, or processed in the current thread. The tasks of a single query
+	 * share the end index: the elements at and above it are not needed for the
+	 * result, so the scans stop there, and the forked tasks past it are taken back
+	 * from the queue, if they have not been started yet. Otherwise the forked tasks
+	 * are always joined, so that none of them outlives the query.
+	 */
+	private abstract class ChunkTask<V> extends RecursiveTask<V> {
+		protected final List<?> snapshot;
+		protected final int from;
+		protected final int to;
+		protected final int chunkSize;
+		protected final AtomicInteger end;
+		
+		ChunkTask(List<?> snapshot, int from, int to, int chunkSize, AtomicInteger end) {
+			this.snapshot = snapshot;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.end = end;
+		}
+		
+		@Override
+		protected V compute() {
+			if(this.to - this.from <= this.chunkSize || this.from >= this.end.get()) {
+				return this.computeDirectly();
+			}
+			int middle = (this.from + this.to) >>> 1;
+			ChunkTask<V> right = this.split(middle, this.to);
+			right.fork();
+			V leftResult = this.split(this.from, middle).compute();
+			if(this.isComplete(leftResult)) {
+				this.cutOff(middle);
+			}
+			V rightResult;
+			if(middle >= this.end.get() && right.tryUnfork()) {
+				rightResult = right.computeDirectly();
+			} else {
+				rightResult = right.join();
+			}
+			return this.combine(leftResult, rightResult);
+		}
+		
+		/**
+		 * Returns true, if the element at the given index must be processed.
+		 */
+		protected final boolean isNeeded(int index) {
+			return index < this.to && index < this.end.get();
+		}
+		
+		/**
+		 * Marks the elements at and above the given index as not needed.
+		 */
+		protected final void cutOff(int index) {
+			for(int current = this.end.get(); index < current; current = this.end.get()) {
+				if(this.end.compareAndSet(current, index)) {
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * Creates a task for the subrange.
+		 */
+		protected abstract ChunkTask<V> split(int newFrom, int newTo);
+		
+		/**
+		 * Processes the needed part of the range in the current thread.
+		 */
+		protected abstract V computeDirectly();
+		
+		/**
+		 * Returns true, if the result of a range makes the elements after it unnecessary.
+		 */
+		protected abstract boolean isComplete(V result);
+		
+		/**
+		 * Combines the results of the left and the right half.
+		 */
+		protected abstract V combine(V leftResult, V rightResult);
+	}
+	
+	private final class CountTask extends ChunkTask<Integer> {
+		CountTask(List<?> snapshot, int from, int to, int chunkSize, AtomicInteger end) {
+			super(snapshot, from, to, chunkSize, end);
+		}
+		
+		@Override
+		protected ChunkTask<Integer> split(int newFrom, int newTo) {
+			return new CountTask(this.snapshot, newFrom, newTo, this.chunkSize, this.end);
+		}
+		
+		@Override
+		protected Integer computeDirectly() {
+			int count = 0;
+			for(int i = this.from; this.isNeeded(i); i++) {
+				if(apply(this.snapshot.get(i)) != REJECTED && ++count == limit) {
+					this.cutOff(i + 1);
+					break;
+				}
+			}
+			return count;
+		}
+		
+		@Override
+		protected boolean isComplete(Integer result) {
+			return limit >= 0 && result >= limit;
+		}
+		
+		@Override
+		protected Integer combine(Integer leftResult, Integer rightResult) {
+			int count = leftResult + rightResult;
+			return (limit < 0 ? count : Math.min(count, limit));
+		}
+	}
+	
+	private final class CollectTask extends ChunkTask<List<Object>> {
+		CollectTask(List<?> snapshot, int from, int to, int chunkSize, AtomicInteger end) {
+			super(snapshot, from, to, chunkSize, end);
+		}
+		
+		@Override
+		protected ChunkTask<List<Object>> split(int newFrom, int newTo) {
+			return new CollectTask(this.snapshot, newFrom, newTo, this.chunkSize, this.end);
+		}
+		
+		@Override
+		protected List<Object> computeDirectly() {
+			List<Object> results = new ArrayList<>();
+			for(int i = this.from; this.isNeeded(i); i++) {
+				Object result = apply(this.snapshot.get(i));
+				if(result != REJECTED) {
+					results.add(result);
+					if(results.size() == limit) {
+						this.cutOff(i + 1);
+						break;
+					}
+				}
+			}
+			return results;
+		}
+		
+		@Override
+		protected boolean isComplete(List<Object> result) {
+			return limit >= 0 && result.size() >= limit;
+		}
+		
+		@Override
+		protected List<Object> combine(List<Object> leftResult, List<Object> rightResult) {
+			if(!this.isComplete(leftResult)) {
+				leftResult.addAll(rightResult);
+				if(limit >= 0 && leftResult.size() > limit) {
+					leftResult.subList(limit, leftResult.size()).clear();
+				}
+			}
+			return leftResult;
+		}
+	}
+	
+	private final class FindFirstTask extends ChunkTask<Object> {
+		FindFirstTask(List<?> snapshot, int from, int to, int chunkSize, AtomicInteger end) {
+			super(snapshot, from, to, chunkSize, end);
+		}
+		
+		@Override
+		protected ChunkTask<Object> split(int newFrom, int newTo) {
+			return new FindFirstTask(this.snapshot, newFrom, newTo, this.chunkSize, this.end);
+		}
+		
+		@Override
+		protected Object computeDirectly() {
+			for(int i = this.from; this.isNeeded(i); i++) {
+				Object result = apply(this.snapshot.get(i));
+				if(result != REJECTED) {
+					this.cutOff(i + 1);
+					return result;
+				}
+			}
+			return REJECTED;
+		}
+		
+		@Override
+		protected boolean isComplete(Object result) {
+			return result != REJECTED;
+		}
+		
+		@Override
+		protected Object combine(Object leftResult, Object rightResult) {
+			return (leftResult != REJECTED ? leftResult : rightResult);
+		}
+	}
+	
+	private final class AnyMatchTask extends ChunkTask<Boolean> {
+		private final Predicate<? super T> predicate;
+		
+		AnyMatchTask(List<?> snapshot, int from, int to, int chunkSize, AtomicInteger end, Predicate<? super T> predicate) {
+			super(snapshot, from, to, chunkSize, end);
+			this.predicate = predicate;
+		}
+		
+		@Override
+		protected ChunkTask<Boolean> split(int newFrom, int newTo) {
+			return new AnyMatchTask(this.snapshot, newFrom, newTo, this.chunkSize, this.end, this.predicate);
+		}
+		
+		@Override
+		protected Boolean computeDirectly() {
+			for(int i = this.from; this.isNeeded(i); i++) {
+				Object result = apply(this.snapshot.get(i));
+				if(result != REJECTED && this.predicate.apply((T) result)) {
+					// Any match is enough, so the whole snapshot becomes unnecessary.
+					this.cutOff(0);
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		protected boolean isComplete(Boolean result) {
+			return result;
+		}
+		
+		@Override
+		protected Boolean combine(Boolean leftResult, Boolean rightResult) {
+			return leftResult || rightResult;
+		}
+	}
+}
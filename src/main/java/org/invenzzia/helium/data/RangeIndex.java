@@ -0,0 +1,253 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Secondary index that keeps the records sorted by their keys. It answers the
+ * range queries, floor and ceiling lookups, and bounded top-N queries without
+ * scanning or sorting the whole manager. The range queries return lazy views
+ * that are valid until the next modification of the data manager.
+ * 
+ * @param R The type of indexed records.
+ * @param K The type of index keys.
+ * @author Tomasz Jędrzejewski
+ */
+public final class RangeIndex<R extends IIdentifiable, K> extends RecordIndex<R, K> {
+	/**
+	 * Maps the sorted keys either to a single record, or to a set of records.
+	 */
+	private final NavigableMap<K, Object> buckets;
+	/**
+	 * Turns the buckets into record collections for the lazy views.
+	 */
+	private final Function<Object, Collection<R>> bucketViewFunction = new Function<Object, Collection<R>>() {
+		@Override
+		public Collection<R> apply(Object bucket) {
+			return RecordIndex.<R>bucketView(bucket);
+		}
+	};
+	
+	RangeIndex(String name, Function<? super R, ? extends K> keyExtractor, Comparator<? super K> comparator) {
+		super(name, keyExtractor);
+		this.buckets = new TreeMap<>(Preconditions.checkNotNull(comparator, "The range index needs a comparator."));
+	}
+	
+	/**
+	 * Returns all the records with exactly the given key.
+	 * 
+	 * @param key Index key.
+	 * @return Collection of records, possibly empty.
+	 */
+	public Collection<R> find(K key) {
+		return RecordIndex.<R>bucketView(this.buckets.get(key));
+	}
+	
+	/**
+	 * Returns the records with the keys within the given range, in the key order.
+	 * 
+	 * @param from Lower bound.
+	 * @param fromInclusive Whether the lower bound is included.
+	 * @param to Upper bound.
+	 * @param toInclusive Whether the upper bound is included.
+	 * @return Lazy view of the matching records.
+	 */
+	public Iterable<R> range(K from, boolean fromInclusive, K to, boolean toInclusive) {
+		return this.flatten(this.buckets.subMap(from, fromInclusive, to, toInclusive));
+	}
+	
+	/**
+	 * Returns the records with the keys between the bounds, including both of them.
+	 * 
+	 * @param from Lower bound.
+	 * @param to Upper bound.
+	 * @return Lazy view of the matching records.
+	 */
+	public Iterable<R> range(K from, K to) {
+		return this.range(from, true, to, true);
+	}
+	
+	/**
+	 * Returns the records with the keys greater than or equal to the given one,
+	 * in the key order.
+	 * 
+	 * @param from Lower bound.
+	 * @return Lazy view of the matching records.
+	 */
+	public Iterable<R> atLeast(K from) {
+		return this.flatten(this.buckets.tailMap(from, true));
+	}
+	
+	/**
+	 * Returns the records with the keys lower than or equal to the given one,
+	 * in the key order.
+	 * 
+	 * @param to Upper bound.
+	 * @return Lazy view of the matching records.
+	 */
+	public Iterable<R> atMost(K to) {
+		return this.flatten(this.buckets.headMap(to, true));
+	}
+	
+	/**
+	 * Returns the records with the greatest key lower than or equal to the given one.
+	 * 
+	 * @param key Searched key.
+	 * @return Collection of records, empty if there is no such key.
+	 */
+	public Collection<R> floor(K key) {
+		return this.entryView(this.buckets.floorEntry(key));
+	}
+	
+	/**
+	 * Returns the records with the least key greater than or equal to the given one.
+	 * 
+	 * @param key Searched key.
+	 * @return Collection of records, empty if there is no such key.
+	 */
+	public Collection<R> ceiling(K key) {
+		return this.entryView(this.buckets.ceilingEntry(key));
+	}
+	
+	/**
+	 * Returns the greatest key lower than or equal to the given one.
+	 * 
+	 * @param key Searched key.
+	 * @return Index key or null.
+	 */
+	public K floorKey(K key) {
+		return this.buckets.floorKey(key);
+	}
+	
+	/**
+	 * Returns the least key greater than or equal to the given one.
+	 * 
+	 * @param key Searched key.
+	 * @return Index key or null.
+	 */
+	public K ceilingKey(K key) {
+		return this.buckets.ceilingKey(key);
+	}
+	
+	/**
+	 * Returns at most <tt>n</tt> records with the lowest keys, in the ascending
+	 * key order. Only the returned records are visited.
+	 * 
+	 * @param n Maximum number of records.
+	 * @return List of records.
+	 */
+	public List<R> lowest(int n) {
+		return this.take(this.buckets, n);
+	}
+	
+	/**
+	 * Returns at most <tt>n</tt> records with the highest keys, in the descending
+	 * key order. Only the returned records are visited.
+	 * 
+	 * @param n Maximum number of records.
+	 * @return List of records.
+	 */
+	public List<R> highest(int n) {
+		return this.take(this.buckets.descendingMap(), n);
+	}
+	
+	/**
+	 * Returns the number of distinct keys.
+	 * 
+	 * @return Number of keys.
+	 */
+	public int keyNum() {
+		return this.buckets.size();
+	}
+	
+	@Override
+	long estimateOverhead() {
+		return this.estimateKeys(this.buckets.size())
+			+ FootprintUtils.object(3 * FootprintUtils.REFERENCE + 2 * 4)
+			+ (long) this.buckets.size() * FootprintUtils.TREE_ENTRY;
+	}
+	
+	@Override
+	void addEntry(K key, R record) {
+		this.buckets.put(key, RecordIndex.addToBucket(this.buckets.get(key), record));
+	}
+	
+	@Override
+	void removeEntry(K key, R record) {
+		Object bucket = RecordIndex.removeFromBucket(this.buckets.get(key), record);
+		if(null == bucket) {
+			this.buckets.remove(key);
+		} else {
+			this.buckets.put(key, bucket);
+		}
+	}
+	
+	/**
+	 * Produces a lazy view of all the records in the given buckets.
+	 * 
+	 * @param view Part of the bucket map.
+	 * @return Lazy record view.
+	 */
+	private Iterable<R> flatten(NavigableMap<K, Object> view) {
+		return Iterables.concat(Iterables.transform(view.values(), this.bucketViewFunction));
+	}
+	
+	/**
+	 * Returns the records of the single bucket.
+	 * 
+	 * @param entry Bucket entry or null.
+	 * @return Collection of records.
+	 */
+	private Collection<R> entryView(Map.Entry<K, Object> entry) {
+		if(null == entry) {
+			return RecordIndex.<R>bucketView(null);
+		}
+		return RecordIndex.<R>bucketView(entry.getValue());
+	}
+	
+	/**
+	 * Collects at most <tt>n</tt> records from the buckets, in their order.
+	 * 
+	 * @param view Bucket map.
+	 * @param n Maximum number of records.
+	 * @return List of records.
+	 */
+	private List<R> take(NavigableMap<K, Object> view, int n) {
+		Preconditions.checkArgument(n >= 0, "The number of records cannot be negative.");
+		List<R> result = new ArrayList<>(Math.min(n, this.size()));
+		for(Object bucket: view.values()) {
+			for(R record: RecordIndex.<R>bucketView(bucket)) {
+				if(result.size() == n) {
+					return result;
+				}
+				result.add(record);
+			}
+		}
+		return result;
+	}
+}
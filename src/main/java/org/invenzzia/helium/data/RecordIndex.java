@@ -0,0 +1,277 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Base class of the secondary indexes maintained by {@link AbstractDataManager}.
+ * The index key of each record is computed by the key extractor function. The
+ * index remembers the key, under which every record has been indexed, so that
+ * it can be moved, when the record is updated. Records with the <strong>null</strong>
+ * key are not indexed.
+ * 
+ * <p>A key that identifies a single record is mapped directly to that record
+ * in the index structures, and the set of records is allocated only for the keys
+ * shared by several records.</p>
+ * 
+ * <p>The indexes are maintained by the data manager and cannot be modified
+ * directly.</p>
+ * 
+ * @param R The type of indexed records.
+ * @param K The type of index keys.
+ * @author Tomasz Jędrzejewski
+ */
+public abstract class RecordIndex<R extends IIdentifiable, K> {
+	/**
+	 * Index name.
+	 */
+	private final String name;
+	/**
+	 * Computes the index key of the record.
+	 */
+	private final Function<? super R, ? extends K> keyExtractor;
+	/**
+	 * Keys under which the records are currently indexed.
+	 */
+	private final LongRecordMap<K> keys;
+	
+	RecordIndex(String name, Function<? super R, ? extends K> keyExtractor) {
+		this.name = Preconditions.checkNotNull(name, "The index name cannot be empty.");
+		this.keyExtractor = Preconditions.checkNotNull(keyExtractor, "The index needs a key extractor.");
+		this.keys = new LongRecordMap<>();
+	}
+	
+	/**
+	 * Returns the index name.
+	 * 
+	 * @return Index name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Returns the number of indexed records.
+	 * 
+	 * @return Number of indexed records.
+	 */
+	public int size() {
+		return this.keys.size();
+	}
+	
+	/**
+	 * Computes the current index key of the given record.
+	 * 
+	 * @param record The record.
+	 * @return Index key or null.
+	 */
+	final K extractKey(R record) {
+		return this.keyExtractor.apply(record);
+	}
+	
+	/**
+	 * Returns the key, under which the record with the given ID is indexed.
+	 * 
+	 * @param id Record ID.
+	 * @return Index key or null.
+	 */
+	final K indexedKey(long id) {
+		return this.keys.get(id);
+	}
+	
+	/**
+	 * Adds a new record to the index.
+	 * 
+	 * @param record The record.
+	 */
+	final void insert(R record) {
+		K key = this.extractKey(record);
+		if(null != key) {
+			this.keys.put(record.getId(), key);
+			this.addEntry(key, record);
+		}
+	}
+	
+	/**
+	 * Moves the record to its new key, if the key has changed.
+	 * 
+	 * @param record The record.
+	 */
+	final void update(R record) {
+		K previous = this.keys.get(record.getId());
+		K key = this.extractKey(record);
+		if(Objects.equal(previous, key)) {
+			return;
+		}
+		if(null != previous) {
+			this.removeEntry(previous, record);
+		}
+		if(null != key) {
+			this.keys.put(record.getId(), key);
+			this.addEntry(key, record);
+		} else {
+			this.keys.remove(record.getId());
+		}
+	}
+	
+	/**
+	 * Removes the record from the index.
+	 * 
+	 * @param record The record.
+	 */
+	final void remove(R record) {
+		K previous = this.keys.remove(record.getId());
+		if(null != previous) {
+			this.removeEntry(previous, record);
+		}
+	}
+	
+	/**
+	 * Adds the record under the given key to the index structure.
+	 * 
+	 * @param key Index key.
+	 * @param record The record.
+	 */
+	abstract void addEntry(K key, R record);
+	
+	/**
+	 * Removes the record under the given key from the index structure.
+	 * 
+	 * @param key Index key.
+	 * @param record The record.
+	 */
+	abstract void removeEntry(K key, R record);
+	
+	/**
+	 * Returns the approximate number of bytes used by the index structures,
+	 * without the records.
+	 * 
+	 * @return Size in bytes.
+	 */
+	abstract long estimateOverhead();
+	
+	/**
+	 * Estimates the structures common to all the indexes: the remembered keys, and
+	 * the record sets allocated for the shared keys.
+	 * 
+	 * @param keyNum Number of distinct keys.
+	 * @return Size in bytes.
+	 */
+	final long estimateKeys(int keyNum) {
+		return FootprintUtils.object(3 * FootprintUtils.REFERENCE)
+			+ this.keys.estimateOverhead()
+			+ (long) (this.keys.size() - keyNum) * FootprintUtils.LINKED_ENTRY;
+	}
+	
+	/**
+	 * Adds the record to the bucket.
+	 * 
+	 * @param bucket Current bucket: null, a single record or a record set.
+	 * @param record The record to add.
+	 * @return New bucket.
+	 */
+	static <R> Object addToBucket(Object bucket, R record) {
+		if(null == bucket) {
+			return record;
+		} else if(bucket instanceof RecordSet) {
+			((RecordSet<R>) bucket).add(record);
+			return bucket;
+		}
+		RecordSet<R> set = new RecordSet<>();
+		set.add((R) bucket);
+		set.add(record);
+		return set;
+	}
+	
+	/**
+	 * Removes the record from the bucket.
+	 * 
+	 * @param bucket Current bucket: null, a single record or a record set.
+	 * @param record The record to remove.
+	 * @return New bucket or null, if the bucket became empty.
+	 */
+	static <R> Object removeFromBucket(Object bucket, R record) {
+		if(bucket instanceof RecordSet) {
+			RecordSet<R> set = (RecordSet<R>) bucket;
+			set.remove(record);
+			if(set.size() == 1) {
+				return set.iterator().next();
+			}
+			return set;
+		} else if(bucket == record) {
+			return null;
+		}
+		return bucket;
+	}
+	
+	/**
+	 * Returns a read-only view of the bucket content.
+	 * 
+	 * @param bucket Bucket: null, a single record or a record set.
+	 * @return Collection of records.
+	 */
+	static <R> Collection<R> bucketView(Object bucket) {
+		if(null == bucket) {
+			return Collections.emptySet();
+		} else if(bucket instanceof RecordSet) {
+			return Collections.unmodifiableSet((RecordSet<R>) bucket);
+		}
+		return Collections.singleton((R) bucket);
+	}
+	
+	/**
+	 * Returns the number of records in the bucket.
+	 * 
+	 * @param bucket Bucket: null, a single record or a record set.
+	 * @return Number of records.
+	 */
+	static int bucketSize(Object bucket) {
+		if(null == bucket) {
+			return 0;
+		} else if(bucket instanceof RecordSet) {
+			return ((RecordSet<?>) bucket).size();
+		}
+		return 1;
+	}
+	
+	/**
+	 * Returns any record from the bucket.
+	 * 
+	 * @param bucket Bucket: null, a single record or a record set.
+	 * @return Record or null.
+	 */
+	static <R> R bucketRecord(Object bucket) {
+		if(bucket instanceof RecordSet) {
+			return ((RecordSet<R>) bucket).iterator().next();
+		}
+		return (R) bucket;
+	}
+	
+	/**
+	 * Distinguishes the record sets from the records that happen to be sets.
+	 */
+	static final class RecordSet<R> extends LinkedHashSet<R> {
+	}
+}
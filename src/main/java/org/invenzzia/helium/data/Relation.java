@@ -16,28 +16,77 @@
 package org.invenzzia.helium.data;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.invenzzia.helium.data.utils.FootprintUtils;
 import org.invenzzia.helium.exception.ModelException;
 
 /**
  * Represents a relation in the data model.
  * 
+ * <p>The relation adapts its representation to the number of related objects.
+ * An empty relation allocates nothing. Small relations keep the objects in
+ * a short array that is scanned linearly. Once the relation grows beyond
+ * {@link #SMALL_CAPACITY} objects, an open-addressing hash table with the
+ * positions in the array is added. In both cases, the objects are compared with
+ * <tt>equals()</tt>, and the iteration follows the attachment order. A null
+ * object can be attached, too; it is stored as the {@link #NULL} marker, because
+ * the plain nulls mark the detached slots.</p>
+ * 
  * @param R type of related records.
  * @author Tomasz Jędrzejewski
  */
-public class Relation<R> {
+public class Relation<R> implements Iterable<R> {
 	/**
-	 * Map of all related objects.
+	 * Maximum number of objects kept without the hash table.
 	 */
-	private Set<R> relatives;
-	
-	public Relation() {
-		this.relatives = new LinkedHashSet<>();
-	}
+	static final int SMALL_CAPACITY = 8;
+	/**
+	 * Size of the array allocated for the first object.
+	 */
+	private static final int INITIAL_CAPACITY = 2;
+	/**
+	 * Marks the unused slots of the hash table.
+	 */
+	private static final int EMPTY = -1;
+	/**
+	 * Stands for an attached null object in the array.
+	 */
+	private static final Object NULL = new Object();
+	/**
+	 * Related objects in the attachment order. The hashed representation leaves
+	 * nulls in place of the detached objects. Null for an empty relation.
+	 */
+	private Object relatives[];
+	/**
+	 * Open-addressing table with the positions of the objects in the array. Null
+	 * for the small relations.
+	 */
+	private int table[];
+	/**
+	 * Number of used array slots, including the detached ones.
+	 */
+	private int entryNum;
+	/**
+	 * Number of related objects.
+	 */
+	private int size;
+	/**
+	 * Structural modification counter for detecting concurrent modifications.
+	 */
+	private int modCount;
+	/**
+	 * Immutable copy of the relatives returned by {@link #getRelated()}. It is
+	 * dropped by every modification, and built again on the first request.
+	 */
+	private ImmutableSet<R> snapshot;
 
 	/**
 	 * Allows checking if the given record is attached to this relation.
@@ -46,7 +95,7 @@ public class Relation<R> {
 	 * @return True, if that object is in this relation.
 	 */
 	public boolean isAttached(R object) {
-		return this.relatives.contains(object);
+		return this.indexOf(maskNull(object)) >= 0;
 	}
 
 	/**
@@ -56,10 +105,29 @@ public class Relation<R> {
 	 * @throws ModelException 
 	 */
 	public void attach(R object) throws ModelException {
-		if(this.relatives.contains(object)) {
-			throw new ModelException("The record '"+object.toString()+"' is already attached to this relation.");
+		Object masked = maskNull(object);
+		if(this.indexOf(masked) >= 0) {
+			throw new ModelException("The record '"+String.valueOf(object)+"' is already attached to this relation.");
 		}
-		this.relatives.add(object);
+		if(null == this.relatives) {
+			this.relatives = new Object[INITIAL_CAPACITY];
+		} else if(this.entryNum == this.relatives.length) {
+			if(null != this.table && this.entryNum - this.size >= (this.entryNum >> 1)) {
+				this.resize(this.relatives.length);
+			} else {
+				this.resize(this.relatives.length << 1);
+			}
+		}
+		int entry = this.entryNum++;
+		this.relatives[entry] = masked;
+		this.size++;
+		if(null != this.table) {
+			this.table[-this.findSlot(masked) - 1] = entry;
+		} else if(this.size > SMALL_CAPACITY) {
+			this.resize(this.relatives.length);
+		}
+		this.modCount++;
+		this.snapshot = null;
 	}
 	
 	/**
@@ -69,10 +137,50 @@ public class Relation<R> {
 	 * @throws ModelException 
 	 */
 	public void detach(R object) throws ModelException {
-		if(!this.relatives.contains(object)) {
-			throw new ModelException("The record '"+object.toString()+"' cannot be detached: not attached.");
+		Object masked = maskNull(object);
+		int slot = -1;
+		int entry;
+		if(null == this.table) {
+			entry = this.indexOf(masked);
+		} else {
+			slot = this.findSlot(masked);
+			entry = slot >= 0 ? this.table[slot] : -1;
+		}
+		if(entry < 0) {
+			throw new ModelException("The record '"+String.valueOf(object)+"' cannot be detached: not attached.");
+		}
+		this.size--;
+		if(0 == this.size) {
+			this.relatives = null;
+			this.table = null;
+			this.entryNum = 0;
+		} else if(null == this.table) {
+			System.arraycopy(this.relatives, entry + 1, this.relatives, entry, this.entryNum - entry - 1);
+			this.relatives[--this.entryNum] = null;
+		} else {
+			this.relatives[entry] = null;
+			this.deleteSlot(slot);
+			while(null == this.relatives[this.entryNum - 1]) {
+				this.entryNum--;
+			}
+			if(this.size <= (SMALL_CAPACITY >> 1)) {
+				this.resize(SMALL_CAPACITY);
+			}
 		}
-		this.relatives.remove(object);
+		this.modCount++;
+		this.snapshot = null;
+	}
+	
+	/**
+	 * Detaches all the objects at once. The reverse mapping must be updated manually.
+	 */
+	void clear() {
+		this.relatives = null;
+		this.table = null;
+		this.entryNum = 0;
+		this.size = 0;
+		this.modCount++;
+		this.snapshot = null;
 	}
 	
 	/**
@@ -81,7 +189,7 @@ public class Relation<R> {
 	 * @return Number of related objects.
 	 */
 	public int size() {
-		return this.relatives.size();
+		return this.size;
 	}
 	
 	/**
@@ -90,16 +198,102 @@ public class Relation<R> {
 	 * @return Whether this relation is empty.
 	 */
 	public boolean isEmpty() {
-		return this.relatives.isEmpty();
+		return 0 == this.size;
 	}
 	
 	/**
-	 * Returns an immutable collection of all related objects.
+	 * Returns an immutable collection of all related objects. The collection is built
+	 * at most once between two modifications of the relation; until then, the same
+	 * instance is returned.
 	 * 
 	 * @return All related objects.
 	 */
 	public Collection<R> getRelated() {
-		return ImmutableSet.copyOf(this.relatives);
+		if(null == this.snapshot) {
+			this.snapshot = ImmutableSet.copyOf(this);
+		}
+		return this.snapshot;
+	}
+	
+	/**
+	 * Starts a lazy query over the related objects. The sequential queries iterate
+	 * directly over the relation, and the parallel queries split the snapshot
+	 * returned by {@link #getRelated()}.
+	 * 
+	 * @return New query.
+	 */
+	public Query<R> query() {
+		return new Query<>(this, new Supplier<List<R>>() {
+			@Override
+			public List<R> get() {
+				getRelated();
+				return snapshot.asList();
+			}
+		});
+	}
+	
+	/**
+	 * Iterates over the related objects in the attachment order, without copying
+	 * them. The iterator does not support removal.
+	 * 
+	 * @return Iterator.
+	 */
+	@Override
+	public Iterator<R> iterator() {
+		return new Iterator<R>() {
+			private int position = this.skip(0);
+			private final int expectedModCount = modCount;
+			
+			@Override
+			public boolean hasNext() {
+				return this.position < entryNum;
+			}
+			
+			@Override
+			public R next() {
+				if(this.expectedModCount != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				if(this.position >= entryNum) {
+					throw new NoSuchElementException();
+				}
+				R relative = Relation.<R>unmaskNull(relatives[this.position]);
+				this.position = this.skip(this.position + 1);
+				return relative;
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Use detach() to remove objects from the relation.");
+			}
+			
+			private int skip(int from) {
+				while(from < entryNum && null == relatives[from]) {
+					from++;
+				}
+				return from;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the approximate number of bytes used by the relation, without the
+	 * related objects.
+	 * 
+	 * @return Size in bytes.
+	 */
+	long estimateOverhead() {
+		long bytes = FootprintUtils.object(3 * FootprintUtils.REFERENCE + 3 * 4);
+		if(null != this.relatives) {
+			bytes += FootprintUtils.array(this.relatives.length, FootprintUtils.REFERENCE);
+		}
+		if(null != this.table) {
+			bytes += FootprintUtils.array(this.table.length, 4);
+		}
+		if(null != this.snapshot) {
+			bytes += 2 * FootprintUtils.array(this.size, FootprintUtils.REFERENCE);
+		}
+		return bytes;
 	}
 	
 	/**
@@ -111,11 +305,151 @@ public class Relation<R> {
 	 */
 	public Collection<R> filter(Predicate<R> predicate) {
 		HashSet<R> bound = new HashSet<>();
-		for(R relative: this.relatives) {
+		for(R relative: this) {
 			if(predicate.apply(relative)) {
 				bound.add(relative);
 			}
 		}
 		return bound;
 	}
+	
+	/**
+	 * Finds the position of the object in the array.
+	 * 
+	 * @param object The object to look for, with the null masked.
+	 * @return Array position or -1.
+	 */
+	private int indexOf(Object object) {
+		if(null == this.relatives) {
+			return -1;
+		}
+		if(null != this.table) {
+			int slot = this.findSlot(object);
+			return slot >= 0 ? this.table[slot] : -1;
+		}
+		for(int i = 0; i < this.entryNum; i++) {
+			Object relative = this.relatives[i];
+			if(relative == object || object.equals(relative)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Replaces the null object with the {@link #NULL} marker.
+	 * 
+	 * @param object The object to store or look for.
+	 * @return The object or the marker.
+	 */
+	private static Object maskNull(Object object) {
+		return null == object ? NULL : object;
+	}
+	
+	/**
+	 * Restores the null object replaced by {@link #maskNull(Object)}.
+	 * 
+	 * @param object The stored object.
+	 * @return The related object.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <R> R unmaskNull(Object object) {
+		return NULL == object ? null : (R) object;
+	}
+	
+	/**
+	 * Scatters the bits of the hash code over the table.
+	 * 
+	 * @param object The object to hash.
+	 * @return Hash code.
+	 */
+	private static int hash(Object object) {
+		int h = object.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Looks for the hash table slot of the given object.
+	 * 
+	 * @param object The object to look for, with the null masked.
+	 * @return Slot index, or <tt>-(insertion slot + 1)</tt>, if the object is not attached.
+	 */
+	private int findSlot(Object object) {
+		int mask = this.table.length - 1;
+		int slot = hash(object) & mask;
+		while(true) {
+			int entry = this.table[slot];
+			if(EMPTY == entry) {
+				return -slot - 1;
+			}
+			Object relative = this.relatives[entry];
+			if(relative == object || object.equals(relative)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/**
+	 * Frees the slot with the backward shift deletion, so that the probe sequences
+	 * stay unbroken without any deletion markers.
+	 * 
+	 * @param hole The slot to free.
+	 */
+	private void deleteSlot(int hole) {
+		int mask = this.table.length - 1;
+		int slot = hole;
+		while(true) {
+			slot = (slot + 1) & mask;
+			int entry = this.table[slot];
+			if(EMPTY == entry) {
+				break;
+			}
+			int ideal = hash(this.relatives[entry]) & mask;
+			if(((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+				this.table[hole] = entry;
+				hole = slot;
+			}
+		}
+		this.table[hole] = EMPTY;
+	}
+	
+	/**
+	 * Moves the attached objects to the beginning of an array of the given
+	 * capacity, and chooses the representation for the current size: the hash
+	 * table is rebuilt for the large relations, and dropped for the small ones.
+	 * 
+	 * @param capacity New array capacity.
+	 */
+	private void resize(int capacity) {
+		Object newRelatives[] = this.relatives;
+		if(capacity != this.relatives.length) {
+			newRelatives = new Object[capacity];
+		}
+		int live = 0;
+		for(int i = 0; i < this.entryNum; i++) {
+			if(null != this.relatives[i]) {
+				newRelatives[live++] = this.relatives[i];
+			}
+		}
+		if(newRelatives == this.relatives) {
+			Arrays.fill(newRelatives, live, this.entryNum, null);
+		}
+		this.relatives = newRelatives;
+		this.entryNum = live;
+		if(live <= SMALL_CAPACITY) {
+			this.table = null;
+			return;
+		}
+		this.table = new int[Integer.highestOneBit(capacity) << 2];
+		Arrays.fill(this.table, EMPTY);
+		int mask = this.table.length - 1;
+		for(int i = 0; i < live; i++) {
+			int slot = hash(newRelatives[i]) & mask;
+			while(EMPTY != this.table[slot]) {
+				slot = (slot + 1) & mask;
+			}
+			this.table[slot] = i;
+		}
+	}
 }
@@ -0,0 +1,668 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.invenzzia.helium.data.interfaces.ICRUDManager;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Thread-safe data manager partitioned into independent shards, each one with
+ * its own lock, storage and ID sequence. With <tt>N</tt> shards, the shard
+ * <tt>i</tt> allocates the IDs <tt>i + 1</tt>, <tt>i + 1 + N</tt>, <tt>i + 1 + 2N</tt>
+ * and so on, so the shard of every record follows directly from its ID, and
+ * the shards never have to agree on anything. A new record goes to the shard
+ * selected by the current thread, so that the threads adding the records in
+ * parallel usually do not meet each other at all.
+ * 
+ * <p>The reads take the read lock of a single shard. {@link #filter} and
+ * {@link #aggregate} scan all the shards in parallel and merge the results in
+ * the shard order. The hooks are called while holding the write lock of the
+ * shard of the processed record, and the failure semantics are the same, as in
+ * {@link AbstractDataManager}. A hook can access only the shards it holds:
+ * reading or modifying the records of another shard would lock that shard, and
+ * two hooks on different threads could wait for each other forever. Such calls
+ * throw {@link IllegalStateException}. Therefore a hook can scan the whole
+ * manager only if it has a single shard, and then the scan runs on the calling
+ * thread.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public abstract class ShardedDataManager<R extends IIdentifiable> implements ICRUDManager<R> {
+	/**
+	 * The shards.
+	 */
+	private final Shard<R> shards[];
+	/**
+	 * Pool for the parallel scans.
+	 */
+	private final ForkJoinPool pool;
+	
+	public ShardedDataManager() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a manager with the given number of shards.
+	 * 
+	 * @param shardNum Number of shards.
+	 */
+	public ShardedDataManager(int shardNum) {
+		this(shardNum, Query.DEFAULT_POOL);
+	}
+	
+	/**
+	 * Creates a manager with the given number of shards, which uses the given pool
+	 * for the parallel scans.
+	 * 
+	 * @param shardNum Number of shards.
+	 * @param pool Fork-join pool.
+	 */
+	public ShardedDataManager(int shardNum, ForkJoinPool pool) {
+		Preconditions.checkArgument(shardNum > 0 && shardNum <= (1 << 16), "Invalid number of shards: "+shardNum);
+		// Generic arrays cannot be created; the array never leaves this class.
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Shard<R> created[] = new Shard[shardNum];
+		for(int i = 0; i < shardNum; i++) {
+			created[i] = new Shard<>(IIdentifiable.INCREMENTATION_START + i);
+		}
+		this.shards = created;
+		this.pool = Preconditions.checkNotNull(pool);
+	}
+	
+	/**
+	 * Returns the number of shards.
+	 * 
+	 * @return Number of shards.
+	 */
+	public final int getShardNum() {
+		return this.shards.length;
+	}
+	
+	/**
+	 * Sets the next IDs of all the shards for automatic generation. The method shall
+	 * be used only when reading the state from the disk.
+	 * 
+	 * @param nextIds Next ID for every shard.
+	 */
+	public final void setNextIds(long nextIds[]) {
+		Preconditions.checkArgument(nextIds.length == this.shards.length, "Expected "+this.shards.length+" IDs.");
+		for(int i = 0; i < nextIds.length; i++) {
+			if(this.shardIndexOf(nextIds[i]) != i) {
+				throw new IllegalArgumentException("The ID #"+nextIds[i]+" does not belong to the shard "+i+".");
+			}
+		}
+		for(int i = 0; i < nextIds.length; i++) {
+			Shard<R> shard = this.shards[i];
+			this.checkAccess(shard);
+			shard.lock.writeLock().lock();
+			try {
+				shard.nextId = nextIds[i];
+			} finally {
+				shard.lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Retrieves the next IDs of all the shards. The method shall be used only when
+	 * writing the state to the disk.
+	 * 
+	 * @return Next ID for every shard.
+	 */
+	public final long[] getNextIds() {
+		long nextIds[] = new long[this.shards.length];
+		for(int i = 0; i < nextIds.length; i++) {
+			Shard<R> shard = this.shards[i];
+			this.checkAccess(shard);
+			shard.lock.readLock().lock();
+			try {
+				nextIds[i] = shard.nextId;
+			} finally {
+				shard.lock.readLock().unlock();
+			}
+		}
+		return nextIds;
+	}
+	
+	/**
+	 * Adds a new item to the shard of the current thread.
+	 * 
+	 * @param item 
+	 */
+	@Override
+	public final void addItem(R item) throws ModelException {
+		if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+			throw new IllegalArgumentException("Cannot add a previously added record.");
+		}
+		Shard<R> shard = this.currentShard();
+		this.checkAccess(shard);
+		shard.lock.writeLock().lock();
+		try {
+			item.setId(shard.nextId);
+			shard.nextId += this.shards.length;
+			
+			this.beforeCreate(item);
+			shard.records.put(item.getId(), item);
+			this.afterCreate(item);
+		} catch(ModelException exception) {
+			shard.nextId -= this.shards.length;
+			throw exception;
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Adds a group of new items to the shard of the current thread. If any item is
+	 * rejected, the IDs are rolled back and no item is added.
+	 * 
+	 * @param items The new items to add.
+	 */
+	@Override
+	public final void addAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+				throw new IllegalArgumentException("Cannot add a previously added record.");
+			}
+		}
+		Shard<R> shard = this.currentShard();
+		this.checkAccess(shard);
+		shard.lock.writeLock().lock();
+		long firstId = shard.nextId;
+		try {
+			for(R item: batch) {
+				item.setId(shard.nextId);
+				shard.nextId += this.shards.length;
+			}
+			for(R item: batch) {
+				this.beforeCreate(item);
+			}
+			shard.records.ensureCapacity(shard.records.size() + batch.size());
+			for(R item: batch) {
+				shard.records.put(item.getId(), item);
+			}
+			for(R item: batch) {
+				this.afterCreate(item);
+			}
+		} catch(ModelException exception) {
+			shard.nextId = firstId;
+			throw exception;
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Reports the modification of the record.
+	 * 
+	 * @param item Changed record.
+	 */
+	@Override
+	public final void updateItem(R item) throws ModelException {
+		Shard<R> shard = this.existingShardOf(item.getId());
+		this.checkAccess(shard);
+		shard.lock.writeLock().lock();
+		try {
+			this.checkStored(shard, item);
+			this.beforeUpdate(item);
+			this.afterUpdate(item);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes the record with the specified ID.
+	 * 
+	 * @param id 
+	 */
+	@Override
+	public final void removeItem(long id) throws ModelException {
+		Shard<R> shard = this.existingShardOf(id);
+		this.checkAccess(shard);
+		shard.lock.writeLock().lock();
+		try {
+			R item = shard.records.get(id);
+			if(null == item) {
+				throw new ModelException("The record with ID #"+id+" does not exist.");
+			}
+			this.beforeRemove(item);
+			shard.records.remove(id);
+			this.afterRemove(item);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes the specified record.
+	 * 
+	 * @param item 
+	 */
+	@Override
+	public final void removeItem(R item) throws ModelException {
+		Shard<R> shard = this.existingShardOf(item.getId());
+		this.checkAccess(shard);
+		shard.lock.writeLock().lock();
+		try {
+			this.checkStored(shard, item);
+			this.beforeRemove(item);
+			shard.records.remove(item.getId());
+			this.afterRemove(item);
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes a group of records. The write locks of all the involved shards are
+	 * held during the operation. If any record is rejected, no record is removed.
+	 * 
+	 * @param items The records to remove.
+	 */
+	@Override
+	public final void removeAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		boolean involved[] = new boolean[this.shards.length];
+		for(R item: batch) {
+			this.existingShardOf(item.getId());
+			involved[this.shardIndexOf(item.getId())] = true;
+		}
+		for(int i = 0; i < involved.length; i++) {
+			if(involved[i]) {
+				this.checkAccess(this.shards[i]);
+			}
+		}
+		int locked = 0;
+		try {
+			for(; locked < involved.length; locked++) {
+				if(involved[locked]) {
+					this.shards[locked].lock.writeLock().lock();
+				}
+			}
+			for(R item: batch) {
+				this.checkStored(this.shardOf(item.getId()), item);
+			}
+			for(R item: batch) {
+				this.beforeRemove(item);
+			}
+			for(R item: batch) {
+				this.shardOf(item.getId()).records.remove(item.getId());
+			}
+			for(R item: batch) {
+				this.afterRemove(item);
+			}
+		} finally {
+			for(int i = locked - 1; i >= 0; i--) {
+				if(involved[i]) {
+					this.shards[i].lock.writeLock().unlock();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds a single record with the given ID.
+	 * 
+	 * @param id Internal ID.
+	 * @return Data record or NULL.
+	 */
+	@Override
+	public final R findById(long id) {
+		if(id < IIdentifiable.INCREMENTATION_START) {
+			return null;
+		}
+		Shard<R> shard = this.shardOf(id);
+		this.checkAccess(shard);
+		shard.lock.readLock().lock();
+		try {
+			return shard.records.get(id);
+		} finally {
+			shard.lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of currently stored records. The shards are counted one
+	 * after another, so the result may miss the concurrent modifications.
+	 * 
+	 * @return Number of records.
+	 */
+	public final int size() {
+		int size = 0;
+		for(Shard<R> shard: this.shards) {
+			this.checkAccess(shard);
+			shard.lock.readLock().lock();
+			try {
+				size += shard.records.size();
+			} finally {
+				shard.lock.readLock().unlock();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns all the records, shard by shard.
+	 * 
+	 * @return Immutable list of records.
+	 */
+	public final List<R> getRecords() {
+		ImmutableList.Builder<R> builder = ImmutableList.builder();
+		for(Shard<R> shard: this.shards) {
+			this.checkAccess(shard);
+			shard.lock.readLock().lock();
+			try {
+				builder.addAll(shard.records);
+			} finally {
+				shard.lock.readLock().unlock();
+			}
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Filters the records that match the specified condition. The shards are scanned
+	 * in parallel, and the results are merged in the shard order.
+	 * 
+	 * @param predicate Thread-safe condition.
+	 * @return List of matching records.
+	 */
+	public final List<R> filter(final Predicate<? super R> predicate) {
+		List<List<R>> parts = this.aggregateShards(new Function<Iterable<R>, List<R>>() {
+			@Override
+			public List<R> apply(Iterable<R> records) {
+				List<R> results = new ArrayList<>();
+				for(R item: records) {
+					if(predicate.apply(item)) {
+						results.add(item);
+					}
+				}
+				return results;
+			}
+		});
+		int size = 0;
+		for(List<R> part: parts) {
+			size += part.size();
+		}
+		List<R> results = new ArrayList<>(size);
+		for(List<R> part: parts) {
+			results.addAll(part);
+		}
+		return results;
+	}
+	
+	/**
+	 * Computes a partial result for every shard in parallel, and merges them. The
+	 * shard function is called under the read lock of the shard, and shall not keep
+	 * the reference to the given records.
+	 * 
+	 * @param shardFunction Computes the partial result of a single shard.
+	 * @param merge Merges the partial results, given in the shard order.
+	 * @return Merged result.
+	 */
+	public final <A, V> V aggregate(Function<? super Iterable<R>, A> shardFunction, Function<? super List<A>, V> merge) {
+		return merge.apply(this.aggregateShards(shardFunction));
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method can terminate the
+	 * addition by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeCreate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterCreate(R item) {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method can terminate the
+	 * update by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeUpdate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterUpdate(R item) {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method can terminate the
+	 * removal by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeRemove(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterRemove(R item) {
+	}
+	
+	/**
+	 * Raw object adding, i.e. for implementing mementos etc. The next ID of the shard
+	 * is moved past the given one.
+	 * 
+	 * @param id Id of the object to add.
+	 * @param item The object to add.
+	 */
+	protected void addObject(long id, R item) {
+		if(id < IIdentifiable.INCREMENTATION_START) {
+			throw new IllegalArgumentException("Invalid record ID #"+id+".");
+		}
+		Shard<R> shard = this.shardOf(id);
+		this.checkAccess(shard);
+		shard.lock.writeLock().lock();
+		try {
+			if(shard.records.containsKey(id)) {
+				throw new IllegalArgumentException("The object with the same ID #"+id+" is added twice. Check your memento/record implementation whether you have copied the ID.");
+			}
+			shard.records.put(id, Preconditions.checkNotNull(item));
+			if(id >= shard.nextId) {
+				shard.nextId = id + this.shards.length;
+			}
+		} finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Runs the function for every shard in parallel, under the shard read locks.
+	 * A hook can scan the manager only if it holds the write locks of all the
+	 * shards; then the shards are scanned serially on the current thread, because
+	 * the pool workers would wait for those locks.
+	 * 
+	 * @param shardFunction Function computing the partial result.
+	 * @return Partial results in the shard order.
+	 */
+	private <A> List<A> aggregateShards(final Function<? super Iterable<R>, A> shardFunction) {
+		for(Shard<R> shard: this.shards) {
+			this.checkAccess(shard);
+		}
+		if(this.shards[0].lock.isWriteLockedByCurrentThread()) {
+			return this.aggregateSerially(shardFunction);
+		}
+		List<ForkJoinTask<A>> tasks = new ArrayList<>(this.shards.length);
+		for(final Shard<R> shard: this.shards) {
+			tasks.add(this.pool.submit(new Callable<A>() {
+				@Override
+				public A call() {
+					shard.lock.readLock().lock();
+					try {
+						return shardFunction.apply(Collections.unmodifiableCollection(shard.records.values()));
+					} finally {
+						shard.lock.readLock().unlock();
+					}
+				}
+			}));
+		}
+		List<A> results = new ArrayList<>(tasks.size());
+		for(ForkJoinTask<A> task: tasks) {
+			results.add(task.join());
+		}
+		return results;
+	}
+	
+	/**
+	 * Runs the function for every shard on the current thread, under the shard
+	 * read locks.
+	 * 
+	 * @param shardFunction Function computing the partial result.
+	 * @return Partial results in the shard order.
+	 */
+	private <A> List<A> aggregateSerially(Function<? super Iterable<R>, A> shardFunction) {
+		List<A> results = new ArrayList<>(this.shards.length);
+		for(Shard<R> shard: this.shards) {
+			shard.lock.readLock().lock();
+			try {
+				results.add(shardFunction.apply(Collections.unmodifiableCollection(shard.records.values())));
+			} finally {
+				shard.lock.readLock().unlock();
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Selects the shard that allocates new records for the current thread.
+	 * 
+	 * @return Shard.
+	 */
+	private Shard<R> currentShard() {
+		long threadId = Thread.currentThread().getId();
+		return this.shards[(int) ((threadId ^ (threadId >>> 32)) & Integer.MAX_VALUE) % this.shards.length];
+	}
+	
+	/**
+	 * Returns the index of the shard that owns the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Shard index.
+	 */
+	private int shardIndexOf(long id) {
+		return (int) ((id - IIdentifiable.INCREMENTATION_START) % this.shards.length);
+	}
+	
+	/**
+	 * Returns the shard that owns the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Shard.
+	 */
+	private Shard<R> shardOf(long id) {
+		if(id < IIdentifiable.INCREMENTATION_START) {
+			throw new IllegalArgumentException("Invalid record ID #"+id+".");
+		}
+		return this.shards[this.shardIndexOf(id)];
+	}
+	
+	/**
+	 * Returns the shard that owns the given ID of an existing record.
+	 * 
+	 * @param id Record ID.
+	 * @return Shard.
+	 * @throws ModelException If the ID is invalid.
+	 */
+	private Shard<R> existingShardOf(long id) throws ModelException {
+		if(id < IIdentifiable.INCREMENTATION_START) {
+			throw new ModelException("The record with ID #"+id+" does not exist.");
+		}
+		return this.shards[this.shardIndexOf(id)];
+	}
+	
+	/**
+	 * Verifies that the current thread may lock the given shard. The hooks hold
+	 * the write locks of the shards of the processed records. If a hook locked
+	 * another shard, it could wait forever for a hook on another thread, which
+	 * holds that shard and waits for the opposite one.
+	 * 
+	 * @param shard The shard to lock.
+	 * @throws IllegalStateException If a hook tries to access another shard.
+	 */
+	private void checkAccess(Shard<R> shard) {
+		if(shard.lock.isWriteLockedByCurrentThread()) {
+			return;
+		}
+		for(Shard<R> other: this.shards) {
+			if(other.lock.isWriteLockedByCurrentThread()) {
+				throw new IllegalStateException("The hooks cannot access the shards other than the ones of the processed records.");
+			}
+		}
+	}
+	
+	/**
+	 * Verifies that the given instance is the stored one.
+	 * 
+	 * @param shard Shard of the record, locked by the caller.
+	 * @param item Record.
+	 * @throws ModelException If the record is not stored in this manager.
+	 */
+	private void checkStored(Shard<R> shard, R item) throws ModelException {
+		R stored = shard.records.get(item.getId());
+		if(null == stored || stored != item) {
+			throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+		}
+	}
+		
+	/**
+	 * Single partition of the records.
+	 */
+	private static final class Shard<R> {
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		final LongRecordMap<R> records = new LongRecordMap<>();
+		/**
+		 * Next ID allocated by this shard.
+		 */
+		long nextId;
+		
+		Shard(long firstId) {
+			this.nextId = firstId;
+		}
+	}
+}
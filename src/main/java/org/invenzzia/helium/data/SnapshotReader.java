@@ -0,0 +1,90 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordCodec;
+
+/**
+ * Loads the snapshot files written by {@link SnapshotWriter}. The records are
+ * restored with their original IDs and go directly to the storage and the
+ * indexes, without calling the creation hooks. The storage is pre-sized for
+ * the number of records declared in the header.
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public class SnapshotReader<R extends IIdentifiable> {
+	/**
+	 * Record codec.
+	 */
+	private final IRecordCodec<R> codec;
+	
+	public SnapshotReader(IRecordCodec<R> codec) {
+		this.codec = Preconditions.checkNotNull(codec, "The snapshot reader needs a record codec.");
+	}
+	
+	/**
+	 * Loads the records and the next ID from the given file into the manager. The
+	 * manager shall be empty, and on failure its content is undefined.
+	 * 
+	 * @param manager The loaded data manager.
+	 * @param path Snapshot file.
+	 * @return Sequence number of the last journal entry included in the snapshot.
+	 * @throws IOException If the file is damaged or cannot be read.
+	 */
+	public long read(AbstractDataManager<R> manager, Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), SnapshotWriter.BUFFER_SIZE));
+			if(input.readInt() != SnapshotWriter.MAGIC) {
+				throw new IOException("The file '"+path+"' is not a data manager snapshot.");
+			}
+			int version = input.readInt();
+			if(version != SnapshotWriter.FORMAT_VERSION) {
+				throw new IOException("Unsupported snapshot format version: "+version+".");
+			}
+			long nextId = input.readLong();
+			long sequence = input.readLong();
+			int count = input.readInt();
+			if(count < 0) {
+				throw new IOException("Invalid number of records in the snapshot: "+count+".");
+			}
+			manager.reserveCapacity(count);
+			for(int i = 0; i < count; i++) {
+				long id = input.readLong();
+				if(id < IIdentifiable.INCREMENTATION_START || id >= nextId) {
+					throw new IOException("Invalid record ID #"+id+" in the snapshot.");
+				}
+				R record = this.codec.decode(input);
+				record.setId(id);
+				manager.addObject(id, record);
+			}
+			if(input.read() != -1) {
+				throw new IOException("Unexpected data after the last record of the snapshot.");
+			}
+			manager.setNextId(nextId);
+			return sequence;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordCodec;
+
+/**
+ * Saves the content of a data manager to a binary snapshot file, which can be
+ * loaded back with {@link SnapshotReader}. The file consists of a header with the
+ * next ID, the journal sequence the snapshot was taken at, and the number of
+ * records, followed by the records, each one written as its ID and the codec
+ * output. The records are streamed through a large buffer directly to the file
+ * channel.
+ * 
+ * <p>The snapshot is written to a temporary file next to the target, forced to
+ * the disk, and then atomically moved over the target, so that a crash during
+ * the write never destroys the previous snapshot.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public class SnapshotWriter<R extends IIdentifiable> {
+	/**
+	 * Identifies the snapshot files.
+	 */
+	static final int MAGIC = 0x48454C53;
+	/**
+	 * Version of the file format.
+	 */
+	static final int FORMAT_VERSION = 1;
+	/**
+	 * Size of the I/O buffer.
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * Record codec.
+	 */
+	private final IRecordCodec<R> codec;
+	
+	public SnapshotWriter(IRecordCodec<R> codec) {
+		this.codec = Preconditions.checkNotNull(codec, "The snapshot writer needs a record codec.");
+	}
+	
+	/**
+	 * Writes the records and the next ID of the manager to the given file. The
+	 * existing file is replaced.
+	 * 
+	 * @param manager The saved data manager.
+	 * @param path Snapshot file.
+	 * @throws IOException 
+	 */
+	public void write(AbstractDataManager<R> manager, Path path) throws IOException {
+		this.write(manager, path, 0L);
+	}
+	
+	/**
+	 * Writes the records and the next ID of the manager to the given file, marking
+	 * the snapshot as taken after the given journal entry.
+	 * 
+	 * @param manager The saved data manager.
+	 * @param path Snapshot file.
+	 * @param sequence Sequence number of the last journal entry included in the snapshot.
+	 * @throws IOException 
+	 */
+	public void write(AbstractDataManager<R> manager, Path path, long sequence) throws IOException {
+		List<R> records = manager.getRecords();
+		Path temporary = path.resolveSibling(path.getFileName()+".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeLong(manager.getNextId());
+			output.writeLong(sequence);
+			output.writeInt(records.size());
+			for(R record: records) {
+				output.writeLong(record.getId());
+				this.codec.encode(record, output);
+			}
+			output.flush();
+			channel.force(false);
+		} catch(IOException | RuntimeException exception) {
+			Files.deleteIfExists(temporary);
+			throw exception;
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
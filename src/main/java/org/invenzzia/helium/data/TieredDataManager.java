@@ -0,0 +1,706 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.invenzzia.helium.data.interfaces.ICRUDManager;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordCodec;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Data manager for the models larger than the heap. At most the given number of
+ * records is kept in the memory; when the limit is reached, the coldest record,
+ * chosen by the {@link EvictionPolicy}, is encoded with the record codec and moved
+ * to the spill file. {@link #findById} loads the spilled records back transparently.
+ * The IDs are allocated in the same way, as in {@link AbstractDataManager}.
+ * 
+ * <p>A record loaded from the disk is a new instance. The references to the
+ * records shall not be kept across the calls to the manager: once a record is
+ * evicted, its instance is no longer managed. Passing such an instance to
+ * {@link #updateItem} or {@link #removeItem(IIdentifiable)} is still accepted,
+ * and the instance replaces the spilled copy.</p>
+ * 
+ * <p>Unlike in {@link AbstractDataManager}, every change of a record must be
+ * reported with {@link #updateItem} before the record can be evicted. A record
+ * loaded back by {@link #findById} keeps its spilled copy as valid. If such a
+ * record is changed in place and never reported, the eviction drops it without
+ * writing it again, and the change is lost.</p>
+ * 
+ * <p>The space of the obsolete copies in the spill file is reclaimed, when they
+ * take more than a half of the file. The manager is not thread-safe.</p>
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public abstract class TieredDataManager<R extends IIdentifiable> implements ICRUDManager<R>, Closeable {
+	/**
+	 * How the record to evict is chosen.
+	 */
+	public static enum EvictionPolicy {
+		/**
+		 * The least recently used record.
+		 */
+		LRU,
+		/**
+		 * The least frequently used record; the ties are broken by the recency.
+		 */
+		LFU
+	}
+	/**
+	 * The spill file is not compacted, until it is at least that large.
+	 */
+	private static final long MIN_COMPACTION_SIZE = 1 << 20;
+	/**
+	 * Auto-incrementation.
+	 */
+	private long nextId = IIdentifiable.INCREMENTATION_START;
+	/**
+	 * Records kept in the memory.
+	 */
+	private final LongRecordMap<R> resident = new LongRecordMap<>();
+	/**
+	 * Chooses the records to evict.
+	 */
+	private final EvictionQueue queue;
+	/**
+	 * Maximum number of records kept in the memory.
+	 */
+	private final int maxResident;
+	/**
+	 * Record codec.
+	 */
+	private final IRecordCodec<R> codec;
+	/**
+	 * Spill file.
+	 */
+	private final Path path;
+	private FileChannel channel;
+	/**
+	 * Locations of the valid copies in the spill file. A resident record may
+	 * have a valid copy, if it has not been modified since it was loaded.
+	 */
+	private final LongRecordMap<Location> spilled = new LongRecordMap<>();
+	/**
+	 * Number of bytes taken by the obsolete copies.
+	 */
+	private long garbage;
+	/**
+	 * Total number of records.
+	 */
+	private int size;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long spillWrites;
+	
+	/**
+	 * Creates the manager with an empty spill file.
+	 * 
+	 * @param codec Record codec.
+	 * @param path Spill file; the existing content is discarded.
+	 * @param maxResident Maximum number of records kept in the memory.
+	 * @param policy Eviction policy.
+	 * @throws IOException 
+	 */
+	public TieredDataManager(IRecordCodec<R> codec, Path path, int maxResident, EvictionPolicy policy) throws IOException {
+		Preconditions.checkArgument(maxResident > 0, "The manager must keep at least one record in the memory.");
+		this.codec = Preconditions.checkNotNull(codec, "The tiered manager needs a record codec.");
+		this.path = Preconditions.checkNotNull(path);
+		this.maxResident = maxResident;
+		this.queue = (Preconditions.checkNotNull(policy) == EvictionPolicy.LRU ? new LruQueue() : new LfuQueue());
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	/**
+	 * Sets the next ID for automatic generation. The method shall be used only when reading
+	 * the state from the disk.
+	 * 
+	 * @param nextId 
+	 */
+	public final void setNextId(long nextId) {
+		this.nextId = nextId;
+	}
+	
+	/**
+	 * Retrieves the current value of the next ID. The method shall be used only when
+	 * writing the state to the disk.
+	 * 
+	 * @return Next ID value.
+	 */
+	public final long getNextId() {
+		return this.nextId;
+	}
+	
+	/**
+	 * Adds a new item to the manager.
+	 * 
+	 * @param item 
+	 */
+	@Override
+	public final void addItem(R item) throws ModelException {
+		if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+			throw new IllegalArgumentException("Cannot add a previously added record.");
+		}
+		try {
+			item.setId(this.nextId++);
+			
+			this.beforeCreate(item);
+			this.admit(item);
+			this.size++;
+			this.afterCreate(item);
+		} catch(ModelException | IllegalStateException exception) {
+			this.nextId--;
+			throw exception;
+		}
+	}
+	
+	/**
+	 * Adds a group of new items to the manager. A block of consecutive IDs is reserved
+	 * for the whole group. If any item is rejected, or an eviction fails while the
+	 * items are admitted, the ID counter is rolled back and no item is added.
+	 * 
+	 * @param items The new items to add.
+	 */
+	@Override
+	public final void addAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			if(item.getId() != IIdentifiable.NEUTRAL_ID) {
+				throw new IllegalArgumentException("Cannot add a previously added record.");
+			}
+		}
+		long firstId = this.nextId;
+		try {
+			this.nextId += batch.size();
+			long id = firstId;
+			for(R item: batch) {
+				item.setId(id++);
+			}
+			for(R item: batch) {
+				this.beforeCreate(item);
+			}
+		} catch(ModelException exception) {
+			this.nextId = firstId;
+			throw exception;
+		}
+		int admitted = 0;
+		try {
+			for(R item: batch) {
+				this.admit(item);
+				this.size++;
+				admitted++;
+			}
+		} catch(IllegalStateException exception) {
+			for(int i = 0; i < admitted; i++) {
+				this.forget(batch.get(i).getId());
+			}
+			this.nextId = firstId;
+			throw exception;
+		}
+		for(R item: batch) {
+			this.afterCreate(item);
+		}
+	}
+	
+	/**
+	 * Reports the modification of the record. If the record has been evicted in
+	 * the meantime, the given instance replaces the spilled copy.
+	 * 
+	 * @param item Changed record.
+	 */
+	@Override
+	public final void updateItem(R item) throws ModelException {
+		this.checkManaged(item);
+		this.beforeUpdate(item);
+		this.discardCopy(item.getId());
+		if(null == this.resident.get(item.getId())) {
+			this.admit(item);
+		}
+		this.afterUpdate(item);
+	}
+	
+	/**
+	 * Removes the record with the specified ID, loading it from the disk, if necessary.
+	 * 
+	 * @param id 
+	 */
+	@Override
+	public final void removeItem(long id) throws ModelException {
+		R item = this.findById(id);
+		if(null == item) {
+			throw new ModelException("The record with ID #"+id+" does not exist.");
+		}
+		this.removeItem(item);
+	}
+	
+	/**
+	 * Removes the specified record.
+	 * 
+	 * @param item 
+	 */
+	@Override
+	public final void removeItem(R item) throws ModelException {
+		this.checkManaged(item);
+		this.beforeRemove(item);
+		this.forget(item.getId());
+		this.afterRemove(item);
+	}
+	
+	/**
+	 * Removes a group of records. If any record is rejected, no record is removed.
+	 * 
+	 * @param items The records to remove.
+	 */
+	@Override
+	public final void removeAll(Collection<? extends R> items) throws ModelException {
+		List<R> batch = AbstractDataManager.checkBatch(items);
+		for(R item: batch) {
+			this.checkManaged(item);
+		}
+		for(R item: batch) {
+			this.beforeRemove(item);
+		}
+		for(R item: batch) {
+			this.forget(item.getId());
+			this.afterRemove(item);
+		}
+	}
+	
+	/**
+	 * Finds a single record with the given ID, loading it from the disk, if it has
+	 * been evicted.
+	 * 
+	 * @param id Internal ID.
+	 * @return Data record or NULL.
+	 */
+	@Override
+	public final R findById(long id) {
+		R item = this.resident.get(id);
+		if(null != item) {
+			this.hits++;
+			this.queue.touch(id);
+			return item;
+		}
+		Location location = this.spilled.get(id);
+		if(null == location) {
+			return null;
+		}
+		this.misses++;
+		try {
+			item = this.load(location);
+		} catch(IOException exception) {
+			throw new IllegalStateException("Cannot load the record #"+id+" from the spill file.", exception);
+		}
+		item.setId(id);
+		this.admit(item);
+		return item;
+	}
+	
+	/**
+	 * Returns the total number of records.
+	 * 
+	 * @return Number of records.
+	 */
+	public final int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns the number of records kept in the memory.
+	 * 
+	 * @return Number of resident records.
+	 */
+	public final int getResidentSize() {
+		return this.resident.size();
+	}
+	
+	/**
+	 * Returns the current values of the cache counters.
+	 * 
+	 * @return Cache statistics.
+	 */
+	public final CacheStatistics getStatistics() {
+		return new CacheStatistics(this.hits, this.misses, this.evictions, this.spillWrites);
+	}
+	
+	/**
+	 * Closes the spill file. The spilled records are lost.
+	 * 
+	 * @throws IOException 
+	 */
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method can terminate the
+	 * addition by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeCreate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record creation can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterCreate(R item) {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method can terminate the
+	 * update by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeUpdate(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record update can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterUpdate(R item) {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method can terminate the
+	 * removal by throwing an exception.
+	 * 
+	 * @param item
+	 */
+	protected void beforeRemove(R item) throws ModelException {
+	}
+	
+	/**
+	 * Custom code for record removal can be put here. The method shall not fail.
+	 * 
+	 * @param item
+	 */
+	protected void afterRemove(R item) {
+	}
+	
+	/**
+	 * Verifies that the record is either the resident instance, or an evicted one.
+	 * 
+	 * @param item Record.
+	 * @throws ModelException If the manager does not know the record.
+	 */
+	private void checkManaged(R item) throws ModelException {
+		R stored = this.resident.get(item.getId());
+		if(null == stored ? !this.spilled.containsKey(item.getId()) : stored != item) {
+			throw new ModelException("The record with ID #"+item.getId()+" does not exist.");
+		}
+	}
+	
+	/**
+	 * Puts the record into the memory, evicting the coldest records, if necessary.
+	 * 
+	 * @param item Record.
+	 */
+	private void admit(R item) {
+		while(this.resident.size() >= this.maxResident) {
+			this.evict(this.queue.victim());
+		}
+		this.resident.put(item.getId(), item);
+		this.queue.add(item.getId());
+	}
+	
+	/**
+	 * Moves the record out of the memory. The record is written to the disk only
+	 * if there is no valid copy yet. If the write fails, the record stays in the
+	 * memory.
+	 * 
+	 * @param id Record ID.
+	 */
+	private void evict(long id) {
+		if(!this.spilled.containsKey(id)) {
+			try {
+				this.spilled.put(id, this.store(this.resident.get(id)));
+				this.spillWrites++;
+			} catch(IOException exception) {
+				throw new IllegalStateException("Cannot write the record #"+id+" to the spill file.", exception);
+			}
+		}
+		this.resident.remove(id);
+		this.queue.remove(id);
+		this.evictions++;
+	}
+	
+	/**
+	 * Removes the record from both the memory and the disk.
+	 * 
+	 * @param id Record ID.
+	 */
+	private void forget(long id) {
+		if(null != this.resident.remove(id)) {
+			this.queue.remove(id);
+		}
+		this.discardCopy(id);
+		this.size--;
+	}
+	
+	/**
+	 * Marks the spilled copy of the record as obsolete.
+	 * 
+	 * @param id Record ID.
+	 */
+	private void discardCopy(long id) {
+		Location location = this.spilled.remove(id);
+		if(null != location) {
+			this.garbage += location.length + 4;
+			try {
+				this.compactIfNeeded();
+			} catch(IOException exception) {
+				throw new IllegalStateException("Cannot compact the spill file.", exception);
+			}
+		}
+	}
+	
+	/**
+	 * Appends the encoded record to the spill file.
+	 * 
+	 * @param item Record.
+	 * @return Location of the copy.
+	 * @throws IOException 
+	 */
+	private Location store(R item) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(0);
+		this.codec.encode(item, output);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		int length = buffer.remaining() - 4;
+		buffer.putInt(0, length);
+		long offset = this.channel.size();
+		this.write(this.channel, buffer, offset);
+		return new Location(offset, length);
+	}
+	
+	/**
+	 * Reads and decodes the record from the spill file.
+	 * 
+	 * @param location Location of the copy.
+	 * @return New record instance.
+	 * @throws IOException 
+	 */
+	private R load(Location location) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(location.length);
+		this.read(this.channel, buffer, location.offset + 4);
+		return this.codec.decode(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+	}
+	
+	/**
+	 * Rewrites the valid copies to a new file, when the obsolete ones take more
+	 * than a half of the spill file.
+	 * 
+	 * @throws IOException 
+	 */
+	private void compactIfNeeded() throws IOException {
+		long fileSize = this.channel.size();
+		if(fileSize < MIN_COMPACTION_SIZE || this.garbage * 2 < fileSize) {
+			return;
+		}
+		Path temporary = this.path.resolveSibling(this.path.getFileName()+".tmp");
+		try(FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = 0L;
+			for(Location location: this.spilled) {
+				ByteBuffer buffer = ByteBuffer.allocate(location.length + 4);
+				this.read(this.channel, buffer, location.offset);
+				buffer.flip();
+				this.write(target, buffer, position);
+				location.offset = position;
+				position += location.length + 4;
+			}
+		}
+		this.channel.close();
+		Files.move(temporary, this.path, StandardCopyOption.REPLACE_EXISTING);
+		this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.garbage = 0L;
+	}
+	
+	/**
+	 * Fills the buffer with the file content starting at the given position.
+	 * 
+	 * @param source File.
+	 * @param buffer Buffer to fill.
+	 * @param position File position.
+	 * @throws IOException 
+	 */
+	private void read(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(source.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the spill file.");
+			}
+		}
+	}
+	
+	/**
+	 * Writes the whole buffer to the file at the given position.
+	 * 
+	 * @param target File.
+	 * @param buffer Data to write.
+	 * @param position File position.
+	 * @throws IOException 
+	 */
+	private void write(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			target.write(buffer, position + buffer.position());
+		}
+	}
+		
+	/**
+	 * Position of a record copy in the spill file.
+	 */
+	private static final class Location {
+		long offset;
+		final int length;
+		
+		Location(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * Keeps the resident IDs in the eviction order.
+	 */
+	private static abstract class EvictionQueue {
+		/**
+		 * Registers the record that has just been put into the memory.
+		 */
+		abstract void add(long id);
+		/**
+		 * Registers the use of the resident record.
+		 */
+		abstract void touch(long id);
+		/**
+		 * Unregisters the record that leaves the memory.
+		 */
+		abstract void remove(long id);
+		/**
+		 * Returns the ID of the record to evict.
+		 */
+		abstract long victim();
+	}
+	
+	/**
+	 * Least recently used records go first.
+	 */
+	private static final class LruQueue extends EvictionQueue {
+		private final LinkedHashSet<Long> order = new LinkedHashSet<>();
+		
+		@Override
+		void add(long id) {
+			this.order.add(id);
+		}
+		
+		@Override
+		void touch(long id) {
+			this.order.remove(id);
+			this.order.add(id);
+		}
+		
+		@Override
+		void remove(long id) {
+			this.order.remove(id);
+		}
+		
+		@Override
+		long victim() {
+			return this.order.iterator().next();
+		}
+	}
+	
+	/**
+	 * Least frequently used records go first. The records are grouped by their
+	 * use counts, and every group is kept in the recency order.
+	 */
+	private static final class LfuQueue extends EvictionQueue {
+		private final Map<Long, Integer> counts = new HashMap<>();
+		private final TreeMap<Integer, LinkedHashSet<Long>> groups = new TreeMap<>();
+		
+		@Override
+		void add(long id) {
+			this.counts.put(id, 1);
+			this.group(1).add(id);
+		}
+		
+		@Override
+		void touch(long id) {
+			int count = this.counts.get(id);
+			this.leave(count, id);
+			this.counts.put(id, count + 1);
+			this.group(count + 1).add(id);
+		}
+		
+		@Override
+		void remove(long id) {
+			Integer count = this.counts.remove(id);
+			if(null != count) {
+				this.leave(count, id);
+			}
+		}
+		
+		@Override
+		long victim() {
+			Iterator<Long> it = this.groups.firstEntry().getValue().iterator();
+			return it.next();
+		}
+		
+		private LinkedHashSet<Long> group(int count) {
+			LinkedHashSet<Long> group = this.groups.get(count);
+			if(null == group) {
+				group = new LinkedHashSet<>();
+				this.groups.put(count, group);
+			}
+			return group;
+		}
+		
+		private void leave(int count, long id) {
+			LinkedHashSet<Long> group = this.groups.get(count);
+			group.remove(id);
+			if(group.isEmpty()) {
+				this.groups.remove(count);
+			}
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.INodeVisitor;
+import org.invenzzia.helium.data.storage.IdBitSet;
+import org.invenzzia.helium.data.storage.LongRecordMap;
+
+/**
+ * Walks the graph formed by the records and the links between them, such as
+ * {@link Relation} and {@link Parent} fields. The edges are described by the
+ * functions that return the neighbours of a node; the relations are iterated in
+ * place, without copying them.
+ * 
+ * <p>The visited nodes are tracked with {@link IdBitSet}s indexed by the record
+ * IDs, one for every record class, so that the records of several managers can
+ * be mixed, as long as every manager stores records of its own class. Every
+ * node is reported to the visitor once, together with its distance from the
+ * start node (see {@link #depthFirst(IIdentifiable, int, INodeVisitor)} for the
+ * exception), and the visitor can prune the walk or stop it. Nothing is collected,
+ * unless the method explicitly returns a list.</p>
+ * 
+ * <p>The traversal does not keep any state between the walks, and one instance
+ * can be shared by any number of threads, provided that the graph is not modified
+ * during the walks.</p>
+ * 
+ * @param N The type of nodes.
+ * @author Tomasz Jędrzejewski
+ */
+public class Traversal<N extends IIdentifiable> {
+	/**
+	 * Depth limit of the unbounded walks.
+	 */
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+	
+	/**
+	 * Decision of the visitor.
+	 */
+	public static enum Action {
+		/**
+		 * Continue with the neighbours of the node.
+		 */
+		CONTINUE,
+		/**
+		 * Do not follow the edges of the node.
+		 */
+		PRUNE,
+		/**
+		 * Finish the traversal.
+		 */
+		STOP
+	}
+	
+	/**
+	 * Edge functions.
+	 */
+	private final List<Function<? super N, ? extends Iterable<? extends N>>> edges;
+	
+	public Traversal(Function<? super N, ? extends Iterable<? extends N>> edges) {
+		this(ImmutableList.<Function<? super N, ? extends Iterable<? extends N>>>of(edges));
+	}
+	
+	public Traversal(List<Function<? super N, ? extends Iterable<? extends N>>> edges) {
+		Preconditions.checkArgument(!edges.isEmpty(), "The traversal needs at least one kind of edges.");
+		this.edges = ImmutableList.copyOf(edges);
+	}
+	
+	/**
+	 * Creates the edge function that follows the relation of the node.
+	 * 
+	 * @param relation Returns the relation of the node.
+	 * @return Edge function.
+	 */
+	public static <N> Function<N, Iterable<? extends N>> relationEdges(final Function<? super N, ? extends Relation<? extends N>> relation) {
+		return new Function<N, Iterable<? extends N>>() {
+			@Override
+			public Iterable<? extends N> apply(N node) {
+				return relation.apply(node);
+			}
+		};
+	}
+	
+	/**
+	 * Creates the edge function that follows the parent of the node.
+	 * 
+	 * @param parent Returns the parent field of the node.
+	 * @return Edge function.
+	 */
+	public static <N> Function<N, Iterable<N>> parentEdges(final Function<? super N, ? extends Parent<? extends N>> parent) {
+		return new Function<N, Iterable<N>>() {
+			@Override
+			public Iterable<N> apply(N node) {
+				N target = parent.apply(node).get();
+				if(null == target) {
+					return Collections.emptyList();
+				}
+				return Collections.singletonList(target);
+			}
+		};
+	}
+	
+	/**
+	 * Visits the nodes in the breadth-first order: all the nodes at the given
+	 * distance before any node further away.
+	 * 
+	 * @param start Start node, visited at the depth 0.
+	 * @param maxDepth Maximum distance of the visited nodes.
+	 * @param visitor Node visitor.
+	 * @return Number of visited nodes.
+	 */
+	public int breadthFirst(N start, int maxDepth, INodeVisitor<? super N> visitor) {
+		Preconditions.checkArgument(maxDepth >= 0, "The maximum depth cannot be negative.");
+		Visited visited = new Visited();
+		visited.add(start);
+		ArrayDeque<N> queue = new ArrayDeque<>();
+		queue.add(start);
+		int depth = 0;
+		int levelSize = 1;
+		int count = 0;
+		while(!queue.isEmpty()) {
+			N node = queue.poll();
+			count++;
+			Action action = visitor.visit(node, depth);
+			if(Action.STOP == action) {
+				return count;
+			}
+			if(Action.CONTINUE == action && depth < maxDepth) {
+				for(Function<? super N, ? extends Iterable<? extends N>> edge: this.edges) {
+					for(N neighbour: edge.apply(node)) {
+						if(visited.add(neighbour)) {
+							queue.add(neighbour);
+						}
+					}
+				}
+			}
+			if(0 == --levelSize) {
+				depth++;
+				levelSize = queue.size();
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Visits the nodes in the depth-first pre-order. The walk uses an explicit
+	 * stack, so the depth of the graph is not limited by the thread stack.
+	 * 
+	 * <p>The depth reported to the visitor is the length of the path the walk
+	 * has followed, which may be longer than the distance from the start node.
+	 * Therefore, when the depth is limited, a node first reached along a longer
+	 * path is reported and expanded again, when the walk reaches it along a
+	 * shorter one. In this way, all the nodes within the limit are visited, and
+	 * the last depth reported for a node is its distance. Every node is expanded
+	 * at most <tt>maxDepth</tt> times. Unlimited walks report every node once.</p>
+	 * 
+	 * @param start Start node, visited at the depth 0.
+	 * @param maxDepth Maximum distance of the visited nodes.
+	 * @param visitor Node visitor.
+	 * @return Number of distinct visited nodes.
+	 */
+	public int depthFirst(N start, int maxDepth, INodeVisitor<? super N> visitor) {
+		Preconditions.checkArgument(maxDepth >= 0, "The maximum depth cannot be negative.");
+		Visited visited = new Visited(UNLIMITED != maxDepth);
+		visited.add(start, 0);
+		ArrayDeque<Iterator<? extends N>> stack = new ArrayDeque<>();
+		int count = 1;
+		Action action = visitor.visit(start, 0);
+		if(Action.STOP == action) {
+			return count;
+		}
+		if(Action.CONTINUE == action && maxDepth > 0) {
+			stack.push(this.neighbours(start));
+		}
+		while(!stack.isEmpty()) {
+			Iterator<? extends N> iterator = stack.peek();
+			if(!iterator.hasNext()) {
+				stack.pop();
+				continue;
+			}
+			N node = iterator.next();
+			int depth = stack.size();
+			int previous = visited.add(node, depth);
+			if(previous >= 0 && previous <= depth) {
+				continue;
+			}
+			if(previous < 0) {
+				count++;
+			}
+			action = visitor.visit(node, depth);
+			if(Action.STOP == action) {
+				return count;
+			}
+			if(Action.CONTINUE == action && depth < maxDepth) {
+				stack.push(this.neighbours(node));
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns all the nodes reachable from the start node within the given
+	 * distance, in the breadth-first order. The start node is not included.
+	 * 
+	 * @param start Start node.
+	 * @param maxDepth Maximum distance.
+	 * @return List of nodes.
+	 */
+	public List<N> reachable(N start, int maxDepth) {
+		final List<N> result = new ArrayList<>();
+		final N first = start;
+		this.breadthFirst(start, maxDepth, new INodeVisitor<N>() {
+			@Override
+			public Action visit(N node, int depth) {
+				if(node != first) {
+					result.add(node);
+				}
+				return Action.CONTINUE;
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Returns the transitive closure of the start node: all the nodes reachable
+	 * from it, in the breadth-first order. The start node is not included.
+	 * 
+	 * @param start Start node.
+	 * @return List of nodes.
+	 */
+	public List<N> closure(N start) {
+		return this.reachable(start, UNLIMITED);
+	}
+	
+	/**
+	 * Checks, whether the target node can be reached from the start node within
+	 * the given distance. The walk stops as soon as the target is found.
+	 * 
+	 * @param start Start node.
+	 * @param target Target node.
+	 * @param maxDepth Maximum distance.
+	 * @return True, if the target is reachable.
+	 */
+	public boolean isReachable(N start, final N target, int maxDepth) {
+		final boolean found[] = new boolean[1];
+		this.breadthFirst(start, maxDepth, new INodeVisitor<N>() {
+			@Override
+			public Action visit(N node, int depth) {
+				if(node == target) {
+					found[0] = true;
+					return Action.STOP;
+				}
+				return Action.CONTINUE;
+			}
+		});
+		return found[0];
+	}
+	
+	/**
+	 * Returns an iterator over the neighbours of the node along all the edges.
+	 * 
+	 * @param node The node.
+	 * @return Neighbour iterator.
+	 */
+	private Iterator<? extends N> neighbours(N node) {
+		if(1 == this.edges.size()) {
+			return this.edges.get(0).apply(node).iterator();
+		}
+		List<Iterable<? extends N>> all = new ArrayList<>(this.edges.size());
+		for(Function<? super N, ? extends Iterable<? extends N>> edge: this.edges) {
+			all.add(edge.apply(node));
+		}
+		return Iterables.concat(all).iterator();
+	}
+	
+	/**
+	 * Visited nodes, tracked by the record class and ID. Optionally, the smallest
+	 * depth at which every node has been reached is remembered, too.
+	 */
+	private static final class Visited {
+		/**
+		 * Bit sets of the record classes.
+		 */
+		private final Map<Class<?>, IdBitSet> sets = new HashMap<>();
+		/**
+		 * Smallest depths of the nodes for every record class. Null, if the depths
+		 * are not tracked.
+		 */
+		private final Map<Class<?>, LongRecordMap<Integer>> depths;
+		/**
+		 * Class of the last added record.
+		 */
+		private Class<?> lastType;
+		/**
+		 * Bit set of the last added record.
+		 */
+		private IdBitSet lastSet;
+		/**
+		 * Depths of the last added record class.
+		 */
+		private LongRecordMap<Integer> lastDepths;
+		
+		Visited() {
+			this(false);
+		}
+		
+		Visited(boolean trackDepths) {
+			this.depths = trackDepths ? new HashMap<Class<?>, LongRecordMap<Integer>>() : null;
+		}
+		
+		/**
+		 * Marks the node as visited.
+		 * 
+		 * @param node The node.
+		 * @return True, if the node has not been visited yet.
+		 */
+		boolean add(IIdentifiable node) {
+			this.select(node);
+			return this.lastSet.add(node.getId());
+		}
+		
+		/**
+		 * Marks the node as visited at the given depth. If the depths are tracked,
+		 * the smaller depth is remembered.
+		 * 
+		 * @param node The node.
+		 * @param depth Depth at which the node has been reached.
+		 * @return The previous smallest depth of the node, or -1, if the node has
+		 * not been visited yet. Without tracking, the visited nodes report 0.
+		 */
+		int add(IIdentifiable node, int depth) {
+			this.select(node);
+			boolean added = this.lastSet.add(node.getId());
+			if(null == this.lastDepths) {
+				return added ? -1 : 0;
+			}
+			if(added) {
+				this.lastDepths.put(node.getId(), depth);
+				return -1;
+			}
+			int previous = this.lastDepths.get(node.getId());
+			if(depth < previous) {
+				this.lastDepths.put(node.getId(), depth);
+			}
+			return previous;
+		}
+		
+		/**
+		 * Selects the bit set and the depths of the record class of the node.
+		 * 
+		 * @param node The node.
+		 */
+		private void select(IIdentifiable node) {
+			if(node.getId() == IIdentifiable.NEUTRAL_ID) {
+				throw new IllegalArgumentException("The record '"+node.toString()+"' has not been added to a data manager.");
+			}
+			Class<?> type = node.getClass();
+			if(type != this.lastType) {
+				IdBitSet set = this.sets.get(type);
+				if(null == set) {
+					set = new IdBitSet();
+					this.sets.put(type, set);
+				}
+				this.lastType = type;
+				this.lastSet = set;
+				if(null != this.depths) {
+					LongRecordMap<Integer> map = this.depths.get(type);
+					if(null == map) {
+						map = new LongRecordMap<>();
+						this.depths.put(type, map);
+					}
+					this.lastDepths = map;
+				}
+			}
+		}
+	}
+}
@@ -17,6 +17,7 @@ package org.invenzzia.helium.data;
 
 import java.util.*;
 import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.utils.FootprintUtils;
 
 /**
  * Unit of work represents a set of changes on the data model that need to be applied.
@@ -217,4 +218,26 @@ public class UnitOfWork<R extends IIdentifiable> {
 		}
 		return dataSet;
 	}
+	
+	/**
+	 * Returns the number of records in the unit of work.
+	 * 
+	 * @return Number of records.
+	 */
+	int size() {
+		return this.changedRecords.size();
+	}
+	
+	/**
+	 * Returns the approximate number of bytes used by the unit of work, without
+	 * the records.
+	 * 
+	 * @return Size in bytes.
+	 */
+	long estimateOverhead() {
+		int size = this.changedRecords.size();
+		return FootprintUtils.object(2 * FootprintUtils.REFERENCE + 3 * 4)
+			+ FootprintUtils.object(FootprintUtils.REFERENCE)
+			+ 2 * FootprintUtils.hashMap(size, FootprintUtils.LINKED_ENTRY);
+	}
 }
@@ -15,6 +15,7 @@
  */
 package org.invenzzia.helium.data.interfaces;
 
+import java.util.Collection;
 import org.invenzzia.helium.exception.ModelException;
 
 /**
@@ -33,6 +34,15 @@ public interface ICRUDManager<R extends IIdentifiable> {
 	 * @throws ModelException 
 	 */
 	public void addItem(R item) throws ModelException;
+	/**
+	 * Adds a group of new items to the manager. The operation is atomic: if any
+	 * of the items cannot be added, none of them is added, and an exception should
+	 * be thrown.
+	 * 
+	 * @param items The new items to add.
+	 * @throws ModelException 
+	 */
+	public void addAll(Collection<? extends R> items) throws ModelException;
 	/**
 	 * Updates the existing item. If the item cannot be updated, an exception should
 	 * be thrown.
@@ -57,6 +67,14 @@ public interface ICRUDManager<R extends IIdentifiable> {
 	 * @throws ModelException 
 	 */
 	public void removeItem(R item) throws ModelException;
+	/**
+	 * Removes a group of existing items. The operation is atomic: if any of the items
+	 * cannot be removed, none of them is removed, and an exception should be thrown.
+	 * 
+	 * @param items The items to remove.
+	 * @throws ModelException 
+	 */
+	public void removeAll(Collection<? extends R> items) throws ModelException;
 	/**
 	 * Finds a record by its ID. If the record does not exist, <strong>null</strong> shall
 	 * be returned.
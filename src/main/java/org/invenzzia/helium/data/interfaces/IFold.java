@@ -0,0 +1,51 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+/**
+ * Invertible fold used by the aggregate views: the values can be both added to,
+ * and removed from the accumulator, so that the views can be maintained without
+ * visiting the other records. The accumulator may be either immutable, or updated
+ * in place and returned.
+ * 
+ * @param V The type of folded values.
+ * @param A The type of the accumulator.
+ * @author Tomasz Jędrzejewski
+ */
+public interface IFold<V, A> {
+	/**
+	 * Creates the accumulator of an empty group.
+	 * 
+	 * @return New accumulator.
+	 */
+	public A empty();
+	/**
+	 * Adds the value to the accumulator.
+	 * 
+	 * @param accumulator Current accumulator.
+	 * @param value Added value.
+	 * @return New accumulator.
+	 */
+	public A add(A accumulator, V value);
+	/**
+	 * Removes the previously added value from the accumulator.
+	 * 
+	 * @param accumulator Current accumulator.
+	 * @param value Removed value.
+	 * @return New accumulator.
+	 */
+	public A remove(A accumulator, V value);
+}
@@ -0,0 +1,40 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+import org.invenzzia.helium.data.Traversal;
+
+/**
+ * Receives the nodes reached by a {@link Traversal}, one by one, and decides how
+ * the traversal continues.
+ * 
+ * @param N The type of nodes.
+ * @author Tomasz Jędrzejewski
+ */
+public interface INodeVisitor<N> {
+	/**
+	 * Called for every reached node. The breadth-first walks and the unlimited
+	 * depth-first walks report every node exactly once. A depth-first walk with
+	 * a depth limit reports a node again, when it reaches the node along a
+	 * shorter path than before; the last call carries the distance.
+	 * 
+	 * @param node Reached node.
+	 * @param depth Number of edges along the path the walk has followed. For the
+	 * breadth-first walks, it is the distance from the start node.
+	 * @return What to do next.
+	 */
+	public Traversal.Action visit(N node, int depth);
+}
@@ -0,0 +1,86 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+import java.util.Collection;
+import org.invenzzia.helium.exception.ModelException;
+
+/**
+ * Counterpart of {@link ICRUDManager} for the records identified by the 32-bit
+ * numbers, i.e. small catalogs of entities.
+ * 
+ * @param R The type of records stored in the data manager.
+ * @author Tomasz Jędrzejewski
+ */
+public interface INumberedManager<R extends INumberable> {
+	/**
+	 * Adds a new item to the manager. If the item cannot be added, an exception
+	 * should be thrown.
+	 * 
+	 * @param item The new item to add.
+	 * @throws ModelException 
+	 */
+	public void addItem(R item) throws ModelException;
+	/**
+	 * Adds a group of new items to the manager. The operation is atomic: if any
+	 * of the items cannot be added, none of them is added, and an exception should
+	 * be thrown.
+	 * 
+	 * @param items The new items to add.
+	 * @throws ModelException 
+	 */
+	public void addAll(Collection<? extends R> items) throws ModelException;
+	/**
+	 * Updates the existing item. If the item cannot be updated, an exception should
+	 * be thrown.
+	 * 
+	 * @param item The item to update.
+	 * @throws ModelException 
+	 */
+	public void updateItem(R item) throws ModelException;
+	/**
+	 * Removes an item with the specified number. If the item cannot be removed or it
+	 * does not exist, the method should throw an exception.
+	 * 
+	 * @param number Record number.
+	 * @throws ModelException 
+	 */
+	public void removeItem(int number) throws ModelException;
+	/**
+	 * Removes an existing item. If the item cannot be removed, an exception should
+	 * be thrown.
+	 * 
+	 * @param item
+	 * @throws ModelException 
+	 */
+	public void removeItem(R item) throws ModelException;
+	/**
+	 * Removes a group of existing items. The operation is atomic: if any of the items
+	 * cannot be removed, none of them is removed, and an exception should be thrown.
+	 * 
+	 * @param items The items to remove.
+	 * @throws ModelException 
+	 */
+	public void removeAll(Collection<? extends R> items) throws ModelException;
+	/**
+	 * Finds a record by its number. If the record does not exist, <strong>null</strong>
+	 * shall be returned.
+	 * 
+	 * @param number Record number.
+	 * @return Record object or null.
+	 */
+	public R findByNumber(int number);
+}
@@ -0,0 +1,47 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Turns the records into their binary form and back. The ID is written by the
+ * caller, so the codec shall encode only the remaining properties.
+ * 
+ * @param R The type of encoded records.
+ * @author Tomasz Jędrzejewski
+ */
+public interface IRecordCodec<R> {
+	/**
+	 * Writes the properties of the record to the output.
+	 * 
+	 * @param record The record to encode.
+	 * @param output Binary output.
+	 * @throws IOException 
+	 */
+	public void encode(R record, DataOutput output) throws IOException;
+	/**
+	 * Reads the properties written by {@link #encode} and creates a new record
+	 * with them. The ID shall be left neutral.
+	 * 
+	 * @param input Binary input.
+	 * @return Decoded record.
+	 * @throws IOException 
+	 */
+	public R decode(DataInput input) throws IOException;
+}
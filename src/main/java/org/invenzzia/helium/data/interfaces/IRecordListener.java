@@ -0,0 +1,45 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+/**
+ * Receives the notifications about the successful modifications of the records
+ * in a data manager. The methods are called after the modification is complete,
+ * and shall not fail.
+ * 
+ * @param R The type of observed records.
+ * @author Tomasz Jędrzejewski
+ */
+public interface IRecordListener<R> {
+	/**
+	 * Called after the record has been added to the manager.
+	 * 
+	 * @param record Created record.
+	 */
+	public void recordCreated(R record);
+	/**
+	 * Called after the change of the record has been reported to the manager.
+	 * 
+	 * @param record Updated record.
+	 */
+	public void recordUpdated(R record);
+	/**
+	 * Called after the record has been removed from the manager.
+	 * 
+	 * @param record Removed record.
+	 */
+	public void recordRemoved(R record);
+}
@@ -0,0 +1,81 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+/**
+ * Storage engine used by the data managers to keep the records under their
+ * IDs. The storage does not check the data integrity; this is the job of the
+ * manager. The iteration order is defined by the implementation.
+ * 
+ * @param R The type of stored records.
+ * @author Tomasz Jędrzejewski
+ */
+public interface IRecordStorage<R> extends Iterable<R> {
+	/**
+	 * Returns the record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Record or null.
+	 */
+	public R get(long id);
+	/**
+	 * Returns true, if there is a record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return True, if the record exists.
+	 */
+	public boolean containsKey(long id);
+	/**
+	 * Stores the record under the given ID, replacing the previous one.
+	 * 
+	 * @param id Record ID.
+	 * @param record The record to store.
+	 * @return Previous record or null.
+	 */
+	public R put(long id, R record);
+	/**
+	 * Removes the record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Removed record or null.
+	 */
+	public R remove(long id);
+	/**
+	 * Returns the number of stored records.
+	 * 
+	 * @return Number of records.
+	 */
+	public int size();
+	/**
+	 * Prepares the storage for holding the given total number of records, so that
+	 * a large group of records can be added without repeated resizing.
+	 * 
+	 * @param capacity Expected number of records.
+	 */
+	public void ensureCapacity(int capacity);
+	/**
+	 * Reclaims the space left by the removed records. The method may be costly
+	 * and shall not change the content of the storage.
+	 */
+	public void compact();
+	/**
+	 * Returns the approximate number of bytes used by the storage structures,
+	 * without the records themselves.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public long estimateOverhead();
+}
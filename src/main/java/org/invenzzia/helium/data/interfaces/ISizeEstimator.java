@@ -0,0 +1,35 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.interfaces;
+
+/**
+ * Estimates the heap size of a single object for the footprint reports. The
+ * estimators are called only for the sampled records, but they should still be
+ * cheap, and they should not follow the references to the objects shared with
+ * other records.
+ * 
+ * @param T The type of estimated objects.
+ * @author Tomasz Jędrzejewski
+ */
+public interface ISizeEstimator<T> {
+	/**
+	 * Returns the approximate size of the object in bytes.
+	 * 
+	 * @param object Estimated object.
+	 * @return Size in bytes.
+	 */
+	public long estimateSize(T object);
+}
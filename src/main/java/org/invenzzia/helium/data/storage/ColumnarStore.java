@@ -0,0 +1,659 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.base.Preconditions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+
+/**
+ * Off-heap storage for the entities made only of primitive properties. Instead of
+ * keeping one Java object per record, every declared property is stored in its own
+ * column: a direct buffer outside the heap, indexed by <tt>id - 1</tt>. A record
+ * takes only the sum of its column widths and a single bit of the heap, and a scan
+ * of a single property reads one contiguous block of memory.
+ * 
+ * <p>The records are accessed either through the ID-based getters and setters,
+ * or through a {@link Cursor}, a reusable flyweight that points to one record at
+ * a time and iterates over the records in the ID order.</p>
+ * 
+ * <p>Just like in {@link DenseRecordStorage}, the IDs are meant to be assigned
+ * sequentially, and the slots of the removed records are not reclaimed. The
+ * memory of the columns is released, when the store becomes unreachable.
+ * The store is not thread-safe.</p>
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public class ColumnarStore {
+	/**
+	 * The types of the columns.
+	 */
+	public static enum ColumnType {
+		INT(4),
+		LONG(8),
+		DOUBLE(8);
+		
+		/**
+		 * Number of bytes taken by a single value.
+		 */
+		private final int width;
+		
+		private ColumnType(int width) {
+			this.width = width;
+		}
+		
+		/**
+		 * Returns the number of bytes taken by a single value.
+		 * 
+		 * @return Value width.
+		 */
+		public int getWidth() {
+			return this.width;
+		}
+	}
+	/**
+	 * Initial number of slots, if not specified otherwise.
+	 */
+	private static final int DEFAULT_CAPACITY = 1024;
+	/**
+	 * Column types.
+	 */
+	private final ColumnType types[];
+	/**
+	 * Column data.
+	 */
+	private final ByteBuffer columns[];
+	/**
+	 * One bit per slot: set, if the slot holds a record.
+	 */
+	private long used[];
+	/**
+	 * Number of slots available in the columns.
+	 */
+	private int capacity;
+	/**
+	 * Number of used slots: all the slots above are empty.
+	 */
+	private int length;
+	/**
+	 * Number of stored records.
+	 */
+	private int size;
+	/**
+	 * Auto-incrementation.
+	 */
+	private long nextId = IIdentifiable.INCREMENTATION_START;
+	
+	/**
+	 * Creates a store with the given columns. The columns are later identified by
+	 * their positions on this list.
+	 * 
+	 * @param types Column types.
+	 */
+	public ColumnarStore(ColumnType... types) {
+		this(DEFAULT_CAPACITY, types);
+	}
+	
+	/**
+	 * Creates a store with the given columns and the initial capacity. The columns
+	 * are later identified by their positions on this list.
+	 * 
+	 * @param capacity Expected number of records.
+	 * @param types Column types.
+	 */
+	public ColumnarStore(int capacity, ColumnType... types) {
+		Preconditions.checkArgument(capacity >= 0, "The capacity cannot be negative.");
+		Preconditions.checkArgument(types.length > 0, "The columnar store needs at least one column.");
+		this.types = types.clone();
+		this.columns = new ByteBuffer[types.length];
+		this.capacity = Math.max(capacity, 1);
+		for(int i = 0; i < types.length; i++) {
+			this.columns[i] = this.allocate(Preconditions.checkNotNull(types[i]), this.capacity);
+		}
+		this.used = new long[(this.capacity + 63) >>> 6];
+	}
+	
+	/**
+	 * Returns the number of columns.
+	 * 
+	 * @return Number of columns.
+	 */
+	public int getColumnNum() {
+		return this.types.length;
+	}
+	
+	/**
+	 * Returns the type of the given column.
+	 * 
+	 * @param column Column number.
+	 * @return Column type.
+	 */
+	public ColumnType getColumnType(int column) {
+		return this.types[column];
+	}
+	
+	/**
+	 * Returns the number of stored records.
+	 * 
+	 * @return Number of records.
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns the number of bytes allocated outside the heap.
+	 * 
+	 * @return Number of bytes.
+	 */
+	public long getAllocatedBytes() {
+		long bytes = 0L;
+		for(ByteBuffer column: this.columns) {
+			bytes += column.capacity();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Sets the next ID for automatic generation. The method shall be used only when reading
+	 * the state from the disk.
+	 * 
+	 * @param nextId 
+	 */
+	public void setNextId(long nextId) {
+		this.nextId = nextId;
+	}
+	
+	/**
+	 * Retrieves the current value of the next ID. The method shall be used only when
+	 * writing the state to the disk.
+	 * 
+	 * @return Next ID value.
+	 */
+	public long getNextId() {
+		return this.nextId;
+	}
+	
+	/**
+	 * Creates a new record with all the properties set to zero.
+	 * 
+	 * @return ID of the new record.
+	 */
+	public long create() {
+		long id = this.nextId;
+		this.insert(id);
+		return id;
+	}
+	
+	/**
+	 * Creates a record with the given ID and all the properties set to zero, i.e.
+	 * when restoring the state from the disk.
+	 * 
+	 * @param id Record ID.
+	 */
+	public void insert(long id) {
+		if(id < IIdentifiable.INCREMENTATION_START) {
+			throw new IllegalArgumentException("Invalid record ID #"+id+" for the columnar store.");
+		}
+		long index = id - IIdentifiable.INCREMENTATION_START;
+		if(index >= this.capacity) {
+			this.grow(index + 1);
+		}
+		int slot = (int) index;
+		if(this.isUsed(slot)) {
+			throw new IllegalArgumentException("The record with ID #"+id+" already exists.");
+		}
+		for(int i = 0; i < this.columns.length; i++) {
+			if(this.types[i] == ColumnType.INT) {
+				this.columns[i].putInt(slot << 2, 0);
+			} else {
+				this.columns[i].putLong(slot << 3, 0L);
+			}
+		}
+		this.used[slot >>> 6] |= (1L << slot);
+		this.size++;
+		if(slot >= this.length) {
+			this.length = slot + 1;
+		}
+		if(id >= this.nextId) {
+			this.nextId = id + 1;
+		}
+	}
+	
+	/**
+	 * Removes the record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return True, if the record existed.
+	 */
+	public boolean remove(long id) {
+		int slot = this.slotOf(id);
+		if(slot < 0) {
+			return false;
+		}
+		this.used[slot >>> 6] &= ~(1L << slot);
+		this.size--;
+		while(this.length > 0 && !this.isUsed(this.length - 1)) {
+			this.length--;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true, if there is a record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return True, if the record exists.
+	 */
+	public boolean contains(long id) {
+		return this.slotOf(id) >= 0;
+	}
+	
+	/**
+	 * Returns the value of an integer property.
+	 * 
+	 * @param id Record ID.
+	 * @param column Column number.
+	 * @return Property value.
+	 */
+	public int getInt(long id, int column) {
+		return this.columnOf(column, ColumnType.INT).getInt(this.existingSlot(id) << 2);
+	}
+	
+	/**
+	 * Sets the value of an integer property.
+	 * 
+	 * @param id Record ID.
+	 * @param column Column number.
+	 * @param value New value.
+	 */
+	public void setInt(long id, int column, int value) {
+		this.columnOf(column, ColumnType.INT).putInt(this.existingSlot(id) << 2, value);
+	}
+	
+	/**
+	 * Returns the value of a long property.
+	 * 
+	 * @param id Record ID.
+	 * @param column Column number.
+	 * @return Property value.
+	 */
+	public long getLong(long id, int column) {
+		return this.columnOf(column, ColumnType.LONG).getLong(this.existingSlot(id) << 3);
+	}
+	
+	/**
+	 * Sets the value of a long property.
+	 * 
+	 * @param id Record ID.
+	 * @param column Column number.
+	 * @param value New value.
+	 */
+	public void setLong(long id, int column, long value) {
+		this.columnOf(column, ColumnType.LONG).putLong(this.existingSlot(id) << 3, value);
+	}
+	
+	/**
+	 * Returns the value of a double property.
+	 * 
+	 * @param id Record ID.
+	 * @param column Column number.
+	 * @return Property value.
+	 */
+	public double getDouble(long id, int column) {
+		return this.columnOf(column, ColumnType.DOUBLE).getDouble(this.existingSlot(id) << 3);
+	}
+	
+	/**
+	 * Sets the value of a double property.
+	 * 
+	 * @param id Record ID.
+	 * @param column Column number.
+	 * @param value New value.
+	 */
+	public void setDouble(long id, int column, double value) {
+		this.columnOf(column, ColumnType.DOUBLE).putDouble(this.existingSlot(id) << 3, value);
+	}
+	
+	/**
+	 * Sums the values of the given integer or long column over all the records.
+	 * 
+	 * @param column Column number.
+	 * @return Sum of the values.
+	 */
+	public long sumLong(int column) {
+		ColumnType type = this.types[column];
+		if(type == ColumnType.DOUBLE) {
+			throw new IllegalArgumentException("The column "+column+" does not hold integer values.");
+		}
+		if(type == ColumnType.INT) {
+			return this.sumInts(this.columns[column]);
+		}
+		return this.sumLongs(this.columns[column]);
+	}
+	
+	/**
+	 * Sums the values of the given double column over all the records.
+	 * 
+	 * @param column Column number.
+	 * @return Sum of the values.
+	 */
+	public double sumDouble(int column) {
+		ByteBuffer buffer = this.columnOf(column, ColumnType.DOUBLE);
+		double sum = 0.0;
+		for(int word = 0, words = (this.length + 63) >>> 6; word < words; word++) {
+			long bits = this.used[word];
+			int base = word << 6;
+			while(0L != bits) {
+				int slot = base + Long.numberOfTrailingZeros(bits);
+				sum += buffer.getDouble(slot << 3);
+				bits &= bits - 1;
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Creates a new flyweight cursor. The cursor initially points before the first
+	 * record.
+	 * 
+	 * @return Record cursor.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+	
+	/**
+	 * Reusable view of a single record. The cursor can be moved to the record with
+	 * the given ID, or to the next record in the ID order, and reads or writes the
+	 * properties of the current record without creating any objects.
+	 */
+	public final class Cursor {
+		/**
+		 * Current slot or -1.
+		 */
+		private int slot = -1;
+		
+		private Cursor() {
+		}
+		
+		/**
+		 * Moves the cursor to the record with the given ID.
+		 * 
+		 * @param id Record ID.
+		 * @return True, if the record exists.
+		 */
+		public boolean moveTo(long id) {
+			this.slot = slotOf(id);
+			return this.slot >= 0;
+		}
+		
+		/**
+		 * Moves the cursor to the next record in the ID order.
+		 * 
+		 * @return True, if there is such a record.
+		 */
+		public boolean next() {
+			int next = this.slot + 1;
+			while(next < length) {
+				long bits = used[next >>> 6] >>> (next & 63);
+				if(0L != bits) {
+					next += Long.numberOfTrailingZeros(bits);
+					if(next < length) {
+						this.slot = next;
+						return true;
+					}
+					break;
+				}
+				next = (next | 63) + 1;
+			}
+			this.slot = length;
+			return false;
+		}
+		
+		/**
+		 * Moves the cursor back before the first record.
+		 */
+		public void reset() {
+			this.slot = -1;
+		}
+		
+		/**
+		 * Returns the ID of the current record.
+		 * 
+		 * @return Record ID.
+		 */
+		public long getId() {
+			return this.current() + IIdentifiable.INCREMENTATION_START;
+		}
+		
+		/**
+		 * Returns the value of an integer property of the current record.
+		 * 
+		 * @param column Column number.
+		 * @return Property value.
+		 */
+		public int getInt(int column) {
+			return columnOf(column, ColumnType.INT).getInt(this.current() << 2);
+		}
+		
+		/**
+		 * Sets the value of an integer property of the current record.
+		 * 
+		 * @param column Column number.
+		 * @param value New value.
+		 */
+		public void setInt(int column, int value) {
+			columnOf(column, ColumnType.INT).putInt(this.current() << 2, value);
+		}
+		
+		/**
+		 * Returns the value of a long property of the current record.
+		 * 
+		 * @param column Column number.
+		 * @return Property value.
+		 */
+		public long getLong(int column) {
+			return columnOf(column, ColumnType.LONG).getLong(this.current() << 3);
+		}
+		
+		/**
+		 * Sets the value of a long property of the current record.
+		 * 
+		 * @param column Column number.
+		 * @param value New value.
+		 */
+		public void setLong(int column, long value) {
+			columnOf(column, ColumnType.LONG).putLong(this.current() << 3, value);
+		}
+		
+		/**
+		 * Returns the value of a double property of the current record.
+		 * 
+		 * @param column Column number.
+		 * @return Property value.
+		 */
+		public double getDouble(int column) {
+			return columnOf(column, ColumnType.DOUBLE).getDouble(this.current() << 3);
+		}
+		
+		/**
+		 * Sets the value of a double property of the current record.
+		 * 
+		 * @param column Column number.
+		 * @param value New value.
+		 */
+		public void setDouble(int column, double value) {
+			columnOf(column, ColumnType.DOUBLE).putDouble(this.current() << 3, value);
+		}
+		
+		/**
+		 * Verifies that the cursor points to an existing record.
+		 * 
+		 * @return Current slot.
+		 */
+		private int current() {
+			if(this.slot < 0 || this.slot >= length || !isUsed(this.slot)) {
+				throw new IllegalStateException("The cursor does not point to any record.");
+			}
+			return this.slot;
+		}
+	}
+	
+	/**
+	 * Sums the values of an integer column of all the records. The type is known up front, so the
+	 * loop over the fully used words reads the column sequentially without any
+	 * branches.
+	 * 
+	 * @param buffer Column buffer.
+	 * @return Sum of the values.
+	 */
+	private long sumInts(ByteBuffer buffer) {
+		long sum = 0L;
+		for(int word = 0, words = (this.length + 63) >>> 6; word < words; word++) {
+			long bits = this.used[word];
+			int base = word << 6;
+			if(-1L == bits) {
+				for(int slot = base, end = base + 64; slot < end; slot++) {
+					sum += buffer.getInt(slot << 2);
+				}
+			} else {
+				while(0L != bits) {
+					int slot = base + Long.numberOfTrailingZeros(bits);
+					sum += buffer.getInt(slot << 2);
+					bits &= bits - 1;
+				}
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Sums the values of a long column of all the records. The type is known up front, so the
+	 * loop over the fully used words reads the column sequentially without any
+	 * branches.
+	 * 
+	 * @param buffer Column buffer.
+	 * @return Sum of the values.
+	 */
+	private long sumLongs(ByteBuffer buffer) {
+		long sum = 0L;
+		for(int word = 0, words = (this.length + 63) >>> 6; word < words; word++) {
+			long bits = this.used[word];
+			int base = word << 6;
+			if(-1L == bits) {
+				for(int slot = base, end = base + 64; slot < end; slot++) {
+					sum += buffer.getLong(slot << 3);
+				}
+			} else {
+				while(0L != bits) {
+					int slot = base + Long.numberOfTrailingZeros(bits);
+					sum += buffer.getLong(slot << 3);
+					bits &= bits - 1;
+				}
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Returns the slot of the record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Slot or -1, if there is no such record.
+	 */
+	private int slotOf(long id) {
+		long index = id - IIdentifiable.INCREMENTATION_START;
+		if(index < 0 || index >= this.length || !this.isUsed((int) index)) {
+			return -1;
+		}
+		return (int) index;
+	}
+	
+	/**
+	 * Returns the slot of the record with the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Slot.
+	 */
+	private int existingSlot(long id) {
+		int slot = this.slotOf(id);
+		if(slot < 0) {
+			throw new IllegalArgumentException("The record with ID #"+id+" does not exist.");
+		}
+		return slot;
+	}
+	
+	/**
+	 * Returns the buffer of the given column, checking its type.
+	 * 
+	 * @param column Column number.
+	 * @param type Expected column type.
+	 * @return Column data.
+	 */
+	private ByteBuffer columnOf(int column, ColumnType type) {
+		if(this.types[column] != type) {
+			throw new IllegalArgumentException("The column "+column+" has the type "+this.types[column]+", not "+type+".");
+		}
+		return this.columns[column];
+	}
+	
+	/**
+	 * Returns true, if the slot holds a record.
+	 * 
+	 * @param slot Slot number.
+	 * @return True, if the slot is used.
+	 */
+	private boolean isUsed(int slot) {
+		return 0L != (this.used[slot >>> 6] & (1L << slot));
+	}
+	
+	/**
+	 * Grows the columns, so that they can hold the given number of slots.
+	 * 
+	 * @param required Required number of slots.
+	 */
+	private void grow(long required) {
+		long maxSlots = Integer.MAX_VALUE >> 3;
+		if(required > maxSlots) {
+			throw new IllegalArgumentException("The ID range is too large for the columnar store.");
+		}
+		int newCapacity = (int) Math.min(Math.max(required, this.capacity + (this.capacity >> 1)), maxSlots);
+		for(int i = 0; i < this.columns.length; i++) {
+			ByteBuffer column = this.allocate(this.types[i], newCapacity);
+			ByteBuffer old = this.columns[i].duplicate();
+			old.limit(this.length * this.types[i].getWidth());
+			column.put(old);
+			column.clear();
+			this.columns[i] = column;
+		}
+		this.used = Arrays.copyOf(this.used, (newCapacity + 63) >>> 6);
+		this.capacity = newCapacity;
+	}
+	
+	/**
+	 * Allocates the memory for a column.
+	 * 
+	 * @param type Column type.
+	 * @param slots Number of slots.
+	 * @return Direct buffer.
+	 */
+	private ByteBuffer allocate(ColumnType type, int slots) {
+		return ByteBuffer.allocateDirect(slots * type.getWidth()).order(ByteOrder.nativeOrder());
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordStorage;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Storage that exploits the auto-incrementation of IDs: the records are kept in
+ * a growable array indexed by <tt>id - base</tt>, where the base is initially
+ * {@link IIdentifiable#INCREMENTATION_START}. Finding a record is a bounds check
+ * and an array load, and the iteration is a sequential scan in the ID order.
+ * 
+ * <p>Removed records leave empty slots. The empty slots at both ends of the array
+ * are reclaimed by {@link #compact()}, which is also run automatically, when the
+ * array becomes mostly empty and at least a half of it can be reclaimed. The gaps
+ * in the middle of the ID space cannot be reclaimed, so this storage is a good
+ * choice only for managers with rare removals.
+ * Restoring the records with arbitrary IDs is supported, but large gaps between
+ * the IDs are paid with the memory.</p>
+ * 
+ * @param R The type of stored records.
+ * @author Tomasz Jędrzejewski
+ */
+public class DenseRecordStorage<R> implements IRecordStorage<R> {
+	/**
+	 * Initial array size, if not specified otherwise.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+	/**
+	 * Arrays smaller than this are never shrunk automatically.
+	 */
+	private static final int MIN_SHRINK_CAPACITY = 64;
+	/**
+	 * The records indexed by <tt>id - base</tt>. Empty slots are nulls.
+	 */
+	private Object records[];
+	/**
+	 * ID of the record stored at the index 0.
+	 */
+	private long base = IIdentifiable.INCREMENTATION_START;
+	/**
+	 * Number of used slots: all the slots above are empty.
+	 */
+	private int length;
+	/**
+	 * All the slots below are empty.
+	 */
+	private int head;
+	/**
+	 * Number of stored records.
+	 */
+	private int size;
+	/**
+	 * Structural modification counter for detecting concurrent modifications.
+	 */
+	private int modCount;
+	
+	public DenseRecordStorage() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a storage that can hold the given number of sequential IDs without
+	 * resizing.
+	 * 
+	 * @param capacity Expected number of records.
+	 */
+	public DenseRecordStorage(int capacity) {
+		Preconditions.checkArgument(capacity >= 0, "The capacity cannot be negative.");
+		this.records = new Object[Math.max(capacity, 1)];
+	}
+	
+	@Override
+	public R get(long id) {
+		long index = id - this.base;
+		if(index < 0 || index >= this.length) {
+			return null;
+		}
+		return (R) this.records[(int) index];
+	}
+	
+	@Override
+	public boolean containsKey(long id) {
+		return null != this.get(id);
+	}
+	
+	@Override
+	public R put(long id, R record) {
+		Preconditions.checkNotNull(record, "The storage does not accept null records.");
+		if(id < IIdentifiable.INCREMENTATION_START) {
+			throw new IllegalArgumentException("Invalid record ID #"+id+" for the dense storage.");
+		}
+		if(0 == this.size) {
+			this.base = (id - IIdentifiable.INCREMENTATION_START < this.records.length ? IIdentifiable.INCREMENTATION_START : id);
+		} else if(id < this.base) {
+			this.rebase(id);
+		}
+		long index = id - this.base;
+		if(index >= this.records.length) {
+			this.grow(index + 1);
+		}
+		int i = (int) index;
+		R previous = (R) this.records[i];
+		this.records[i] = record;
+		if(null == previous) {
+			this.size++;
+			this.modCount++;
+			if(i >= this.length) {
+				this.length = i + 1;
+			}
+			if(i < this.head || 1 == this.size) {
+				this.head = i;
+			}
+		}
+		return previous;
+	}
+	
+	@Override
+	public R remove(long id) {
+		long index = id - this.base;
+		if(index < 0 || index >= this.length) {
+			return null;
+		}
+		int i = (int) index;
+		R previous = (R) this.records[i];
+		if(null != previous) {
+			this.records[i] = null;
+			this.size--;
+			this.modCount++;
+			while(this.length > 0 && null == this.records[this.length - 1]) {
+				this.length--;
+			}
+			while(this.head < this.length && null == this.records[this.head]) {
+				this.head++;
+			}
+			if(this.records.length > MIN_SHRINK_CAPACITY && this.size < (this.records.length >> 2)
+				&& this.head + this.records.length - this.length >= (this.records.length >> 1)) {
+				this.compact();
+			}
+		}
+		return previous;
+	}
+	
+	@Override
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Assumes that the missing records will get the IDs following the currently
+	 * used range.
+	 * 
+	 * @param capacity Expected number of records.
+	 */
+	@Override
+	public void ensureCapacity(int capacity) {
+		long required = (long) this.length + capacity - this.size;
+		if(required > this.records.length) {
+			this.grow(required);
+		}
+	}
+	
+	/**
+	 * Reclaims the empty slots at the beginning of the array, by moving the base ID
+	 * forward, and trims the array to the used length.
+	 */
+	@Override
+	public void compact() {
+		int first = this.head;
+		while(first < this.length && null == this.records[first]) {
+			first++;
+		}
+		int newLength = this.length - first;
+		Object newRecords[] = new Object[Math.max(newLength, 1)];
+		System.arraycopy(this.records, first, newRecords, 0, newLength);
+		this.records = newRecords;
+		this.base += first;
+		this.length = newLength;
+		this.head = 0;
+		this.modCount++;
+	}
+	
+	@Override
+	public long estimateOverhead() {
+		return FootprintUtils.object(FootprintUtils.REFERENCE + 8 + 4 * 4)
+			+ FootprintUtils.array(this.records.length, FootprintUtils.REFERENCE);
+	}
+	
+	/**
+	 * Iterates over the records in the ID order. The iterator does not support
+	 * removal.
+	 * 
+	 * @return Record iterator.
+	 */
+	@Override
+	public Iterator<R> iterator() {
+		return new Iterator<R>() {
+			private int position = this.skip(0);
+			private final int expectedModCount = modCount;
+			
+			@Override
+			public boolean hasNext() {
+				return this.position < length;
+			}
+			
+			@Override
+			public R next() {
+				if(this.expectedModCount != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				if(this.position >= length) {
+					throw new NoSuchElementException();
+				}
+				R record = (R) records[this.position];
+				this.position = this.skip(this.position + 1);
+				return record;
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("The dense storage iterator does not support removal.");
+			}
+			
+			private int skip(int from) {
+				while(from < length && null == records[from]) {
+					from++;
+				}
+				return from;
+			}
+		};
+	}
+	
+	/**
+	 * Moves the content of the array, so that the given ID becomes the new base.
+	 * 
+	 * @param newBase New base ID lower than the current one.
+	 */
+	private void rebase(long newBase) {
+		long shift = this.base - newBase;
+		long required = this.length + shift;
+		this.checkIndex(required);
+		Object newRecords[] = this.records;
+		if(required > this.records.length) {
+			newRecords = new Object[(int) Math.max(required, Math.min((long) this.records.length << 1, Integer.MAX_VALUE - 8))];
+		}
+		System.arraycopy(this.records, 0, newRecords, (int) shift, this.length);
+		if(newRecords == this.records) {
+			Arrays.fill(newRecords, 0, (int) shift, null);
+		}
+		this.records = newRecords;
+		this.base = newBase;
+		this.length = (int) required;
+		this.head = 0;
+		this.modCount++;
+	}
+	
+	/**
+	 * Grows the array, so that it can hold the given number of slots.
+	 * 
+	 * @param required Required number of slots.
+	 */
+	private void grow(long required) {
+		this.checkIndex(required);
+		long newCapacity = Math.max(required, this.records.length + (this.records.length >> 1));
+		this.records = Arrays.copyOf(this.records, (int) Math.min(newCapacity, Integer.MAX_VALUE - 8));
+	}
+	
+	/**
+	 * Verifies that the ID range fits into an array.
+	 * 
+	 * @param required Required number of slots.
+	 */
+	private void checkIndex(long required) {
+		if(required > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The ID range starting from #"+this.base+" is too sparse for the dense storage.");
+		}
+	}
+}
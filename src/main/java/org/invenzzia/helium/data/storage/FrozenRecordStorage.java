@@ -0,0 +1,196 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.collect.Iterators;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.IRecordStorage;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Read-only storage made of two parallel arrays: the sorted IDs and the records.
+ * It takes no memory beyond the two arrays, and since it is never modified, any
+ * number of threads can read it without synchronization, once it has been safely
+ * published. The records are found with the interpolation search, which needs only
+ * a couple of steps for the auto-incremented IDs, and falls back to the binary
+ * search for the irregular ones. The modifications throw {@link IllegalStateException}.
+ * 
+ * @param R The type of stored records.
+ * @author Tomasz Jędrzejewski
+ */
+public final class FrozenRecordStorage<R extends IIdentifiable> implements IRecordStorage<R> {
+	/**
+	 * Maximum number of the interpolation steps before falling back to the binary
+	 * search.
+	 */
+	private static final int MAX_INTERPOLATION_STEPS = 4;
+	/**
+	 * Sorted record IDs.
+	 */
+	private final long ids[];
+	/**
+	 * Records in the order of their IDs.
+	 */
+	private final Object records[];
+	
+	/**
+	 * Copies the records into the frozen storage.
+	 * 
+	 * @param source The records to store.
+	 * @param size Number of the records.
+	 */
+	public FrozenRecordStorage(Iterable<? extends R> source, int size) {
+		long unsortedIds[] = new long[size];
+		Object unsortedRecords[] = new Object[size];
+		boolean sorted = true;
+		int i = 0;
+		for(R record: source) {
+			if(i == size) {
+				throw new IllegalArgumentException("The source contains more than "+size+" records.");
+			}
+			unsortedIds[i] = record.getId();
+			unsortedRecords[i] = record;
+			if(i > 0 && unsortedIds[i - 1] >= unsortedIds[i]) {
+				sorted = false;
+			}
+			i++;
+		}
+		if(i != size) {
+			throw new IllegalArgumentException("The source contains "+i+" records instead of "+size+".");
+		}
+		if(sorted) {
+			this.ids = unsortedIds;
+			this.records = unsortedRecords;
+		} else {
+			this.ids = new long[size];
+			this.records = new Object[size];
+			Integer order[] = new Integer[size];
+			for(i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			final long keys[] = unsortedIds;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer first, Integer second) {
+					return Long.compare(keys[first], keys[second]);
+				}
+			});
+			for(i = 0; i < size; i++) {
+				this.ids[i] = unsortedIds[order[i]];
+				this.records[i] = unsortedRecords[order[i]];
+				if(i > 0 && this.ids[i - 1] == this.ids[i]) {
+					throw new IllegalArgumentException("The ID #"+this.ids[i]+" occurs twice.");
+				}
+			}
+		}
+	}
+	
+	@Override
+	public R get(long id) {
+		int index = this.indexOf(id);
+		if(index < 0) {
+			return null;
+		}
+		return (R) this.records[index];
+	}
+	
+	@Override
+	public boolean containsKey(long id) {
+		return this.indexOf(id) >= 0;
+	}
+	
+	@Override
+	public R put(long id, R record) {
+		throw new IllegalStateException("The record storage is frozen.");
+	}
+	
+	@Override
+	public R remove(long id) {
+		throw new IllegalStateException("The record storage is frozen.");
+	}
+	
+	@Override
+	public int size() {
+		return this.ids.length;
+	}
+	
+	@Override
+	public void ensureCapacity(int capacity) {
+		throw new IllegalStateException("The record storage is frozen.");
+	}
+	
+	/**
+	 * The frozen storage is always compact.
+	 */
+	@Override
+	public void compact() {
+	}
+	
+	@Override
+	public long estimateOverhead() {
+		return FootprintUtils.object(2 * FootprintUtils.REFERENCE)
+			+ FootprintUtils.array(this.ids.length, 8)
+			+ FootprintUtils.array(this.records.length, FootprintUtils.REFERENCE);
+	}
+	
+	/**
+	 * Iterates over the records in the ID order.
+	 * 
+	 * @return Read-only record iterator.
+	 */
+	@Override
+	public Iterator<R> iterator() {
+		return (Iterator<R>) (Iterator<?>) Iterators.forArray(this.records);
+	}
+	
+	/**
+	 * Finds the position of the given ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Position or -1.
+	 */
+	private int indexOf(long id) {
+		int low = 0;
+		int high = this.ids.length - 1;
+		for(int step = 0; step < MAX_INTERPOLATION_STEPS && low <= high; step++) {
+			long lowId = this.ids[low];
+			long highId = this.ids[high];
+			if(id < lowId || id > highId) {
+				return -1;
+			}
+			if(lowId == highId) {
+				return low;
+			}
+			int position = low + (int) ((double) (id - lowId) / (highId - lowId) * (high - low));
+			long found = this.ids[position];
+			if(found == id) {
+				return position;
+			} else if(found < id) {
+				low = position + 1;
+			} else {
+				high = position - 1;
+			}
+		}
+		if(low > high) {
+			return -1;
+		}
+		int position = Arrays.binarySearch(this.ids, low, high + 1, id);
+		return (position >= 0 ? position : -1);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import java.util.Arrays;
+
+/**
+ * Growable set of record IDs stored as a bitmap indexed by the ID. For the
+ * auto-incremented IDs it takes one bit per record, and both the lookups and the
+ * insertions are a shift and a mask, without any hashing or boxing.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public final class IdBitSet {
+	/**
+	 * Maximum number of words.
+	 */
+	private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+	/**
+	 * Bitmap words.
+	 */
+	private long words[];
+	/**
+	 * Number of IDs in the set.
+	 */
+	private int cardinality;
+	
+	public IdBitSet() {
+		this.words = new long[1];
+	}
+	
+	/**
+	 * Creates a set that can hold the IDs below the given one without resizing.
+	 * 
+	 * @param maxId Expected upper bound of the IDs.
+	 */
+	public IdBitSet(long maxId) {
+		this.words = new long[wordIndex(Math.max(maxId, 1L) - 1L) + 1];
+	}
+	
+	/**
+	 * Adds the ID to the set.
+	 * 
+	 * @param id Record ID.
+	 * @return True, if the ID has not been in the set yet.
+	 */
+	public boolean add(long id) {
+		int word = wordIndex(id);
+		if(word >= this.words.length) {
+			this.words = Arrays.copyOf(this.words, (int) Math.min(Math.max((long) word + 1L, (long) this.words.length << 1), MAX_WORDS));
+		}
+		long mask = 1L << id;
+		if(0L != (this.words[word] & mask)) {
+			return false;
+		}
+		this.words[word] |= mask;
+		this.cardinality++;
+		return true;
+	}
+	
+	/**
+	 * Returns true, if the ID is in the set.
+	 * 
+	 * @param id Record ID.
+	 * @return True, if the ID is in the set.
+	 */
+	public boolean contains(long id) {
+		if(id < 0L) {
+			return false;
+		}
+		long word = id >>> 6;
+		return word < this.words.length && 0L != (this.words[(int) word] & (1L << id));
+	}
+	
+	/**
+	 * Returns the number of IDs in the set.
+	 * 
+	 * @return Number of IDs.
+	 */
+	public int cardinality() {
+		return this.cardinality;
+	}
+	
+	/**
+	 * Removes all the IDs. The allocated bitmap is kept.
+	 */
+	public void clear() {
+		Arrays.fill(this.words, 0L);
+		this.cardinality = 0;
+	}
+	
+	/**
+	 * Computes the word index of the ID.
+	 * 
+	 * @param id Record ID.
+	 * @return Word index.
+	 */
+	private static int wordIndex(long id) {
+		if(id < 0L || (id >>> 6) >= MAX_WORDS) {
+			throw new IllegalArgumentException("The ID #"+id+" cannot be stored in the bit set.");
+		}
+		return (int) (id >>> 6);
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.invenzzia.helium.data.interfaces.INumberable;
+
+/**
+ * Storage of the {@link INumberable} records: a growable array indexed directly
+ * by <tt>number - INCREMENTATION_START</tt>, with primitive <tt>int</tt> keys.
+ * Finding a record is a bounds check and an array load, and the iteration is
+ * a sequential scan in the number order.
+ * 
+ * <p>Removed records leave empty slots. Only the empty slots at the end of the
+ * array are reclaimed by {@link #compact()}, so the storage suits the small
+ * catalogs with rare removals.</p>
+ * 
+ * @param R The type of stored records.
+ * @author Tomasz Jędrzejewski
+ */
+public class IntRecordArray<R> implements Iterable<R> {
+	/**
+	 * Initial array size, if not specified otherwise.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+	/**
+	 * The largest array that can be allocated.
+	 */
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+	/**
+	 * The records indexed by <tt>number - INCREMENTATION_START</tt>. Empty slots
+	 * are nulls.
+	 */
+	private Object records[];
+	/**
+	 * Number of used slots: all the slots above are empty.
+	 */
+	private int length;
+	/**
+	 * Number of stored records.
+	 */
+	private int size;
+	/**
+	 * Structural modification counter for detecting concurrent modifications.
+	 */
+	private int modCount;
+	
+	public IntRecordArray() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a storage that can hold the given number of sequential numbers
+	 * without resizing.
+	 * 
+	 * @param capacity Expected number of records.
+	 */
+	public IntRecordArray(int capacity) {
+		Preconditions.checkArgument(capacity >= 0, "The capacity cannot be negative.");
+		this.records = new Object[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Returns the record with the given number.
+	 * 
+	 * @param number Record number.
+	 * @return Record or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public R get(int number) {
+		int index = number - INumberable.INCREMENTATION_START;
+		if(index < 0 || index >= this.length) {
+			return null;
+		}
+		return (R) this.records[index];
+	}
+	
+	/**
+	 * Returns true, if there is a record with the given number.
+	 * 
+	 * @param number Record number.
+	 * @return True, if the record exists.
+	 */
+	public boolean containsKey(int number) {
+		return null != this.get(number);
+	}
+	
+	/**
+	 * Stores the record under the given number, replacing the previous one.
+	 * 
+	 * @param number Record number.
+	 * @param record The record to store.
+	 * @return Previous record or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public R put(int number, R record) {
+		Preconditions.checkNotNull(record, "The storage does not accept null records.");
+		if(number < INumberable.INCREMENTATION_START) {
+			throw new IllegalArgumentException("Invalid record number #"+number+" for the array storage.");
+		}
+		int index = number - INumberable.INCREMENTATION_START;
+		if(index >= this.records.length) {
+			this.grow(index + 1L);
+		}
+		R previous = (R) this.records[index];
+		this.records[index] = record;
+		if(null == previous) {
+			this.size++;
+			this.modCount++;
+			if(index >= this.length) {
+				this.length = index + 1;
+			}
+		}
+		return previous;
+	}
+	
+	/**
+	 * Removes the record with the given number.
+	 * 
+	 * @param number Record number.
+	 * @return Removed record or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public R remove(int number) {
+		int index = number - INumberable.INCREMENTATION_START;
+		if(index < 0 || index >= this.length) {
+			return null;
+		}
+		R previous = (R) this.records[index];
+		if(null != previous) {
+			this.records[index] = null;
+			this.size--;
+			this.modCount++;
+			while(this.length > 0 && null == this.records[this.length - 1]) {
+				this.length--;
+			}
+		}
+		return previous;
+	}
+	
+	/**
+	 * Returns the number of stored records.
+	 * 
+	 * @return Number of records.
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Prepares the storage for holding the given total number of records. It
+	 * assumes that the missing records will get the numbers following the
+	 * currently used range.
+	 * 
+	 * @param capacity Expected number of records.
+	 */
+	public void ensureCapacity(int capacity) {
+		long required = (long) this.length + capacity - this.size;
+		if(required > this.records.length) {
+			this.grow(required);
+		}
+	}
+	
+	/**
+	 * Trims the array to the used length.
+	 */
+	public void compact() {
+		this.records = Arrays.copyOf(this.records, Math.max(this.length, 1));
+		this.modCount++;
+	}
+	
+	/**
+	 * Iterates over the records in the number order. The iterator does not support
+	 * removal.
+	 * 
+	 * @return Record iterator.
+	 */
+	@Override
+	public Iterator<R> iterator() {
+		return new Iterator<R>() {
+			private int position = this.skip(0);
+			private final int expectedModCount = modCount;
+			
+			@Override
+			public boolean hasNext() {
+				return this.position < length;
+			}
+			
+			@Override
+			@SuppressWarnings("unchecked")
+			public R next() {
+				if(this.expectedModCount != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				if(this.position >= length) {
+					throw new NoSuchElementException();
+				}
+				R record = (R) records[this.position];
+				this.position = this.skip(this.position + 1);
+				return record;
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("The array storage iterator does not support removal.");
+			}
+			
+			private int skip(int from) {
+				while(from < length && null == records[from]) {
+					from++;
+				}
+				return from;
+			}
+		};
+	}
+	
+	/**
+	 * Grows the array, so that it can hold the given number of slots.
+	 * 
+	 * @param required Required number of slots.
+	 */
+	private void grow(long required) {
+		if(required > MAX_CAPACITY) {
+			throw new IllegalArgumentException("The record numbers are too large for the array storage.");
+		}
+		long newCapacity = Math.max(required, this.records.length + (this.records.length >> 1));
+		this.records = Arrays.copyOf(this.records, (int) Math.min(newCapacity, MAX_CAPACITY));
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.base.Preconditions;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.invenzzia.helium.data.interfaces.IRecordStorage;
+import org.invenzzia.helium.data.utils.FootprintUtils;
+
+/**
+ * Hash map with primitive <tt>long</tt> keys that preserves the insertion order.
+ * The entries are kept in two dense parallel arrays in the order of insertion, and
+ * a separate open-addressing table with linear probing maps the keys to the entry
+ * positions. In this way the keys are never boxed, there are no per-entry node
+ * objects, and the iteration is a plain array scan.
+ * 
+ * <p>Removing an entry leaves a tombstone in the entry arrays. Tombstones are
+ * reclaimed, when the arrays run out of space.</p>
+ * 
+ * <p>The map does not accept <strong>null</strong> values.</p>
+ * 
+ * @param V The type of stored values.
+ * @author Tomasz Jędrzejewski
+ */
+public class LongRecordMap<V> implements IRecordStorage<V> {
+	/**
+	 * Initial number of entries, if not specified otherwise.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+	/**
+	 * Marks a free slot in the lookup table.
+	 */
+	private static final int EMPTY = -1;
+	/**
+	 * Entry keys in the insertion order.
+	 */
+	private long keys[];
+	/**
+	 * Entry values in the insertion order. Tombstones are represented by nulls.
+	 */
+	private Object values[];
+	/**
+	 * Open-addressing table that maps the key hashes to the entry positions.
+	 */
+	private int table[];
+	/**
+	 * Number of occupied entry positions, including tombstones.
+	 */
+	private int entryNum;
+	/**
+	 * Number of live entries.
+	 */
+	private int size;
+	/**
+	 * Structural modification counter for detecting concurrent modifications.
+	 */
+	private int modCount;
+	
+	public LongRecordMap() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a map that can hold the given number of entries without resizing.
+	 * 
+	 * @param capacity Expected number of entries.
+	 */
+	public LongRecordMap(int capacity) {
+		Preconditions.checkArgument(capacity >= 0, "The capacity cannot be negative.");
+		capacity = Math.max(capacity, 1);
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.table = this.createTable(capacity);
+	}
+	
+	/**
+	 * Returns the number of entries.
+	 * 
+	 * @return Number of entries.
+	 */
+	@Override
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns true, if the map has no entries.
+	 * 
+	 * @return True, if the map is empty.
+	 */
+	public boolean isEmpty() {
+		return 0 == this.size;
+	}
+	
+	/**
+	 * Returns the value for the given key.
+	 * 
+	 * @param key The key to look for.
+	 * @return Value or null, if the key is not mapped.
+	 */
+	@Override
+	public V get(long key) {
+		int slot = this.findSlot(key);
+		if(slot < 0) {
+			return null;
+		}
+		return (V) this.values[this.table[slot]];
+	}
+	
+	/**
+	 * Returns true, if the given key is mapped.
+	 * 
+	 * @param key The key to look for.
+	 * @return True, if the key is mapped.
+	 */
+	@Override
+	public boolean containsKey(long key) {
+		return this.findSlot(key) >= 0;
+	}
+	
+	/**
+	 * Maps the key to the given value. If the key has already been mapped, the value
+	 * is replaced and the entry keeps its original position in the iteration order.
+	 * 
+	 * @param key The key.
+	 * @param value The new value.
+	 * @return Previous value or null.
+	 */
+	@Override
+	public V put(long key, V value) {
+		Preconditions.checkNotNull(value, "The map does not accept null values.");
+		int slot = this.findSlot(key);
+		if(slot >= 0) {
+			int entry = this.table[slot];
+			V previous = (V) this.values[entry];
+			this.values[entry] = value;
+			return previous;
+		}
+		if(this.entryNum == this.keys.length) {
+			if(this.entryNum - this.size >= (this.entryNum >> 1)) {
+				this.rehash(this.keys.length);
+			} else {
+				this.rehash(this.keys.length << 1);
+			}
+			slot = this.findSlot(key);
+		}
+		int entry = this.entryNum++;
+		this.keys[entry] = key;
+		this.values[entry] = value;
+		this.table[-slot - 1] = entry;
+		this.size++;
+		this.modCount++;
+		return null;
+	}
+	
+	/**
+	 * Removes the mapping for the given key.
+	 * 
+	 * @param key The key to remove.
+	 * @return Removed value or null, if the key was not mapped.
+	 */
+	@Override
+	public V remove(long key) {
+		int slot = this.findSlot(key);
+		if(slot < 0) {
+			return null;
+		}
+		int entry = this.table[slot];
+		V previous = (V) this.values[entry];
+		this.values[entry] = null;
+		this.deleteSlot(slot);
+		this.size--;
+		this.modCount++;
+		while(this.entryNum > 0 && null == this.values[this.entryNum - 1]) {
+			this.entryNum--;
+		}
+		return previous;
+	}
+	
+	/**
+	 * Removes all the entries. The allocated capacity is kept.
+	 */
+	public void clear() {
+		Arrays.fill(this.values, 0, this.entryNum, null);
+		Arrays.fill(this.table, EMPTY);
+		this.entryNum = 0;
+		this.size = 0;
+		this.modCount++;
+	}
+	
+	/**
+	 * Makes sure that the map can hold the given number of entries without
+	 * resizing.
+	 * 
+	 * @param capacity Expected number of entries.
+	 */
+	@Override
+	public void ensureCapacity(int capacity) {
+		if(capacity > this.keys.length) {
+			this.rehash(capacity);
+		}
+	}
+	
+	/**
+	 * Reclaims the tombstones left by the removed entries and shrinks the map
+	 * to its current size.
+	 */
+	@Override
+	public void compact() {
+		this.rehash(Math.max(this.size, 1));
+	}
+	
+	@Override
+	public long estimateOverhead() {
+		return FootprintUtils.object(3 * FootprintUtils.REFERENCE + 3 * 4)
+			+ FootprintUtils.array(this.keys.length, 8)
+			+ FootprintUtils.array(this.values.length, FootprintUtils.REFERENCE)
+			+ FootprintUtils.array(this.table.length, 4);
+	}
+	
+	/**
+	 * Returns a read-only view of the values in the insertion order.
+	 * 
+	 * @return Collection view of the values.
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return LongRecordMap.this.iterator();
+			}
+			
+			@Override
+			public int size() {
+				return LongRecordMap.this.size;
+			}
+		};
+	}
+	
+	/**
+	 * Iterates over the values in the insertion order. The iterator does not support
+	 * removal.
+	 * 
+	 * @return Value iterator.
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		return new Iterator<V>() {
+			private int position = this.skip(0);
+			private final int expectedModCount = modCount;
+			
+			@Override
+			public boolean hasNext() {
+				return this.position < entryNum;
+			}
+			
+			@Override
+			public V next() {
+				if(this.expectedModCount != modCount) {
+					throw new ConcurrentModificationException();
+				}
+				if(this.position >= entryNum) {
+					throw new NoSuchElementException();
+				}
+				V value = (V) values[this.position];
+				this.position = this.skip(this.position + 1);
+				return value;
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("The record map iterator does not support removal.");
+			}
+			
+			private int skip(int from) {
+				while(from < entryNum && null == values[from]) {
+					from++;
+				}
+				return from;
+			}
+		};
+	}
+	
+	/**
+	 * Scatters the bits of the key, so that sequential IDs spread over the table.
+	 * 
+	 * @param key The key to hash.
+	 * @return Hash code.
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	
+	/**
+	 * Looks for the slot of the given key.
+	 * 
+	 * @param key The key to look for.
+	 * @return Slot index, or <tt>-(insertion slot + 1)</tt>, if the key is not mapped.
+	 */
+	private int findSlot(long key) {
+		int mask = this.table.length - 1;
+		int slot = hash(key) & mask;
+		while(true) {
+			int entry = this.table[slot];
+			if(EMPTY == entry) {
+				return -slot - 1;
+			}
+			if(this.keys[entry] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/**
+	 * Frees the slot with the backward shift deletion, so that the probe sequences
+	 * stay unbroken without any deletion markers.
+	 * 
+	 * @param hole The slot to free.
+	 */
+	private void deleteSlot(int hole) {
+		int mask = this.table.length - 1;
+		int slot = hole;
+		while(true) {
+			slot = (slot + 1) & mask;
+			int entry = this.table[slot];
+			if(EMPTY == entry) {
+				break;
+			}
+			int ideal = hash(this.keys[entry]) & mask;
+			if(((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+				this.table[hole] = entry;
+				hole = slot;
+			}
+		}
+		this.table[hole] = EMPTY;
+	}
+	
+	/**
+	 * Moves the live entries to the beginning of the entry arrays of the given
+	 * capacity, and rebuilds the lookup table.
+	 * 
+	 * @param capacity New entry capacity.
+	 */
+	private void rehash(int capacity) {
+		long newKeys[] = this.keys;
+		Object newValues[] = this.values;
+		if(capacity != this.keys.length) {
+			newKeys = new long[capacity];
+			newValues = new Object[capacity];
+		}
+		int live = 0;
+		for(int i = 0; i < this.entryNum; i++) {
+			if(null != this.values[i]) {
+				newKeys[live] = this.keys[i];
+				newValues[live] = this.values[i];
+				live++;
+			}
+		}
+		if(newValues == this.values) {
+			Arrays.fill(newValues, live, this.entryNum, null);
+		}
+		this.keys = newKeys;
+		this.values = newValues;
+		this.entryNum = live;
+		this.table = this.createTable(capacity);
+		int mask = this.table.length - 1;
+		for(int i = 0; i < live; i++) {
+			int slot = hash(newKeys[i]) & mask;
+			while(EMPTY != this.table[slot]) {
+				slot = (slot + 1) & mask;
+			}
+			this.table[slot] = i;
+		}
+		this.modCount++;
+	}
+	
+	/**
+	 * Allocates an empty lookup table that keeps the load factor below 0.5 for the
+	 * given number of entries.
+	 * 
+	 * @param capacity Number of entries.
+	 * @return New lookup table.
+	 */
+	private int[] createTable(int capacity) {
+		int tableSize = Integer.highestOneBit(Math.max(capacity, 1)) << 2;
+		if(tableSize <= 0) {
+			tableSize = 1 << 30;
+		}
+		int newTable[] = new int[tableSize];
+		Arrays.fill(newTable, EMPTY);
+		return newTable;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.utils;
+
+/**
+ * Approximate sizes of the JVM data structures used by the footprint estimates.
+ * The constants describe a 64-bit JVM with compressed references and the
+ * 8-byte object alignment, which is the default for heaps below 32 GB.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public class FootprintUtils {
+	/**
+	 * Size of the object header.
+	 */
+	public static final int OBJECT_HEADER = 12;
+	/**
+	 * Size of the array header, including the length.
+	 */
+	public static final int ARRAY_HEADER = 16;
+	/**
+	 * Size of a reference.
+	 */
+	public static final int REFERENCE = 4;
+	/**
+	 * Size of an entry of {@link java.util.HashMap}.
+	 */
+	public static final int HASH_ENTRY = 32;
+	/**
+	 * Size of an entry of {@link java.util.LinkedHashMap}.
+	 */
+	public static final int LINKED_ENTRY = 40;
+	/**
+	 * Size of an entry of {@link java.util.TreeMap}.
+	 */
+	public static final int TREE_ENTRY = 40;
+	
+	private FootprintUtils() {
+	}
+	
+	/**
+	 * Rounds the size up to the object alignment.
+	 * 
+	 * @param bytes Unaligned size.
+	 * @return Aligned size.
+	 */
+	public static long align(long bytes) {
+		return (bytes + 7L) & ~7L;
+	}
+	
+	/**
+	 * Returns the size of an object with the given total size of the fields.
+	 * 
+	 * @param fieldBytes Size of the fields.
+	 * @return Object size.
+	 */
+	public static long object(long fieldBytes) {
+		return align(OBJECT_HEADER + fieldBytes);
+	}
+	
+	/**
+	 * Returns the size of an array.
+	 * 
+	 * @param length Array length.
+	 * @param elementSize Size of a single element.
+	 * @return Array size.
+	 */
+	public static long array(long length, int elementSize) {
+		return align(ARRAY_HEADER + length * elementSize);
+	}
+	
+	/**
+	 * Returns the size of a {@link java.util.HashMap} or {@link java.util.LinkedHashMap}
+	 * with the given number of entries: the object, the bucket table and the entries.
+	 * 
+	 * @param entryNum Number of entries.
+	 * @param entrySize Size of a single entry.
+	 * @return Map size.
+	 */
+	public static long hashMap(long entryNum, int entrySize) {
+		long tableSize = 16;
+		while(tableSize * 3 < entryNum * 4) {
+			tableSize <<= 1;
+		}
+		return object(6 * REFERENCE + 4 * 4) + array(tableSize, REFERENCE) + entryNum * entrySize;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.exception;
+
+/**
+ * Informs that the change feed subscriber has fallen too far behind, and the
+ * events it asked for have already been overwritten. The subscriber shall
+ * rebuild its state from the data manager and resume from the current sequence.
+ * 
+ * @author Tomasz Jędrzejewski
+ */
+public class ChangeFeedOverrunException extends Exception {
+	/**
+	 * The oldest event sequence still available in the feed.
+	 */
+	private final long oldestSequence;
+	
+	public ChangeFeedOverrunException(String message, long oldestSequence) {
+		super(message);
+		this.oldestSequence = oldestSequence;
+	}
+	
+	/**
+	 * Returns the oldest event sequence still available in the feed.
+	 * 
+	 * @return Sequence number.
+	 */
+	public long getOldestSequence() {
+		return this.oldestSequence;
+	}
+}
@@ -16,6 +16,7 @@
 package org.invenzzia.helium.history;
 
 import java.lang.ref.WeakReference;
+import org.invenzzia.helium.data.utils.FootprintUtils;
 
 /**
  * Instances of this class carry information about the content of the history. It
@@ -28,6 +29,12 @@ import java.lang.ref.WeakReference;
  * @author Tomasz Jędrzejewski
  */
 public class CommandInfo<T> {
+	/**
+	 * Approximate number of bytes used by a single record, together with its weak
+	 * reference, but without the name and the command.
+	 */
+	static final long FOOTPRINT = FootprintUtils.object(3 * FootprintUtils.REFERENCE + 2)
+		+ FootprintUtils.object(4 * FootprintUtils.REFERENCE);
 	/**
 	 * The name of the command in the history.
 	 */
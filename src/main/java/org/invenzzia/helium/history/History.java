@@ -16,6 +16,7 @@
 package org.invenzzia.helium.history;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.eventbus.EventBus;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -23,6 +24,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import org.invenzzia.helium.annotations.CommandDetails;
+import org.invenzzia.helium.data.utils.FootprintUtils;
 import org.invenzzia.helium.events.HistoryChangedEvent;
 import org.invenzzia.helium.events.HistoryCommandExecutedEvent;
 import org.invenzzia.helium.events.HistoryCommandReplayedEvent;
@@ -384,6 +386,34 @@ public class History<T> {
 		return info;
 	}
 	
+	/**
+	 * Returns the approximate number of bytes used by the history structures: the
+	 * two operation lists, the command information map and its records. The
+	 * commands themselves are not included.
+	 * 
+	 * @return Size in bytes.
+	 */
+	public long estimateOverhead() {
+		int commandNum = this.pastOperations.size() + this.futureOperations.size();
+		int infoNum = this.commandInformation.size();
+		return FootprintUtils.object(6 * FootprintUtils.REFERENCE + 4)
+			+ 2 * FootprintUtils.object(2 * FootprintUtils.REFERENCE + 2 * 4)
+			+ commandNum * FootprintUtils.object(3 * FootprintUtils.REFERENCE)
+			+ FootprintUtils.hashMap(infoNum, FootprintUtils.LINKED_ENTRY)
+			+ infoNum * CommandInfo.FOOTPRINT;
+	}
+	
+	/**
+	 * Returns a read-only view of the past and future operations, in the order
+	 * of {@link #getHistory()}, without the base command. The view is not copied,
+	 * and it must not be used while the history is modified.
+	 * 
+	 * @return Commands kept by the history.
+	 */
+	public Iterable<T> getCommands() {
+		return Iterables.unmodifiableIterable(Iterables.concat(this.pastOperations, this.futureOperations));
+	}
+	
 	/**
 	 * Retrieves information about the given command that can be shown in the GUI.
 	 * 
@@ -15,10 +15,13 @@
  */
 package org.invenzzia.helium.data;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import java.util.Collection;
 import java.util.List;
 import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.storage.DenseRecordStorage;
 import org.invenzzia.helium.exception.ModelException;
 import org.junit.Assert;
 import org.junit.Test;
@@ -104,6 +107,387 @@ public class AbstractDataManagerTest {
 		} catch(UnsupportedOperationException exception) {
 		}
 	}
+	
+	@Test
+	public void testRecordListIsReusedUntilModification() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		Item foo = new Item();
+		manager.addItem(foo);
+		List<Item> first = manager.getRecords();
+		Assert.assertSame(first, manager.getRecords());
+		
+		manager.addItem(new Item());
+		List<Item> second = manager.getRecords();
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(1, first.size());
+		Assert.assertEquals(2, second.size());
+		
+		manager.updateItem(foo);
+		Assert.assertSame(second, manager.getRecords());
+		manager.removeItem(foo);
+		Assert.assertEquals(1, manager.getRecords().size());
+	}
+	
+	@Test
+	public void testHashIndexIsMaintained() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		Item foo = new Item();
+		foo.setValue("Foo");
+		manager.addItem(foo);
+		HashIndex<Item> index = manager.registerIndex("value", new ItemValueFunction());
+		Item bar = new Item();
+		bar.setValue("Bar");
+		manager.addItem(bar);
+		Item joe = new Item();
+		joe.setValue("Bar");
+		manager.addItem(joe);
+		
+		Assert.assertSame(index, manager.getIndex("value"));
+		Assert.assertEquals(1, manager.findBy("value", "Foo").size());
+		Assert.assertTrue(manager.findBy("value", "Foo").contains(foo));
+		Assert.assertEquals(2, manager.findBy("value", "Bar").size());
+		Assert.assertEquals(2, index.keyNum());
+		
+		joe.setValue("Joe");
+		manager.updateItem(joe);
+		Assert.assertEquals(1, manager.findBy("value", "Bar").size());
+		Assert.assertSame(joe, index.findOne("Joe"));
+		
+		manager.removeItem(bar);
+		Assert.assertTrue(manager.findBy("value", "Bar").isEmpty());
+		Assert.assertEquals(0, index.count("Bar"));
+		Assert.assertEquals(2, index.size());
+	}
+	
+	@Test
+	public void testRecordsWithNullKeysAreNotIndexed() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		manager.registerIndex("value", new ItemValueFunction());
+		Item foo = new Item();
+		manager.addItem(foo);
+		Assert.assertTrue(manager.findBy("value", null).isEmpty());
+		foo.setValue("Foo");
+		manager.updateItem(foo);
+		Assert.assertSame(foo, manager.findBy("value", "Foo").iterator().next());
+	}
+	
+	@Test
+	public void testRangeIndexAnswersRangeQueries() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		RangeIndex<Item, String> index = manager.registerRangeIndex("value", new ItemValueFunction());
+		Item items[] = new Item[5];
+		String values[] = new String[] { "D", "B", "E", "A", "B" };
+		for(int i = 0; i < items.length; i++) {
+			items[i] = new Item();
+			items[i].setValue(values[i]);
+			manager.addItem(items[i]);
+		}
+		Assert.assertSame(index, manager.getRangeIndex("value"));
+		Assert.assertEquals(ImmutableList.of(items[1], items[4], items[0]), ImmutableList.copyOf(index.range("B", "D")));
+		Assert.assertEquals(ImmutableList.of(items[0]), ImmutableList.copyOf(index.range("B", false, "E", false)));
+		Assert.assertEquals(ImmutableList.of(items[2], items[0]), index.highest(2));
+		Assert.assertEquals(ImmutableList.of(items[3], items[1], items[4]), index.lowest(3));
+		Assert.assertTrue(index.floor("C").contains(items[1]));
+		Assert.assertTrue(index.ceiling("C").contains(items[0]));
+		Assert.assertTrue(index.ceiling("F").isEmpty());
+		
+		items[2].setValue("C");
+		manager.updateItem(items[2]);
+		manager.removeItem(items[3]);
+		Assert.assertEquals("C", index.ceilingKey("C"));
+		Assert.assertEquals(ImmutableList.of(items[0], items[2]), index.highest(2));
+		Assert.assertEquals(ImmutableList.of(items[1], items[4]), index.lowest(2));
+		Assert.assertEquals(3, index.keyNum());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testFindingByUnknownIndexThrowsException() {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		manager.findBy("value", "Foo");
+	}
+	
+	@Test
+	public void testUpdatingNonexistingItemThrowsException() {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		try {
+			manager.updateItem(new Item());
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record with ID #0 does not exist.", exception.getMessage());
+		}
+	}
+	
+	@Test
+	public void testDenseStorageRestoresObjectsAfterLoading() throws ModelException {
+		DenseDataManager manager = new DenseDataManager();
+		Item foo = new Item();
+		foo.setId(7L);
+		Item bar = new Item();
+		bar.setId(3L);
+		manager.restore(foo);
+		manager.restore(bar);
+		manager.setNextId(8L);
+		
+		Item joe = new Item();
+		manager.addItem(joe);
+		Assert.assertEquals(8L, joe.getId());
+		Assert.assertSame(bar, manager.findById(3L));
+		Assert.assertSame(foo, manager.findById(7L));
+		Assert.assertSame(joe, manager.findById(8L));
+		Assert.assertNull(manager.findById(5L));
+		Assert.assertEquals(3, manager.size());
+		
+		manager.removeItem(3L);
+		manager.compactStorage();
+		Assert.assertNull(manager.findById(3L));
+		Assert.assertSame(foo, manager.findById(7L));
+		Assert.assertEquals(2, manager.getRecords().size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testDenseStorageRejectsDuplicatedRestore() {
+		DenseDataManager manager = new DenseDataManager();
+		Item foo = new Item();
+		foo.setId(7L);
+		manager.restore(foo);
+		manager.restore(foo);
+	}
+	
+	@Test
+	public void testAddingItemsInBatch() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		manager.registerIndex("value", new ItemValueFunction());
+		manager.addItem(this.createItem("Foo"));
+		Item bar = this.createItem("Bar");
+		Item joe = this.createItem("Joe");
+		manager.addAll(ImmutableList.of(bar, joe));
+		
+		Assert.assertEquals(2L, bar.getId());
+		Assert.assertEquals(3L, joe.getId());
+		Assert.assertEquals(4L, manager.getNextId());
+		Assert.assertEquals(3, manager.size());
+		Assert.assertEquals(1, manager.createBatches);
+		Assert.assertEquals(3, manager.created);
+		Assert.assertSame(joe, manager.findBy("value", "Joe").iterator().next());
+	}
+	
+	@Test
+	public void testRejectedBatchIsNotAdded() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		manager.addItem(this.createItem("Foo"));
+		try {
+			manager.addAll(ImmutableList.of(this.createItem("Bar"), this.createItem("Invalid")));
+			Assert.fail("The batch should be rejected.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, manager.size());
+		Assert.assertEquals(2L, manager.getNextId());
+		Assert.assertEquals(0, manager.createBatches);
+	}
+	
+	@Test
+	public void testRemovingItemsInBatch() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		Item foo = this.createItem("Foo");
+		Item bar = this.createItem("Bar");
+		Item joe = this.createItem("Joe");
+		manager.addAll(ImmutableList.of(foo, bar, joe));
+		manager.removeAll(ImmutableList.of(foo, joe));
+		
+		Assert.assertEquals(1, manager.size());
+		Assert.assertSame(bar, manager.findById(2L));
+		Assert.assertEquals(1, manager.removeBatches);
+		Assert.assertEquals(ImmutableList.of(bar), manager.getRecords());
+	}
+	
+	@Test
+	public void testRemovingBatchWithUnknownItemRemovesNothing() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		Item foo = this.createItem("Foo");
+		manager.addItem(foo);
+		try {
+			manager.removeAll(ImmutableList.of(foo, this.createItem("Bar")));
+			Assert.fail("The batch should be rejected.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, manager.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicatedItemInBatchIsRejected() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		Item foo = this.createItem("Foo");
+		manager.addAll(ImmutableList.of(foo, foo));
+	}
+	
+	@Test
+	public void testFrozenManagerIsReadOnly() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		manager.registerIndex("value", new ItemValueFunction());
+		Item foo = this.createItem("Foo");
+		manager.addAll(ImmutableList.of(foo, this.createItem("Bar"), this.createItem("Joe")));
+		manager.removeItem(2L);
+		manager.freeze();
+		
+		Assert.assertTrue(manager.isFrozen());
+		Assert.assertEquals(2, manager.size());
+		Assert.assertSame(foo, manager.findById(1L));
+		Assert.assertNull(manager.findById(2L));
+		Assert.assertEquals(3L, manager.findBy("value", "Joe").iterator().next().getId());
+		Assert.assertSame(manager.getRecords(), manager.getRecords());
+		try {
+			manager.addItem(this.createItem("Moo"));
+			Assert.fail("Exception not thrown.");
+		} catch(IllegalStateException exception) {
+		}
+		try {
+			manager.removeItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(IllegalStateException exception) {
+		}
+		Assert.assertEquals(2, manager.size());
+	}
+	
+	@Test
+	public void testUniqueIndexRejectsDuplicatedKeys() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		HashIndex<Item> index = manager.registerUniqueIndex("value", new ItemValueFunction());
+		Item foo = this.createItem("Foo");
+		manager.addItem(foo);
+		manager.addItem(this.createItem(null));
+		manager.addItem(this.createItem(null));
+		try {
+			manager.addItem(this.createItem("Foo"));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		try {
+			manager.addItem(this.createItem("Invalid"));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		manager.addItem(this.createItem("Bar"));
+		
+		Assert.assertTrue(index.isUnique());
+		Assert.assertEquals(4, manager.size());
+		Assert.assertEquals(5L, manager.getNextId());
+		Assert.assertEquals(2, index.size());
+		Assert.assertFalse(index.containsKey("Invalid"));
+		Assert.assertSame(foo, index.findOne("Foo"));
+	}
+	
+	@Test
+	public void testUniqueIndexChecksUpdates() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		HashIndex<Item> index = manager.registerUniqueIndex("value", new ItemValueFunction());
+		Item foo = this.createItem("Foo");
+		Item bar = this.createItem("Bar");
+		manager.addAll(ImmutableList.of(foo, bar));
+		
+		foo.setValue("Foo");
+		manager.updateItem(foo);
+		bar.setValue("Foo");
+		try {
+			manager.updateItem(bar);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertSame(bar, index.findOne("Bar"));
+		bar.setValue("Joe");
+		manager.updateItem(bar);
+		Assert.assertSame(bar, index.findOne("Joe"));
+		Assert.assertFalse(index.containsKey("Bar"));
+	}
+	
+	@Test
+	public void testUniqueIndexChecksKeysComputedByTheUpdateHook() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager() {
+			@Override
+			protected void beforeUpdate(Item item) throws ModelException {
+				item.setValue(item.getValue().trim());
+			}
+		};
+		HashIndex<Item> index = manager.registerUniqueIndex("value", new ItemValueFunction());
+		Item foo = this.createItem("Foo");
+		Item bar = this.createItem("Bar");
+		manager.addAll(ImmutableList.of(foo, bar));
+		
+		bar.setValue(" Foo ");
+		try {
+			manager.updateItem(bar);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertSame(foo, index.findOne("Foo"));
+		Assert.assertSame(bar, index.findOne("Bar"));
+	}
+	
+	@Test
+	public void testUniqueIndexChecksBatchUpdates() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		HashIndex<Item> index = manager.registerUniqueIndex("value", new ItemValueFunction());
+		Item foo = this.createItem("Foo");
+		Item bar = this.createItem("Bar");
+		Item joe = this.createItem("Joe");
+		manager.addAll(ImmutableList.of(foo, bar, joe));
+		
+		foo.setValue("Bar");
+		bar.setValue("Foo");
+		manager.updateAll(ImmutableList.of(foo, bar));
+		Assert.assertSame(foo, index.findOne("Bar"));
+		Assert.assertSame(bar, index.findOne("Foo"));
+		
+		foo.setValue("Moe");
+		bar.setValue("Moe");
+		try {
+			manager.updateAll(ImmutableList.of(foo, bar));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		joe.setValue("Foo");
+		try {
+			manager.updateAll(ImmutableList.of(joe));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertSame(joe, index.findOne("Joe"));
+	}
+	
+	@Test
+	public void testUniqueIndexChecksBatches() throws ModelException {
+		BatchDataManager manager = new BatchDataManager();
+		HashIndex<Item> index = manager.registerUniqueIndex("value", new ItemValueFunction());
+		manager.addItem(this.createItem("Foo"));
+		try {
+			manager.addAll(ImmutableList.of(this.createItem("Bar"), this.createItem("Foo")));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		try {
+			manager.addAll(ImmutableList.of(this.createItem("Bar"), this.createItem("Joe"), this.createItem("Bar")));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, manager.size());
+		Assert.assertEquals(2L, manager.getNextId());
+		Assert.assertEquals(1, index.size());
+		
+		manager.addAll(ImmutableList.of(this.createItem("Bar"), this.createItem("Joe")));
+		Assert.assertEquals(3, index.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUniqueIndexCannotBeCreatedOverDuplicates() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		manager.addAll(ImmutableList.of(this.createItem("Foo"), this.createItem("Foo")));
+		manager.registerUniqueIndex("value", new ItemValueFunction());
+	}
+	
+	private Item createItem(String value) {
+		Item item = new Item();
+		item.setValue(value);
+		return item;
+	}
 }
 
 
@@ -131,4 +515,51 @@ class Item implements IIdentifiable {
 }
 
 class DeabstractedDataManager extends AbstractDataManager<Item> {
-}
\ No newline at end of file
+}
+
+class ItemValueFunction implements Function<Item, String> {
+	@Override
+	public String apply(Item input) {
+		return input.getValue();
+	}
+}
+
+class DenseDataManager extends AbstractDataManager<Item> {
+	public DenseDataManager() {
+		super(new DenseRecordStorage<Item>());
+	}
+	
+	public void restore(Item item) {
+		this.addObject(item.getId(), item);
+	}
+}
+
+class BatchDataManager extends AbstractDataManager<Item> {
+	int createBatches;
+	int removeBatches;
+	int created;
+	
+	@Override
+	protected void beforeCreate(Item item) throws ModelException {
+		if("Invalid".equals(item.getValue())) {
+			throw new ModelException("Invalid item.");
+		}
+	}
+	
+	@Override
+	protected void afterCreate(Item item) {
+		this.created++;
+	}
+	
+	@Override
+	protected void afterCreateBatch(List<Item> items) {
+		this.createBatches++;
+		super.afterCreateBatch(items);
+	}
+	
+	@Override
+	protected void afterRemoveBatch(List<Item> items) {
+		this.removeBatches++;
+		super.afterRemoveBatch(items);
+	}
+}
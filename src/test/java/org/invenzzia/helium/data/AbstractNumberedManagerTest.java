@@ -0,0 +1,139 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import org.invenzzia.helium.data.interfaces.INumberable;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AbstractNumberedManagerTest {
+	@Test
+	public void testAddingAndFindingItems() throws ModelException {
+		DeabstractedNumberedManager manager = new DeabstractedNumberedManager();
+		NumberedItem foo = new NumberedItem();
+		NumberedItem bar = new NumberedItem();
+		manager.addItem(foo);
+		manager.addItem(bar);
+		
+		Assert.assertEquals(1, foo.getNumber());
+		Assert.assertEquals(2, bar.getNumber());
+		Assert.assertEquals(3, manager.getNextNumber());
+		Assert.assertSame(bar, manager.findByNumber(2));
+		Assert.assertNull(manager.findByNumber(3));
+		Assert.assertNull(manager.findByNumber(-1));
+		Assert.assertEquals(ImmutableList.of(foo, bar), manager.getRecords());
+	}
+	
+	@Test
+	public void testRejectedItemRollsBackTheNumber() throws ModelException {
+		DeabstractedNumberedManager manager = new DeabstractedNumberedManager();
+		NumberedItem item = new NumberedItem();
+		item.setValue("Invalid");
+		try {
+			manager.addItem(item);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, manager.getNextNumber());
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testRemovingItems() throws ModelException {
+		DeabstractedNumberedManager manager = new DeabstractedNumberedManager();
+		NumberedItem foo = new NumberedItem();
+		NumberedItem bar = new NumberedItem();
+		NumberedItem joe = new NumberedItem();
+		manager.addAll(ImmutableList.of(foo, bar, joe));
+		manager.removeItem(1);
+		manager.removeAll(ImmutableList.of(joe));
+		
+		Assert.assertEquals(1, manager.size());
+		Assert.assertEquals(ImmutableList.of(bar), manager.getRecords());
+		try {
+			manager.removeItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+	}
+	
+	@Test
+	public void testNumbersAreLimitedToTheIntRange() throws ModelException {
+		DeabstractedNumberedManager manager = new DeabstractedNumberedManager();
+		manager.setNextNumber(Integer.MAX_VALUE - 1);
+		try {
+			manager.addAll(ImmutableList.of(new NumberedItem(), new NumberedItem()));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		manager.setNextNumber(Integer.MAX_VALUE);
+		try {
+			manager.addItem(new NumberedItem());
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testRestoringObjects() {
+		DeabstractedNumberedManager manager = new DeabstractedNumberedManager();
+		NumberedItem item = new NumberedItem();
+		item.setNumber(40);
+		manager.restore(item);
+		manager.setNextNumber(41);
+		Assert.assertSame(item, manager.findByNumber(40));
+		Assert.assertEquals(1, manager.size());
+	}
+}
+
+class NumberedItem implements INumberable {
+	private int number = INumberable.NEUTRAL_ID;
+	private String value;
+	
+	@Override
+	public int getNumber() {
+		return this.number;
+	}
+	
+	@Override
+	public void setNumber(int number) {
+		this.number = number;
+	}
+	
+	public String getValue() {
+		return this.value;
+	}
+	
+	public void setValue(String value) {
+		this.value = value;
+	}
+}
+
+class DeabstractedNumberedManager extends AbstractNumberedManager<NumberedItem> {
+	@Override
+	protected void beforeCreate(NumberedItem item) throws ModelException {
+		if("Invalid".equals(item.getValue())) {
+			throw new ModelException("Invalid record.");
+		}
+	}
+	
+	public void restore(NumberedItem item) {
+		this.addObject(item.getNumber(), item);
+	}
+}
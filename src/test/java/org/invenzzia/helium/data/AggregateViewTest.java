@@ -0,0 +1,90 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AggregateViewTest {
+	@Test
+	public void testGroupedSumIsMaintained() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		manager.addItem(this.createItem("A:5"));
+		AggregateView<Item, String, Number, Long> view = manager.registerView("sum", new GroupFunction(), new AmountFunction(), Folds.longSum());
+		Item second = this.createItem("B:7");
+		manager.addItem(second);
+		manager.addItem(this.createItem("A:3"));
+		
+		Assert.assertEquals(Long.valueOf(15L), view.get());
+		Assert.assertEquals(3, view.getCount());
+		Assert.assertEquals(Long.valueOf(8L), view.get("A"));
+		Assert.assertEquals(2, view.getCount("A"));
+		Assert.assertEquals(Long.valueOf(7L), view.get("B"));
+		
+		second.setValue("A:10");
+		manager.updateItem(second);
+		Assert.assertEquals(Long.valueOf(18L), view.get("A"));
+		Assert.assertNull(view.get("B"));
+		Assert.assertFalse(view.getGroups().containsKey("B"));
+		
+		manager.removeItem(1L);
+		Assert.assertEquals(Long.valueOf(13L), view.get());
+		Assert.assertEquals(2, view.getCount("A"));
+		Assert.assertSame(view, manager.getView("sum"));
+	}
+	
+	@Test
+	public void testExtremesSurviveRemovals() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		AggregateView<Item, Object, Integer, Folds.Extremes<Integer>> view = manager.registerView("extremes", new AmountFunction(), Folds.<Integer>extremes());
+		for(int i = 1; i <= 5; i++) {
+			manager.addItem(this.createItem("X:"+i));
+		}
+		Assert.assertEquals(Integer.valueOf(1), view.get().getMin());
+		Assert.assertEquals(Integer.valueOf(5), view.get().getMax());
+		manager.removeItem(1L);
+		manager.removeItem(5L);
+		Assert.assertEquals(Integer.valueOf(2), view.get().getMin());
+		Assert.assertEquals(Integer.valueOf(4), view.get().getMax());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownViewThrowsException() {
+		new DeabstractedDataManager().getView("foo");
+	}
+	
+	private Item createItem(String value) {
+		Item item = new Item();
+		item.setValue(value);
+		return item;
+	}
+}
+
+class GroupFunction implements Function<Item, String> {
+	@Override
+	public String apply(Item input) {
+		return input.getValue().substring(0, input.getValue().indexOf(':'));
+	}
+}
+
+class AmountFunction implements Function<Item, Integer> {
+	@Override
+	public Integer apply(Item input) {
+		return Integer.valueOf(input.getValue().substring(input.getValue().indexOf(':') + 1));
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AssociationTest {
+	private long lastId;
+	
+	@Test
+	public void testLinksCanBeNavigatedInBothDirections() throws ModelException {
+		Association<Item, Item> association = new Association<>();
+		Item lines[] = this.createItems(2);
+		Item stops[] = this.createItems(3);
+		association.link(lines[0], stops[0]);
+		association.link(lines[0], stops[1]);
+		association.link(lines[1], stops[1]);
+		association.link(lines[1], stops[2]);
+		
+		Assert.assertEquals(4, association.size());
+		Assert.assertEquals(ImmutableSet.of(stops[0], stops[1]), association.getTargets(lines[0]));
+		Assert.assertEquals(ImmutableSet.of(lines[0], lines[1]), association.getSources(stops[1]));
+		Assert.assertEquals(2, association.getInDegree(stops[1]));
+		Assert.assertEquals(1, association.getInDegree(stops[2]));
+		Assert.assertEquals(2, association.getOutDegree(lines[1]));
+		Assert.assertTrue(association.isLinked(lines[1], stops[2]));
+		Assert.assertFalse(association.isLinked(lines[0], stops[2]));
+		
+		association.unlink(lines[0], stops[1]);
+		Assert.assertEquals(ImmutableSet.of(lines[1]), association.getSources(stops[1]));
+		Assert.assertEquals(3, association.size());
+	}
+	
+	@Test
+	public void testDuplicatedLinkIsRejected() throws ModelException {
+		Association<Item, Item> association = new Association<>();
+		Item items[] = this.createItems(3);
+		association.link(items[0], items[1]);
+		try {
+			association.link(items[0], items[1]);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record #1 is already linked with the record #2.", exception.getMessage());
+		}
+		try {
+			association.linkAll(items[0], ImmutableList.of(items[2], items[1]));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, association.size());
+		Assert.assertEquals(0, association.getInDegree(items[2]));
+	}
+	
+	@Test
+	public void testUnlinkingRecordsInBulk() throws ModelException {
+		Association<Item, Item> association = new Association<>();
+		Item sources[] = this.createItems(3);
+		Item targets[] = this.createItems(3);
+		for(Item source: sources) {
+			association.linkAll(source, ImmutableList.copyOf(targets));
+		}
+		Assert.assertEquals(9, association.size());
+		
+		Assert.assertEquals(3, association.unlinkTarget(targets[0]).size());
+		Assert.assertEquals(2, association.getOutDegree(sources[0]));
+		Assert.assertEquals(2, association.unlinkSource(sources[1]).size());
+		Assert.assertEquals(ImmutableSet.of(sources[0], sources[2]), association.getSources(targets[2]));
+		Assert.assertEquals(4, association.size());
+		Assert.assertTrue(association.unlinkTarget(targets[0]).isEmpty());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnstoredRecordsCannotBeLinked() throws ModelException {
+		Association<Item, Item> association = new Association<>();
+		association.link(this.createItems(1)[0], new Item());
+	}
+	
+	private Item[] createItems(int count) {
+		Item items[] = new Item[count];
+		for(int i = 0; i < count; i++) {
+			items[i] = new Item();
+			items[i].setId(++this.lastId);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import java.util.List;
+import org.invenzzia.helium.exception.ChangeFeedOverrunException;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChangeFeedTest {
+	@Test
+	public void testManagerPublishesModifications() throws ModelException, ChangeFeedOverrunException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		ChangeFeed<Item> feed = manager.getChangeFeed();
+		Assert.assertSame(feed, manager.getChangeFeed());
+		long start = feed.getLastSequence();
+		
+		Item foo = new Item();
+		manager.addItem(foo);
+		manager.updateItem(foo);
+		manager.removeItem(foo);
+		
+		List<ChangeEvent<Item>> events = feed.poll(start, 10);
+		Assert.assertEquals(3, events.size());
+		Assert.assertEquals(ChangeEvent.Type.CREATED, events.get(0).getType());
+		Assert.assertEquals(ChangeEvent.Type.UPDATED, events.get(1).getType());
+		Assert.assertEquals(ChangeEvent.Type.REMOVED, events.get(2).getType());
+		Assert.assertEquals(1L, events.get(2).getId());
+		Assert.assertSame(foo, events.get(2).getRecord());
+		Assert.assertTrue(feed.poll(events.get(2).getSequence(), 10).isEmpty());
+	}
+	
+	@Test
+	public void testSubscriberReadsInBatches() throws ModelException, ChangeFeedOverrunException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		ChangeFeed<Item> feed = manager.getChangeFeed();
+		for(int i = 0; i < 10; i++) {
+			manager.addItem(new Item());
+		}
+		List<ChangeEvent<Item>> first = feed.poll(0L, 4);
+		Assert.assertEquals(4, first.size());
+		Assert.assertEquals(4L, first.get(3).getSequence());
+		List<ChangeEvent<Item>> rest = feed.poll(4L, 100);
+		Assert.assertEquals(6, rest.size());
+		Assert.assertEquals(10L, rest.get(5).getId());
+	}
+	
+	@Test
+	public void testSlowSubscriberIsOverrun() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		ChangeFeed<Item> feed = new ChangeFeed<>(8);
+		manager.addRecordListener(feed);
+		for(int i = 0; i < 20; i++) {
+			manager.addItem(new Item());
+		}
+		Assert.assertEquals(13L, feed.getOldestSequence());
+		try {
+			feed.poll(5L, 10);
+			Assert.fail("Exception not thrown.");
+		} catch(ChangeFeedOverrunException exception) {
+			Assert.assertEquals(13L, exception.getOldestSequence());
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentDataManagerTest {
+	@Test
+	public void testAddingAndRemovingItems() throws ModelException {
+		DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		Item foo = new Item();
+		foo.setValue("Foo");
+		
+		manager.addItem(foo);
+		Assert.assertEquals(1, manager.size());
+		Assert.assertEquals(1L, foo.getId());
+		Assert.assertEquals(2L, manager.getNextId());
+		Assert.assertSame(foo, manager.findById(1L));
+		
+		manager.removeItem(foo);
+		Assert.assertEquals(0, manager.size());
+		Assert.assertNull(manager.findById(1L));
+	}
+	
+	@Test
+	public void testFailedCreationRollsBackTheId() throws ModelException {
+		DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		Item foo = new Item();
+		foo.setValue("Invalid");
+		try {
+			manager.addItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("Invalid record.", exception.getMessage());
+		}
+		Assert.assertEquals(1L, manager.getNextId());
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testBatchIsAddedAndRemovedAtOnce() throws ModelException {
+		DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		Item foo = new Item();
+		Item bar = new Item();
+		manager.addAll(ImmutableList.of(foo, bar));
+		Assert.assertEquals(1L, foo.getId());
+		Assert.assertEquals(2L, bar.getId());
+		Assert.assertEquals(3L, manager.getNextId());
+		Assert.assertEquals(2, manager.getRecords().size());
+		
+		manager.removeAll(ImmutableList.of(foo, bar));
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testRejectedBatchRollsBackTheIds() throws ModelException {
+		DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		Item foo = new Item();
+		Item bar = new Item();
+		bar.setValue("Invalid");
+		try {
+			manager.addAll(ImmutableList.of(foo, bar));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("Invalid record.", exception.getMessage());
+		}
+		Assert.assertEquals(1L, manager.getNextId());
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testUpdateCallsTheHooks() throws ModelException {
+		DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		Item foo = new Item();
+		foo.setValue("Foo");
+		manager.addItem(foo);
+		foo.setValue("Invalid");
+		try {
+			manager.updateItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("Invalid update.", exception.getMessage());
+		}
+		try {
+			manager.updateItem(new Item());
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record with ID #0 does not exist.", exception.getMessage());
+		}
+	}
+	
+	@Test
+	public void testRecordListIsReusedUntilModification() throws ModelException {
+		DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		Item foo = new Item();
+		manager.addItem(foo);
+		List<Item> first = manager.getRecords();
+		Assert.assertSame(first, manager.getRecords());
+		manager.removeItem(foo);
+		Assert.assertNotSame(first, manager.getRecords());
+		Assert.assertTrue(manager.getRecords().isEmpty());
+	}
+	
+	@Test
+	public void testConcurrentWritersReceiveUniqueIds() throws InterruptedException {
+		final DeabstractedConcurrentManager manager = new DeabstractedConcurrentManager();
+		final int threadNum = 8;
+		final int itemNum = 2000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread threads[] = new Thread[threadNum];
+		for(int i = 0; i < threadNum; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for(int j = 0; j < itemNum; j++) {
+							Item item = new Item();
+							item.setValue("Foo");
+							manager.addItem(item);
+							if(j % 2 == 1) {
+								manager.removeItem(item.getId());
+							}
+						}
+					} catch(InterruptedException | ModelException exception) {
+						throw new RuntimeException(exception);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for(Thread thread: threads) {
+			thread.join();
+		}
+		Assert.assertEquals(threadNum * itemNum / 2, manager.size());
+		Assert.assertEquals(threadNum * itemNum + 1L, manager.getNextId());
+		Set<Long> ids = new HashSet<>();
+		for(Item item: manager.getRecords()) {
+			Assert.assertTrue(ids.add(item.getId()));
+			Assert.assertSame(item, manager.findById(item.getId()));
+		}
+	}
+}
+
+class DeabstractedConcurrentManager extends ConcurrentDataManager<Item> {
+	@Override
+	protected void beforeCreate(Item item) throws ModelException {
+		if("Invalid".equals(item.getValue())) {
+			throw new ModelException("Invalid record.");
+		}
+	}
+	
+	@Override
+	protected void beforeUpdate(Item item) throws ModelException {
+		if("Invalid".equals(item.getValue())) {
+			throw new ModelException("Invalid update.");
+		}
+	}
+}
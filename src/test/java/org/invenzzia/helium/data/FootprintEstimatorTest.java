@@ -0,0 +1,132 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import org.invenzzia.helium.data.interfaces.ISizeEstimator;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FootprintEstimatorTest {
+	@Test
+	public void testManagerComponentsAreReported() throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		manager.registerIndex("value", new ItemValueFunction());
+		manager.registerView("count", new ItemValueFunction(), new AmountFunction(), Folds.longSum());
+		for(int i = 0; i < 1000; i++) {
+			manager.addItem(this.createItem("V:"+(i % 10)));
+		}
+		manager.getRecords();
+		FootprintEstimator estimator = new FootprintEstimator();
+		estimator.registerEstimator(Item.class, new ItemSizeEstimator());
+		Footprint footprint = estimator.estimate(manager);
+		
+		Assert.assertEquals(1000L, footprint.getEntryNum());
+		Assert.assertEquals(1000L * 40L, footprint.getComponent("records").getBytes());
+		Assert.assertTrue(footprint.getComponent("storage").getBytes() > 1000L * 12L);
+		Assert.assertEquals(1000L, footprint.getComponent("index 'value'").getEntryNum());
+		Assert.assertEquals(10L, footprint.getComponent("view 'count'").getEntryNum());
+		Assert.assertNotNull(footprint.getComponent("snapshot"));
+		Assert.assertNull(footprint.getComponent("change feed"));
+		
+		long total = footprint.getBytes();
+		for(Footprint component: footprint.getComponents()) {
+			total += component.getBytes();
+		}
+		Assert.assertEquals(total, footprint.getTotalBytes());
+		Assert.assertTrue(footprint.toString().startsWith("DeabstractedDataManager: 1000 entries, "+total+" bytes\n  records: "));
+	}
+	
+	@Test
+	public void testLargeSetsAreSampled() {
+		FootprintEstimator estimator = new FootprintEstimator();
+		estimator.setSampleSize(10);
+		CountingEstimator counter = new CountingEstimator();
+		estimator.registerEstimator(Item.class, counter);
+		ImmutableList.Builder<Item> builder = ImmutableList.builder();
+		for(int i = 0; i < 1000; i++) {
+			builder.add(this.createItem("Foo"));
+		}
+		Assert.assertEquals(1000L * 40L, estimator.estimateSize(builder.build(), 1000));
+		Assert.assertEquals(10, counter.calls);
+		
+		estimator.setSampleSize(0);
+		counter.calls = 0;
+		Assert.assertEquals(1000L * 40L, estimator.estimateSize(builder.build(), 1000));
+		Assert.assertEquals(1000, counter.calls);
+	}
+	
+	@Test
+	public void testEstimatorsAreInheritedBySubclasses() {
+		FootprintEstimator estimator = new FootprintEstimator();
+		estimator.setDefaultSize(16L);
+		Assert.assertEquals(16L, estimator.estimateSize(new SpecialItem()));
+		estimator.registerEstimator(Item.class, new ItemSizeEstimator());
+		Assert.assertEquals(40L, estimator.estimateSize(new SpecialItem()));
+		CountingEstimator special = new CountingEstimator();
+		estimator.registerEstimator(SpecialItem.class, special);
+		Assert.assertEquals(40L, estimator.estimateSize(this.createItem("Foo")));
+		Assert.assertEquals(0, special.calls);
+		Assert.assertEquals(40L, estimator.estimateSize(new SpecialItem()));
+		Assert.assertEquals(1, special.calls);
+		Assert.assertEquals(16L, estimator.estimateSize("Foo"));
+	}
+	
+	@Test
+	public void testRelationsAndUnitsOfWorkAreReported() throws ModelException {
+		FootprintEstimator estimator = new FootprintEstimator();
+		Relation<Item> relation = new Relation<>();
+		relation.attach(this.createItem("Foo"));
+		relation.attach(this.createItem("Bar"));
+		Footprint footprint = estimator.estimate("relation", relation);
+		Assert.assertEquals("relation", footprint.getName());
+		Assert.assertEquals(2L, footprint.getEntryNum());
+		Assert.assertTrue(footprint.getBytes() > 0L);
+		
+		UnitOfWork<Item> unitOfWork = new UnitOfWork<>();
+		unitOfWork.insert(this.createItem("Foo"));
+		footprint = estimator.estimate("unit", unitOfWork);
+		Assert.assertEquals(1L, footprint.getEntryNum());
+		Assert.assertTrue(footprint.getBytes() > 0L);
+	}
+	
+	private Item createItem(String value) {
+		Item item = new Item();
+		item.setValue(value);
+		return item;
+	}
+}
+
+class SpecialItem extends Item {
+}
+
+class ItemSizeEstimator implements ISizeEstimator<Item> {
+	@Override
+	public long estimateSize(Item object) {
+		return 40L;
+	}
+}
+
+class CountingEstimator implements ISizeEstimator<Object> {
+	int calls;
+	
+	@Override
+	public long estimateSize(Object object) {
+		this.calls++;
+		return 40L;
+	}
+}
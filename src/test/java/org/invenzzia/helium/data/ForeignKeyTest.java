@@ -0,0 +1,295 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ForeignKeyTest {
+	@Test
+	public void testReferenceToMissingParentIsRejected() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.RESTRICT);
+		Item foo = this.createItem("Foo");
+		try {
+			nodes.addItem(this.createNode(foo, null));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(0, nodes.size());
+		Assert.assertEquals(IIdentifiable.INCREMENTATION_START, nodes.getNextId());
+		
+		items.addItem(foo);
+		Node node = this.createNode(foo, null);
+		nodes.addItem(node);
+		node.owner.set(this.createItem("Bar"));
+		try {
+			nodes.updateItem(node);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+	}
+	
+	@Test
+	public void testRestrictedParentCannotBeRemoved() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		ForeignKey<Node, Item> key = nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.RESTRICT);
+		Item foo = this.createItem("Foo");
+		items.addItem(foo);
+		Node node = this.createNode(foo, null);
+		nodes.addItem(node);
+		
+		Assert.assertEquals(ImmutableList.of(node), ImmutableList.copyOf(key.findReferences(foo)));
+		try {
+			items.removeItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record with ID #1 is referenced by the record #1 through the foreign key 'owner'.", exception.getMessage());
+		}
+		Assert.assertEquals(1, items.size());
+		nodes.removeItem(node);
+		Assert.assertEquals(0, key.countReferences(foo));
+		items.removeItem(foo);
+		Assert.assertEquals(0, items.size());
+	}
+	
+	@Test
+	public void testCascadeRemovesChildrenInBatches() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.CASCADE);
+		nodes.registerForeignKey("up", nodes, new UpField(), ForeignKey.Rule.CASCADE);
+		Item foo = this.createItem("Foo");
+		Item bar = this.createItem("Bar");
+		items.addAll(ImmutableList.of(foo, bar));
+		Node first = this.createNode(foo, null);
+		Node second = this.createNode(foo, null);
+		Node other = this.createNode(bar, null);
+		nodes.addAll(ImmutableList.of(first, second, other));
+		Node nested = this.createNode(null, first);
+		nodes.addItem(nested);
+		nodes.addItem(this.createNode(null, nested));
+		
+		items.removeItem(foo);
+		Assert.assertEquals(ImmutableList.of(other), nodes.getRecords());
+		Assert.assertEquals(1, nodes.removeBatches);
+		Assert.assertEquals(4, nodes.removed);
+		
+		items.removeItem(bar);
+		Assert.assertEquals(0, nodes.size());
+	}
+	
+	@Test
+	public void testRestrictionInsideCascadeRemovesNothing() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.CASCADE);
+		nodes.registerForeignKey("up", nodes, new UpField(), ForeignKey.Rule.RESTRICT);
+		Item foo = this.createItem("Foo");
+		items.addItem(foo);
+		Node first = this.createNode(foo, null);
+		nodes.addItem(first);
+		nodes.addItem(this.createNode(null, first));
+		try {
+			items.removeItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, items.size());
+		Assert.assertEquals(2, nodes.size());
+		Assert.assertEquals(0, nodes.removeBatches);
+	}
+	
+	@Test
+	public void testRemovingReferencedRecordsTogetherIsAllowed() throws ModelException {
+		NodeManager nodes = new NodeManager();
+		nodes.registerForeignKey("up", nodes, new UpField(), ForeignKey.Rule.RESTRICT);
+		Node first = this.createNode(null, null);
+		nodes.addItem(first);
+		Node second = this.createNode(null, first);
+		nodes.addItem(second);
+		nodes.removeAll(ImmutableList.of(first, second));
+		Assert.assertEquals(0, nodes.size());
+	}
+	
+	@Test
+	public void testSetNullClearsReferences() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		ForeignKey<Node, Item> key = nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.SET_NULL);
+		Item foo = this.createItem("Foo");
+		items.addItem(foo);
+		Node first = this.createNode(foo, null);
+		Node second = this.createNode(foo, null);
+		nodes.addAll(ImmutableList.of(first, second));
+		
+		items.removeItem(foo);
+		Assert.assertEquals(2, nodes.size());
+		Assert.assertFalse(first.owner.isDefined());
+		Assert.assertFalse(second.owner.isDefined());
+		Assert.assertSame(foo, first.owner.getPrevious());
+		Assert.assertEquals(0, key.getIndex().size());
+		Assert.assertEquals(1, nodes.updateBatches);
+	}
+	
+	@Test
+	public void testRejectedCascadeRemovesNothing() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		NodeManager rejecting = new NodeManager();
+		rejecting.rejecting = true;
+		nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.CASCADE);
+		rejecting.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.CASCADE);
+		Item foo = this.createItem("Foo");
+		items.addItem(foo);
+		nodes.addItem(this.createNode(foo, null));
+		rejecting.addItem(this.createNode(foo, null));
+		try {
+			items.removeItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("Rejected.", exception.getMessage());
+		}
+		Assert.assertEquals(1, items.size());
+		Assert.assertEquals(1, nodes.size());
+		Assert.assertEquals(1, rejecting.size());
+		Assert.assertEquals(0, nodes.removeBatches);
+	}
+	
+	@Test
+	public void testRejectedSetNullRestoresReferences() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		NodeManager rejecting = new NodeManager();
+		ForeignKey<Node, Item> key = nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.SET_NULL);
+		rejecting.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.SET_NULL);
+		Item foo = this.createItem("Foo");
+		items.addItem(foo);
+		Node first = this.createNode(foo, null);
+		Node second = this.createNode(foo, null);
+		nodes.addItem(first);
+		rejecting.addItem(second);
+		rejecting.rejecting = true;
+		try {
+			items.removeItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("Rejected.", exception.getMessage());
+		}
+		Assert.assertEquals(1, items.size());
+		Assert.assertSame(foo, first.owner.get());
+		Assert.assertSame(foo, second.owner.get());
+		Assert.assertFalse(first.owner.isChanged());
+		Assert.assertEquals(1, key.countReferences(foo));
+		Assert.assertEquals(0, nodes.updateBatches);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testRegisteringKeyOverMissingParentsThrowsException() throws ModelException {
+		DeabstractedDataManager items = new DeabstractedDataManager();
+		NodeManager nodes = new NodeManager();
+		nodes.addItem(this.createNode(this.createItem("Foo"), null));
+		nodes.registerForeignKey("owner", items, new OwnerField(), ForeignKey.Rule.RESTRICT);
+	}
+	
+	private Item createItem(String value) {
+		Item item = new Item();
+		item.setValue(value);
+		return item;
+	}
+	
+	private Node createNode(Item owner, Node up) {
+		Node node = new Node();
+		node.owner.set(owner);
+		node.up.set(up);
+		return node;
+	}
+}
+
+class Node implements IIdentifiable {
+	final Parent<Item> owner = new Parent<>();
+	final Parent<Node> up = new Parent<>();
+	private long id = IIdentifiable.NEUTRAL_ID;
+	
+	@Override
+	public long getId() {
+		return this.id;
+	}
+	
+	@Override
+	public void setId(long id) {
+		this.id = id;
+	}
+}
+
+class NodeManager extends AbstractDataManager<Node> {
+	int removeBatches;
+	int removed;
+	int updateBatches;
+	boolean rejecting;
+	
+	@Override
+	protected void beforeRemove(Node item) throws ModelException {
+		if(this.rejecting) {
+			throw new ModelException("Rejected.");
+		}
+	}
+	
+	@Override
+	protected void beforeUpdate(Node item) throws ModelException {
+		if(this.rejecting) {
+			throw new ModelException("Rejected.");
+		}
+	}
+	
+	@Override
+	protected void afterUpdateBatch(List<Node> items) {
+		this.updateBatches++;
+		super.afterUpdateBatch(items);
+	}
+	
+	@Override
+	protected void afterRemove(Node item) {
+		this.removed++;
+	}
+	
+	@Override
+	protected void afterRemoveBatch(List<Node> items) {
+		this.removeBatches++;
+		super.afterRemoveBatch(items);
+	}
+}
+
+class OwnerField implements Function<Node, Parent<Item>> {
+	@Override
+	public Parent<Item> apply(Node input) {
+		return input.owner;
+	}
+}
+
+class UpField implements Function<Node, Parent<Node>> {
+	@Override
+	public Parent<Node> apply(Node input) {
+		return input.up;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import org.invenzzia.helium.data.interfaces.IRecordCodec;
+
+class ItemCodec implements IRecordCodec<Item> {
+	@Override
+	public void encode(Item record, DataOutput output) throws IOException {
+		output.writeUTF(record.getValue());
+	}
+	
+	@Override
+	public Item decode(DataInput input) throws IOException {
+		Item item = new Item();
+		item.setValue(input.readUTF());
+		return item;
+	}
+}
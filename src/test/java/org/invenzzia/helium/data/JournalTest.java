@@ -0,0 +1,159 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testReplayingJournalRestoresTheState() throws IOException, ModelException {
+		Path path = this.folder.getRoot().toPath().resolve("journal.bin");
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		try(Journal<Item> journal = new Journal<>(path, new ItemCodec(), Journal.SyncPolicy.ON_COMMIT)) {
+			journal.replay(manager, 0L);
+			manager.addRecordListener(journal);
+			Item foo = this.createItem("Foo");
+			Item bar = this.createItem("Bar");
+			manager.addItem(foo);
+			manager.addItem(bar);
+			manager.addItem(this.createItem("Joe"));
+			foo.setValue("Goo");
+			manager.updateItem(foo);
+			manager.removeItem(bar);
+			journal.commit();
+			Assert.assertEquals(5L, journal.getLastSequence());
+		}
+		
+		DeabstractedDataManager restored = new DeabstractedDataManager();
+		restored.registerIndex("value", new ItemValueFunction());
+		try(Journal<Item> journal = new Journal<>(path, new ItemCodec(), Journal.SyncPolicy.ON_COMMIT)) {
+			journal.replay(restored, 0L);
+			Assert.assertEquals(5L, journal.getLastSequence());
+		}
+		Assert.assertEquals(2, restored.size());
+		Assert.assertEquals(4L, restored.getNextId());
+		Assert.assertEquals("Goo", restored.findById(1L).getValue());
+		Assert.assertNull(restored.findById(2L));
+		Assert.assertTrue(restored.findBy("value", "Foo").isEmpty());
+		Assert.assertEquals(1, restored.findBy("value", "Goo").size());
+	}
+	
+	@Test
+	public void testDamagedTailIsCutOff() throws IOException, ModelException {
+		Path path = this.folder.getRoot().toPath().resolve("journal.bin");
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		try(Journal<Item> journal = new Journal<>(path, new ItemCodec(), Journal.SyncPolicy.NEVER)) {
+			journal.replay(manager, 0L);
+			manager.addRecordListener(journal);
+			manager.addItem(this.createItem("Foo"));
+			manager.addItem(this.createItem("Bar"));
+		}
+		long validSize = Files.size(path);
+		Files.write(path, new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+		
+		DeabstractedDataManager restored = new DeabstractedDataManager();
+		try(Journal<Item> journal = new Journal<>(path, new ItemCodec(), Journal.SyncPolicy.NEVER)) {
+			journal.replay(restored, 0L);
+			Assert.assertEquals(2L, journal.getLastSequence());
+		}
+		Assert.assertEquals(validSize, Files.size(path));
+		Assert.assertEquals(2, restored.size());
+	}
+	
+	@Test
+	public void testCheckpointTruncatesTheJournal() throws IOException, ModelException {
+		Path path = this.folder.getRoot().toPath().resolve("journal.bin");
+		Path snapshot = this.folder.getRoot().toPath().resolve("snapshot.bin");
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		try(Journal<Item> journal = new Journal<>(path, new ItemCodec(), Journal.SyncPolicy.PERIODIC)) {
+			journal.replay(manager, 0L);
+			manager.addRecordListener(journal);
+			manager.addItem(this.createItem("Foo"));
+			manager.addItem(this.createItem("Bar"));
+			journal.checkpoint(manager, snapshot);
+			Assert.assertEquals(0L, Files.size(path));
+			manager.removeItem(1L);
+			manager.addItem(this.createItem("Joe"));
+			journal.commit();
+		}
+		
+		DeabstractedDataManager restored = new DeabstractedDataManager();
+		long sequence = new SnapshotReader<>(new ItemCodec()).read(restored, snapshot);
+		Assert.assertEquals(2L, sequence);
+		try(Journal<Item> journal = new Journal<>(path, new ItemCodec(), Journal.SyncPolicy.PERIODIC)) {
+			journal.replay(restored, sequence);
+			Assert.assertEquals(4L, journal.getLastSequence());
+		}
+		Assert.assertEquals(2, restored.size());
+		Assert.assertNull(restored.findById(1L));
+		Assert.assertEquals("Joe", restored.findById(3L).getValue());
+		Assert.assertEquals(4L, restored.getNextId());
+	}
+	
+	@Test
+	public void testWriteFailureIsReportedByCommit() throws IOException, ModelException {
+		Path path = this.folder.getRoot().toPath().resolve("journal.bin");
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		Journal<Item> journal = new Journal<>(path, new ItemCodec() {
+			@Override
+			public void encode(Item record, DataOutput output) throws IOException {
+				if("Broken".equals(record.getValue())) {
+					throw new IOException("Cannot encode.");
+				}
+				super.encode(record, output);
+			}
+		}, Journal.SyncPolicy.NEVER);
+		try {
+			journal.replay(manager, 0L);
+			manager.addRecordListener(journal);
+			manager.addItem(this.createItem("Foo"));
+			manager.addItem(this.createItem("Broken"));
+			manager.addItem(this.createItem("Bar"));
+			Assert.assertEquals(3, manager.size());
+			Assert.assertEquals(1L, journal.getLastSequence());
+			try {
+				journal.commit();
+				Assert.fail("Exception not thrown.");
+			} catch(IOException exception) {
+				Assert.assertEquals("Cannot encode.", exception.getCause().getCause().getMessage());
+			}
+		} finally {
+			try {
+				journal.close();
+				Assert.fail("Exception not thrown.");
+			} catch(IOException exception) {
+			}
+		}
+	}
+	
+	private Item createItem(String value) {
+		Item item = new Item();
+		item.setValue(value);
+		return item;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OneToManyTest {
+	private final OneToMany<Folder, Document> contents = new OneToMany<>(new FolderDocuments(), new DocumentFolder());
+	
+	@Test
+	public void testAttachingUpdatesBothSides() throws ModelException {
+		Folder first = new Folder();
+		Folder second = new Folder();
+		Document doc = new Document();
+		
+		this.contents.attach(first, doc);
+		Assert.assertSame(first, doc.folder.get());
+		Assert.assertTrue(first.documents.isAttached(doc));
+		
+		this.contents.attach(second, doc);
+		Assert.assertSame(second, this.contents.getParent(doc));
+		Assert.assertFalse(first.documents.isAttached(doc));
+		Assert.assertEquals(ImmutableList.of(doc), ImmutableList.copyOf(this.contents.getChildren(second)));
+		
+		this.contents.detach(second, doc);
+		Assert.assertFalse(doc.folder.isDefined());
+		Assert.assertTrue(second.documents.isEmpty());
+	}
+	
+	@Test
+	public void testAttachingTwiceThrowsException() throws ModelException {
+		Folder folder = new Folder();
+		Document doc = new Document();
+		this.contents.attach(folder, doc);
+		try {
+			this.contents.attach(folder, doc);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1, folder.documents.size());
+	}
+	
+	@Test
+	public void testMovingChildrenInBulk() throws ModelException {
+		Folder first = new Folder();
+		Folder second = new Folder();
+		Document docs[] = new Document[] { new Document(), new Document(), new Document() };
+		this.contents.attach(first, docs[0]);
+		this.contents.attach(second, docs[1]);
+		
+		this.contents.move(ImmutableList.copyOf(docs), second);
+		Assert.assertTrue(first.documents.isEmpty());
+		Assert.assertEquals(ImmutableList.of(docs[1], docs[0], docs[2]), ImmutableList.copyOf(second.documents.getRelated()));
+		for(Document doc: docs) {
+			Assert.assertSame(second, doc.folder.get());
+		}
+	}
+	
+	@Test
+	public void testOutOfSyncChildStopsTheWholeMove() throws ModelException {
+		Folder first = new Folder();
+		Folder second = new Folder();
+		Document good = new Document();
+		Document broken = new Document();
+		this.contents.attach(first, good);
+		broken.folder.set(first);
+		try {
+			this.contents.move(ImmutableList.of(good, broken), second);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertSame(first, good.folder.get());
+		Assert.assertTrue(second.documents.isEmpty());
+	}
+	
+	@Test
+	public void testReassigningAllChildren() throws ModelException {
+		Folder first = new Folder();
+		Folder second = new Folder();
+		Document other = new Document();
+		this.contents.attach(second, other);
+		for(int i = 0; i < 20; i++) {
+			this.contents.attach(first, new Document());
+		}
+		
+		Assert.assertEquals(20, this.contents.reassign(first, second).size());
+		Assert.assertTrue(first.documents.isEmpty());
+		Assert.assertEquals(21, second.documents.size());
+		Assert.assertSame(other, second.documents.getRelated().iterator().next());
+		for(Document doc: second.documents.getRelated()) {
+			Assert.assertSame(second, doc.folder.get());
+		}
+		
+		Assert.assertEquals(21, this.contents.detachAll(second).size());
+		Assert.assertTrue(second.documents.isEmpty());
+		Assert.assertFalse(other.folder.isDefined());
+		Assert.assertSame(second, other.folder.getPrevious());
+	}
+}
+
+class Folder {
+	final Relation<Document> documents = new Relation<>();
+}
+
+class Document {
+	final Parent<Folder> folder = new Parent<>();
+}
+
+class FolderDocuments implements Function<Folder, Relation<Document>> {
+	@Override
+	public Relation<Document> apply(Folder input) {
+		return input.documents;
+	}
+}
+
+class DocumentFolder implements Function<Document, Parent<Folder>> {
+	@Override
+	public Parent<Folder> apply(Document input) {
+		return input.folder;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParentTest {
+	@Test
+	public void testChangeIsTracked() {
+		Parent<String> parent = new Parent<>();
+		Assert.assertFalse(parent.isDefined());
+		parent.set("Foo");
+		Assert.assertFalse(parent.isChanged());
+		parent.set("Bar");
+		Assert.assertTrue(parent.isChanged());
+		Assert.assertEquals("Foo", parent.getPrevious());
+		Assert.assertEquals("Bar", parent.get());
+		parent.resetPrevious();
+		Assert.assertFalse(parent.isChanged());
+		Assert.assertNull(parent.getPrevious());
+	}
+	
+	@Test
+	public void testRegistryCollectsEachChangedParentOnce() {
+		ParentRegistry registry = new ParentRegistry();
+		Parent<String> first = new Parent<>(registry);
+		Parent<String> second = new Parent<>(registry);
+		Parent<String> third = new Parent<>(registry);
+		first.set("Foo");
+		second.set("Foo");
+		first.set("Bar");
+		first.set("Joe");
+		Assert.assertEquals(2, registry.getChangedNum());
+		Assert.assertSame(first, registry.getChanged().get(0));
+		Assert.assertSame(second, registry.getChanged().get(1));
+		Assert.assertNull(first.getPrevious());
+		Assert.assertFalse(third.isChanged());
+	}
+	
+	@Test
+	public void testPreviousInstanceIsTheOneFromTheCommitPoint() {
+		ParentRegistry registry = new ParentRegistry();
+		Parent<String> parent = new Parent<>(registry);
+		parent.set("Foo");
+		registry.commit();
+		parent.set("Bar");
+		parent.set("Joe");
+		Assert.assertEquals("Foo", parent.getPrevious());
+		Assert.assertTrue(parent.isChanged());
+		parent.set("Foo");
+		Assert.assertFalse(parent.isChanged());
+		Assert.assertEquals(1, registry.getChangedNum());
+		parent.resetPrevious();
+		parent.set("Bar");
+		Assert.assertEquals("Foo", parent.getPrevious());
+	}
+	
+	@Test
+	public void testCommitResetsTheChangedParents() {
+		ParentRegistry registry = new ParentRegistry();
+		Parent<String> first = new Parent<>(registry);
+		Parent<String> second = new Parent<>(registry);
+		first.set("Foo");
+		first.set("Bar");
+		second.set("Foo");
+		second.set("Joe");
+		registry.commit();
+		Assert.assertEquals(1L, registry.getGeneration());
+		Assert.assertEquals(0, registry.getChangedNum());
+		Assert.assertFalse(first.isChanged());
+		Assert.assertNull(second.getPrevious());
+		Assert.assertEquals("Joe", second.get());
+		
+		second.set("Moe");
+		Assert.assertEquals(1, registry.getChangedNum());
+		Assert.assertSame(second, registry.getChanged().get(0));
+		Assert.assertEquals("Joe", second.getPrevious());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testChangedListIsReadOnly() {
+		ParentRegistry registry = new ParentRegistry();
+		registry.getChanged().add(new Parent<String>());
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryTest {
+	@Test
+	public void testQueryIsEvaluatedLazily() throws ModelException {
+		DeabstractedDataManager manager = this.createManager(10);
+		CountingPredicate predicate = new CountingPredicate("7");
+		Item first = manager.query().where(predicate).findFirst();
+		Assert.assertEquals("7", first.getValue());
+		Assert.assertEquals(7, predicate.calls);
+	}
+	
+	@Test
+	public void testLimitAndProjection() throws ModelException {
+		DeabstractedDataManager manager = this.createManager(10);
+		List<String> values = manager.query().where(new Predicate<Item>() {
+			@Override
+			public boolean apply(Item input) {
+				return input.getId() % 2 == 0;
+			}
+		}).limit(3).transform(new ItemValueFunction()).toList();
+		Assert.assertEquals(ImmutableList.of("2", "4", "6"), values);
+		Assert.assertEquals(3, manager.query().limit(3).count());
+		Assert.assertEquals(0, manager.query().limit(0).count());
+		Assert.assertNull(manager.query().limit(0).findFirst());
+	}
+	
+	@Test
+	public void testMatching() throws ModelException {
+		DeabstractedDataManager manager = this.createManager(10);
+		Assert.assertTrue(manager.query().anyMatch(new CountingPredicate("5")));
+		Assert.assertFalse(manager.query().anyMatch(new CountingPredicate("11")));
+		Assert.assertFalse(manager.query().allMatch(new CountingPredicate("5")));
+		Assert.assertTrue(manager.query().limit(0).allMatch(new CountingPredicate("5")));
+	}
+	
+	@Test
+	public void testParallelQueryGivesTheSameResults() throws ModelException {
+		DeabstractedDataManager manager = this.createManager(20000);
+		Predicate<Item> predicate = new Predicate<Item>() {
+			@Override
+			public boolean apply(Item input) {
+				return input.getId() % 3 == 0;
+			}
+		};
+		Query<Item> sequential = manager.query().where(predicate);
+		Query<Item> parallel = manager.query().where(predicate).parallel();
+		Assert.assertEquals(sequential.count(), parallel.count());
+		Assert.assertEquals(sequential.toList(), parallel.toList());
+		Assert.assertSame(sequential.findFirst(), parallel.findFirst());
+		Assert.assertEquals(sequential.limit(10).toList(), parallel.limit(10).toList());
+		Assert.assertEquals(10, parallel.limit(10).count());
+		Assert.assertTrue(parallel.anyMatch(new CountingPredicate("19998")));
+		Assert.assertFalse(parallel.anyMatch(new CountingPredicate("19999")));
+	}
+	
+	@Test
+	public void testParallelQueryStopsOnceTheLimitIsReached() throws ModelException {
+		DeabstractedDataManager manager = this.createManager(100000);
+		final AtomicInteger calls = new AtomicInteger();
+		Predicate<Item> predicate = new Predicate<Item>() {
+			@Override
+			public boolean apply(Item input) {
+				calls.incrementAndGet();
+				return input.getId() % 3 == 0;
+			}
+		};
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Query<Item> query = manager.query().where(predicate).parallel(pool).limit(10);
+			Assert.assertEquals(manager.query().where(predicate).limit(10).toList(), query.toList());
+			calls.set(0);
+			Assert.assertEquals(10, query.toList().size());
+			Assert.assertTrue(calls.get() < 50000);
+			calls.set(0);
+			Assert.assertEquals(10, query.count());
+			Assert.assertTrue(calls.get() < 50000);
+			calls.set(0);
+			Assert.assertNotNull(query.findFirst());
+			Assert.assertTrue(calls.get() < 50000);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testRelationQuery() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		relation.attach("Foo");
+		relation.attach("Bar");
+		relation.attach("Joe");
+		Assert.assertEquals("Bar", relation.query().where(new Predicate<String>() {
+			@Override
+			public boolean apply(String input) {
+				return input.startsWith("B");
+			}
+		}).findFirst());
+		Assert.assertEquals(ImmutableList.of("Foo", "Bar", "Joe"), relation.query().parallel().toList());
+	}
+	
+	private DeabstractedDataManager createManager(int itemNum) throws ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		for(int i = 1; i <= itemNum; i++) {
+			Item item = new Item();
+			item.setValue(Integer.toString(i));
+			manager.addItem(item);
+		}
+		return manager;
+	}
+}
+
+class CountingPredicate implements Predicate<Item> {
+	private final String value;
+	int calls;
+	
+	public CountingPredicate(String value) {
+		this.value = value;
+	}
+	
+	@Override
+	public boolean apply(Item input) {
+		this.calls++;
+		return this.value.equals(input.getValue());
+	}
+}
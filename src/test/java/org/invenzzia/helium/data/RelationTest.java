@@ -0,0 +1,138 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Collection;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RelationTest {
+	@Test
+	public void testAttachingAndDetachingObjects() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		Assert.assertTrue(relation.isEmpty());
+		relation.attach("Foo");
+		relation.attach("Bar");
+		Assert.assertEquals(2, relation.size());
+		Assert.assertTrue(relation.isAttached("Foo"));
+		relation.detach("Foo");
+		Assert.assertFalse(relation.isAttached("Foo"));
+		Assert.assertEquals(1, relation.size());
+	}
+	
+	@Test
+	public void testAttachingTwiceThrowsException() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		relation.attach("Foo");
+		try {
+			relation.attach("Foo");
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record 'Foo' is already attached to this relation.", exception.getMessage());
+		}
+	}
+	
+	@Test
+	public void testRelatedCollectionIsReusedUntilModification() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		relation.attach("Foo");
+		Collection<String> first = relation.getRelated();
+		Assert.assertSame(first, relation.getRelated());
+		relation.attach("Bar");
+		Collection<String> second = relation.getRelated();
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(1, first.size());
+		Assert.assertEquals(2, second.size());
+	}
+	
+	@Test
+	public void testOrderIsKeptWhileGrowingAndShrinking() throws ModelException {
+		Relation<Integer> relation = new Relation<>();
+		for(int i = 0; i < 100; i++) {
+			relation.attach(i);
+		}
+		for(int i = 0; i < 100; i += 2) {
+			relation.detach(i);
+		}
+		Assert.assertEquals(50, relation.size());
+		int expected = 1;
+		for(Integer value: relation.getRelated()) {
+			Assert.assertEquals(expected, value.intValue());
+			expected += 2;
+		}
+		for(int i = 1; i < 95; i += 2) {
+			relation.detach(i);
+		}
+		Assert.assertEquals(ImmutableList.of(95, 97, 99), ImmutableList.copyOf(relation.getRelated()));
+		relation.attach(0);
+		Assert.assertEquals(ImmutableList.of(95, 97, 99, 0), ImmutableList.copyOf(relation.getRelated()));
+		for(int i = 0; i < 100; i++) {
+			Assert.assertEquals(i == 0 || i >= 95 && i % 2 == 1, relation.isAttached(i));
+		}
+	}
+	
+	@Test
+	public void testObjectsAreComparedWithEquals() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		for(int i = 0; i < 20; i++) {
+			relation.attach("Item "+i);
+		}
+		Assert.assertTrue(relation.isAttached(new String("Item 7")));
+		relation.detach(new String("Item 7"));
+		Assert.assertFalse(relation.isAttached("Item 7"));
+		Assert.assertEquals(19, relation.size());
+	}
+	
+	@Test
+	public void testDetachingUnattachedObjectThrowsException() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		relation.attach("Foo");
+		try {
+			relation.detach("Bar");
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record 'Bar' cannot be detached: not attached.", exception.getMessage());
+		}
+		relation.detach("Foo");
+		Assert.assertTrue(relation.isEmpty());
+		Assert.assertFalse(relation.query().iterator().hasNext());
+	}
+	
+	@Test
+	public void testNullCanBeAttached() throws ModelException {
+		Relation<String> relation = new Relation<>();
+		relation.attach(null);
+		relation.attach("Foo");
+		Assert.assertTrue(relation.isAttached(null));
+		try {
+			relation.attach(null);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("The record 'null' is already attached to this relation.", exception.getMessage());
+		}
+		for(int i = 0; i < 20; i++) {
+			relation.attach("Item "+i);
+		}
+		Assert.assertTrue(relation.isAttached(null));
+		Assert.assertNull(relation.iterator().next());
+		relation.detach(null);
+		Assert.assertFalse(relation.isAttached(null));
+		Assert.assertEquals(21, relation.size());
+		Assert.assertEquals("Foo", relation.iterator().next());
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShardedDataManagerTest {
+	@Test
+	public void testShardsAllocateDisjointIds() throws ModelException {
+		DeabstractedShardedManager manager = new DeabstractedShardedManager(4);
+		Item foo = new Item();
+		Item bar = new Item();
+		manager.addItem(foo);
+		manager.addItem(bar);
+		Assert.assertEquals(4L, bar.getId() - foo.getId());
+		Assert.assertSame(foo, manager.findById(foo.getId()));
+		Assert.assertNull(manager.findById(0L));
+		Assert.assertEquals(2, manager.size());
+		
+		manager.removeItem(foo);
+		manager.removeItem(bar.getId());
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testRejectedBatchRollsBackTheIds() throws ModelException {
+		DeabstractedShardedManager manager = new DeabstractedShardedManager(4);
+		Item invalid = new Item();
+		invalid.setValue("Invalid");
+		long before[] = manager.getNextIds();
+		try {
+			manager.addAll(ImmutableList.of(new Item(), invalid));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertArrayEquals(before, manager.getNextIds());
+		Assert.assertEquals(0, manager.size());
+	}
+	
+	@Test
+	public void testRestoredObjectsMoveTheShardSequence() {
+		DeabstractedShardedManager manager = new DeabstractedShardedManager(4);
+		Item item = new Item();
+		item.setId(10L);
+		manager.restore(item);
+		Assert.assertSame(item, manager.findById(10L));
+		Assert.assertEquals(14L, manager.getNextIds()[1]);
+	}
+	
+	@Test
+	public void testConcurrentWritersAndParallelScans() throws InterruptedException {
+		final DeabstractedShardedManager manager = new DeabstractedShardedManager(4);
+		final int threadNum = 8;
+		final int itemNum = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread threads[] = new Thread[threadNum];
+		for(int i = 0; i < threadNum; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for(int j = 0; j < itemNum; j++) {
+							Item item = new Item();
+							item.setValue(j % 2 == 0 ? "Even" : "Odd");
+							manager.addItem(item);
+						}
+					} catch(InterruptedException | ModelException exception) {
+						throw new RuntimeException(exception);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for(Thread thread: threads) {
+			thread.join();
+		}
+		Assert.assertEquals(threadNum * itemNum, manager.size());
+		Set<Long> ids = new HashSet<>();
+		for(Item item: manager.getRecords()) {
+			Assert.assertTrue(ids.add(item.getId()));
+		}
+		
+		List<Item> even = manager.filter(new Predicate<Item>() {
+			@Override
+			public boolean apply(Item input) {
+				return "Even".equals(input.getValue());
+			}
+		});
+		Assert.assertEquals(threadNum * itemNum / 2, even.size());
+		
+		int total = manager.aggregate(new Function<Iterable<Item>, Integer>() {
+			@Override
+			public Integer apply(Iterable<Item> records) {
+				int count = 0;
+				for(Item item: records) {
+					count++;
+				}
+				return count;
+			}
+		}, new Function<List<Integer>, Integer>() {
+			@Override
+			public Integer apply(List<Integer> parts) {
+				int sum = 0;
+				for(Integer part: parts) {
+					sum += part;
+				}
+				return sum;
+			}
+		});
+		Assert.assertEquals(threadNum * itemNum, total);
+	}
+	
+	@Test(timeout = 10000)
+	public void testHooksCanScanTheManagerWithASingleShard() throws ModelException {
+		DeabstractedShardedManager manager = new DeabstractedShardedManager(1);
+		Item foo = new Item();
+		foo.setValue("Unique Foo");
+		manager.addItem(foo);
+		Item duplicate = new Item();
+		duplicate.setValue("Unique Foo");
+		try {
+			manager.addItem(duplicate);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+			Assert.assertEquals("Duplicated record.", exception.getMessage());
+		}
+		Assert.assertEquals(1, manager.size());
+	}
+	
+	@Test(timeout = 10000)
+	public void testHooksCannotAccessOtherShards() throws ModelException {
+		DeabstractedShardedManager manager = new DeabstractedShardedManager(4);
+		Item foo = new Item();
+		foo.setValue("Unique Foo");
+		try {
+			manager.addItem(foo);
+			Assert.fail("Exception not thrown.");
+		} catch(IllegalStateException exception) {
+			Assert.assertEquals("The hooks cannot access the shards other than the ones of the processed records.", exception.getMessage());
+		}
+		Assert.assertEquals(0, manager.size());
+	}
+}
+
+class DeabstractedShardedManager extends ShardedDataManager<Item> {
+	public DeabstractedShardedManager(int shardNum) {
+		super(shardNum);
+	}
+	
+	@Override
+	protected void beforeCreate(Item item) throws ModelException {
+		if("Invalid".equals(item.getValue())) {
+			throw new ModelException("Invalid record.");
+		}
+		if(null != item.getValue() && item.getValue().startsWith("Unique")) {
+			final String value = item.getValue();
+			List<Item> duplicates = this.filter(new Predicate<Item>() {
+				@Override
+				public boolean apply(Item other) {
+					return value.equals(other.getValue());
+				}
+			});
+			if(!duplicates.isEmpty()) {
+				throw new ModelException("Duplicated record.");
+			}
+		}
+	}
+	
+	public void restore(Item item) {
+		this.addObject(item.getId(), item);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testSnapshotRestoresRecordsAndNextId() throws IOException, ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		for(int i = 0; i < 1000; i++) {
+			Item item = new Item();
+			item.setValue("V"+i);
+			manager.addItem(item);
+		}
+		manager.removeItem(5L);
+		Path path = this.folder.newFile("snapshot.bin").toPath();
+		new SnapshotWriter<>(new ItemCodec()).write(manager, path);
+		
+		DeabstractedDataManager restored = new DeabstractedDataManager();
+		restored.registerIndex("value", new ItemValueFunction());
+		new SnapshotReader<>(new ItemCodec()).read(restored, path);
+		
+		Assert.assertEquals(999, restored.size());
+		Assert.assertEquals(1001L, restored.getNextId());
+		Assert.assertNull(restored.findById(5L));
+		Assert.assertEquals("V9", restored.findById(10L).getValue());
+		Assert.assertEquals(10L, restored.findBy("value", "V9").iterator().next().getId());
+	}
+	
+	@Test
+	public void testFailedWriteKeepsThePreviousSnapshot() throws IOException, ModelException {
+		DeabstractedDataManager manager = new DeabstractedDataManager();
+		Item item = new Item();
+		item.setValue("Foo");
+		manager.addItem(item);
+		Path path = this.folder.newFile("snapshot.bin").toPath();
+		new SnapshotWriter<>(new ItemCodec()).write(manager, path);
+		byte previous[] = Files.readAllBytes(path);
+		
+		item = new Item();
+		item.setValue("Broken");
+		manager.addItem(item);
+		try {
+			new SnapshotWriter<>(new ItemCodec() {
+				@Override
+				public void encode(Item record, DataOutput output) throws IOException {
+					if("Broken".equals(record.getValue())) {
+						throw new IOException("Cannot encode.");
+					}
+					super.encode(record, output);
+				}
+			}).write(manager, path);
+			Assert.fail("Exception not thrown.");
+		} catch(IOException exception) {
+		}
+		Assert.assertArrayEquals(previous, Files.readAllBytes(path));
+		Assert.assertFalse(Files.exists(path.resolveSibling("snapshot.bin.tmp")));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testDamagedSnapshotIsRejected() throws IOException {
+		Path path = this.folder.newFile("damaged.bin").toPath();
+		Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		new SnapshotReader<>(new ItemCodec()).read(new DeabstractedDataManager(), path);
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.collect.ImmutableList;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredDataManagerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private DeabstractedTieredManager manager;
+	
+	@After
+	public void closeManager() throws IOException {
+		if(null != this.manager) {
+			this.manager.close();
+		}
+	}
+	
+	@Test
+	public void testColdRecordsAreSpilledAndReloaded() throws IOException, ModelException {
+		this.manager = this.createManager(TieredDataManager.EvictionPolicy.LRU);
+		for(int i = 1; i <= 10; i++) {
+			this.manager.addItem(this.createItem("V"+i));
+		}
+		Assert.assertEquals(10, this.manager.size());
+		Assert.assertEquals(3, this.manager.getResidentSize());
+		Assert.assertEquals(11L, this.manager.getNextId());
+		
+		Item item = this.manager.findById(2L);
+		Assert.assertEquals("V2", item.getValue());
+		Assert.assertEquals(2L, item.getId());
+		Assert.assertEquals(3, this.manager.getResidentSize());
+		Assert.assertNull(this.manager.findById(11L));
+		
+		CacheStatistics statistics = this.manager.getStatistics();
+		Assert.assertEquals(0L, statistics.getHits());
+		Assert.assertEquals(1L, statistics.getMisses());
+		Assert.assertEquals(8L, statistics.getEvictions());
+		Assert.assertEquals(8L, statistics.getSpillWrites());
+	}
+	
+	@Test
+	public void testUnchangedRecordsAreNotWrittenAgain() throws IOException, ModelException {
+		this.manager = this.createManager(TieredDataManager.EvictionPolicy.LRU);
+		for(int i = 1; i <= 4; i++) {
+			this.manager.addItem(this.createItem("V"+i));
+		}
+		this.manager.findById(1L);
+		this.manager.findById(2L);
+		Item changed = this.manager.findById(3L);
+		changed.setValue("Changed");
+		this.manager.updateItem(changed);
+		for(int i = 5; i <= 7; i++) {
+			this.manager.addItem(this.createItem("V"+i));
+		}
+		Assert.assertEquals(7L, this.manager.getStatistics().getEvictions());
+		Assert.assertEquals(5L, this.manager.getStatistics().getSpillWrites());
+		Assert.assertEquals("Changed", this.manager.findById(3L).getValue());
+	}
+	
+	@Test
+	public void testLfuKeepsFrequentlyUsedRecords() throws IOException, ModelException {
+		this.manager = this.createManager(TieredDataManager.EvictionPolicy.LFU);
+		for(int i = 1; i <= 3; i++) {
+			this.manager.addItem(this.createItem("V"+i));
+		}
+		for(int i = 0; i < 5; i++) {
+			this.manager.findById(1L);
+		}
+		this.manager.findById(3L);
+		this.manager.addItem(this.createItem("V4"));
+		this.manager.findById(1L);
+		this.manager.findById(3L);
+		Assert.assertEquals(8L, this.manager.getStatistics().getHits());
+		Assert.assertEquals(0L, this.manager.getStatistics().getMisses());
+	}
+	
+	@Test
+	public void testRemovingSpilledRecords() throws IOException, ModelException {
+		this.manager = this.createManager(TieredDataManager.EvictionPolicy.LRU);
+		Item first = this.createItem("V1");
+		this.manager.addItem(first);
+		for(int i = 2; i <= 6; i++) {
+			this.manager.addItem(this.createItem("V"+i));
+		}
+		this.manager.removeItem(2L);
+		this.manager.removeItem(first);
+		Assert.assertEquals(4, this.manager.size());
+		Assert.assertNull(this.manager.findById(1L));
+		Assert.assertNull(this.manager.findById(2L));
+		try {
+			this.manager.removeItem(2L);
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+	}
+	
+	@Test
+	public void testRejectedBatchRollsBackTheIds() throws IOException, ModelException {
+		this.manager = this.createManager(TieredDataManager.EvictionPolicy.LRU);
+		try {
+			this.manager.addAll(ImmutableList.of(this.createItem("Foo"), this.createItem("Invalid")));
+			Assert.fail("Exception not thrown.");
+		} catch(ModelException exception) {
+		}
+		Assert.assertEquals(1L, this.manager.getNextId());
+		Assert.assertEquals(0, this.manager.size());
+		this.manager.addAll(ImmutableList.of(this.createItem("Foo"), this.createItem("Bar")));
+		Assert.assertEquals(2, this.manager.size());
+	}
+	
+	@Test
+	public void testFailedSpillKeepsTheRecordInMemory() throws IOException, ModelException {
+		this.manager = new DeabstractedTieredManager(this.folder.getRoot().toPath().resolve("spill.bin"), TieredDataManager.EvictionPolicy.LRU, new ItemCodec() {
+			@Override
+			public void encode(Item record, DataOutput output) throws IOException {
+				if("Broken".equals(record.getValue())) {
+					throw new IOException("Cannot encode.");
+				}
+				super.encode(record, output);
+			}
+		});
+		Item broken = this.createItem("Broken");
+		this.manager.addItem(broken);
+		this.manager.addItem(this.createItem("V2"));
+		this.manager.addItem(this.createItem("V3"));
+		try {
+			this.manager.addItem(this.createItem("V4"));
+			Assert.fail("Exception not thrown.");
+		} catch(IllegalStateException exception) {
+		}
+		Assert.assertEquals(3, this.manager.size());
+		Assert.assertEquals(3, this.manager.getResidentSize());
+		Assert.assertSame(broken, this.manager.findById(1L));
+	}
+	
+	@Test
+	public void testFailedSpillRollsBackTheBatch() throws IOException, ModelException {
+		this.manager = new DeabstractedTieredManager(this.folder.getRoot().toPath().resolve("spill.bin"), TieredDataManager.EvictionPolicy.LRU, new ItemCodec() {
+			@Override
+			public void encode(Item record, DataOutput output) throws IOException {
+				if("Broken".equals(record.getValue())) {
+					throw new IOException("Cannot encode.");
+				}
+				super.encode(record, output);
+			}
+		});
+		this.manager.addItem(this.createItem("V1"));
+		this.manager.addItem(this.createItem("Broken"));
+		this.manager.addItem(this.createItem("V3"));
+		try {
+			this.manager.addAll(ImmutableList.of(this.createItem("V4"), this.createItem("V5")));
+			Assert.fail("Exception not thrown.");
+		} catch(IllegalStateException exception) {
+		}
+		Assert.assertEquals(3, this.manager.size());
+		Assert.assertEquals(2, this.manager.getResidentSize());
+		Assert.assertNull(this.manager.findById(4L));
+		
+		Item item = this.createItem("V6");
+		this.manager.addItem(item);
+		Assert.assertEquals(4L, item.getId());
+		Assert.assertEquals(4, this.manager.size());
+	}
+	
+	private DeabstractedTieredManager createManager(TieredDataManager.EvictionPolicy policy) throws IOException {
+		return new DeabstractedTieredManager(this.folder.getRoot().toPath().resolve("spill.bin"), policy);
+	}
+	
+	private Item createItem(String value) {
+		Item item = new Item();
+		item.setValue(value);
+		return item;
+	}
+}
+
+class DeabstractedTieredManager extends TieredDataManager<Item> {
+	public DeabstractedTieredManager(Path path, EvictionPolicy policy) throws IOException {
+		this(path, policy, new ItemCodec());
+	}
+	
+	public DeabstractedTieredManager(Path path, EvictionPolicy policy, ItemCodec codec) throws IOException {
+		super(codec, path, 3, policy);
+	}
+	
+	@Override
+	protected void beforeCreate(Item item) throws ModelException {
+		if("Invalid".equals(item.getValue())) {
+			throw new ModelException("Invalid record.");
+		}
+	}
+}
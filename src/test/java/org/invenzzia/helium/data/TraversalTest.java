@@ -0,0 +1,185 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.invenzzia.helium.data.interfaces.INodeVisitor;
+import org.invenzzia.helium.exception.ModelException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TraversalTest {
+	private final Traversal<Station> traversal = new Traversal<>(Traversal.relationEdges(new StationLinks()));
+	
+	@Test
+	public void testBreadthFirstVisitsLevelByLevel() throws ModelException {
+		Station s[] = this.createStations(6);
+		this.link(s[0], s[1]);
+		this.link(s[0], s[2]);
+		this.link(s[1], s[3]);
+		this.link(s[2], s[3]);
+		this.link(s[3], s[0]);
+		this.link(s[3], s[4]);
+		this.link(s[4], s[5]);
+		
+		RecordingVisitor visitor = new RecordingVisitor();
+		Assert.assertEquals(6, this.traversal.breadthFirst(s[0], Traversal.UNLIMITED, visitor));
+		Assert.assertEquals(ImmutableList.of(s[0], s[1], s[2], s[3], s[4], s[5]), visitor.nodes);
+		Assert.assertEquals(ImmutableList.of(0, 1, 1, 2, 3, 4), visitor.depths);
+		
+		Assert.assertEquals(ImmutableList.of(s[1], s[2], s[3]), this.traversal.reachable(s[0], 2));
+		Assert.assertEquals(ImmutableList.of(s[0], s[4], s[1], s[2], s[5]), this.traversal.closure(s[3]));
+		Assert.assertTrue(this.traversal.isReachable(s[0], s[5], 4));
+		Assert.assertFalse(this.traversal.isReachable(s[0], s[5], 3));
+		Assert.assertFalse(this.traversal.isReachable(s[5], s[0], Traversal.UNLIMITED));
+	}
+	
+	@Test
+	public void testDepthFirstVisitsInPreOrder() throws ModelException {
+		Station s[] = this.createStations(5);
+		this.link(s[0], s[1]);
+		this.link(s[1], s[2]);
+		this.link(s[2], s[0]);
+		this.link(s[0], s[3]);
+		this.link(s[3], s[4]);
+		
+		RecordingVisitor visitor = new RecordingVisitor();
+		Assert.assertEquals(5, this.traversal.depthFirst(s[0], Traversal.UNLIMITED, visitor));
+		Assert.assertEquals(ImmutableList.of(s[0], s[1], s[2], s[3], s[4]), visitor.nodes);
+		Assert.assertEquals(ImmutableList.of(0, 1, 2, 1, 2), visitor.depths);
+		
+		visitor = new RecordingVisitor();
+		this.traversal.depthFirst(s[0], 1, visitor);
+		Assert.assertEquals(ImmutableList.of(s[0], s[1], s[3]), visitor.nodes);
+	}
+	
+	@Test
+	public void testLimitedDepthFirstReexpandsNodesReachedByShorterPaths() throws ModelException {
+		Station s[] = this.createStations(4);
+		this.link(s[0], s[1]);
+		this.link(s[0], s[2]);
+		this.link(s[1], s[2]);
+		this.link(s[2], s[3]);
+		
+		RecordingVisitor visitor = new RecordingVisitor();
+		Assert.assertEquals(4, this.traversal.depthFirst(s[0], 2, visitor));
+		Assert.assertEquals(ImmutableList.of(s[0], s[1], s[2], s[2], s[3]), visitor.nodes);
+		Assert.assertEquals(ImmutableList.of(0, 1, 2, 1, 2), visitor.depths);
+	}
+	
+	@Test
+	public void testVisitorCanPruneAndStop() throws ModelException {
+		Station s[] = this.createStations(5);
+		this.link(s[0], s[1]);
+		this.link(s[0], s[2]);
+		this.link(s[1], s[3]);
+		this.link(s[2], s[4]);
+		
+		RecordingVisitor visitor = new RecordingVisitor();
+		visitor.pruned = s[1];
+		this.traversal.breadthFirst(s[0], Traversal.UNLIMITED, visitor);
+		Assert.assertEquals(ImmutableList.of(s[0], s[1], s[2], s[4]), visitor.nodes);
+		
+		visitor = new RecordingVisitor();
+		visitor.stopped = s[1];
+		Assert.assertEquals(2, this.traversal.depthFirst(s[0], Traversal.UNLIMITED, visitor));
+	}
+	
+	@Test
+	public void testParentEdgesAreFollowed() throws ModelException {
+		Station s[] = this.createStations(3);
+		s[2].up.set(s[1]);
+		s[1].up.set(s[0]);
+		Traversal<Station> upwards = new Traversal<>(Traversal.parentEdges(new StationUp()));
+		Assert.assertEquals(ImmutableList.of(s[1], s[0]), upwards.closure(s[2]));
+		Assert.assertTrue(upwards.closure(s[0]).isEmpty());
+	}
+	
+	@Test
+	public void testDeepGraphsDoNotOverflowTheStack() throws ModelException {
+		Station s[] = this.createStations(100000);
+		for(int i = 1; i < s.length; i++) {
+			this.link(s[i - 1], s[i]);
+		}
+		Assert.assertEquals(100000, this.traversal.depthFirst(s[0], Traversal.UNLIMITED, new RecordingVisitor()));
+	}
+	
+	private Station[] createStations(int count) {
+		Station stations[] = new Station[count];
+		for(int i = 0; i < count; i++) {
+			stations[i] = new Station();
+			stations[i].setId(i + 1);
+		}
+		return stations;
+	}
+	
+	private void link(Station from, Station to) throws ModelException {
+		from.links.attach(to);
+	}
+}
+
+class Station implements IIdentifiable {
+	final Relation<Station> links = new Relation<>();
+	final Parent<Station> up = new Parent<>();
+	private long id = IIdentifiable.NEUTRAL_ID;
+	
+	@Override
+	public long getId() {
+		return this.id;
+	}
+	
+	@Override
+	public void setId(long id) {
+		this.id = id;
+	}
+}
+
+class StationLinks implements Function<Station, Relation<Station>> {
+	@Override
+	public Relation<Station> apply(Station input) {
+		return input.links;
+	}
+}
+
+class StationUp implements Function<Station, Parent<Station>> {
+	@Override
+	public Parent<Station> apply(Station input) {
+		return input.up;
+	}
+}
+
+class RecordingVisitor implements INodeVisitor<Station> {
+	final List<Station> nodes = new ArrayList<>();
+	final List<Integer> depths = new ArrayList<>();
+	Station pruned;
+	Station stopped;
+	
+	@Override
+	public Traversal.Action visit(Station node, int depth) {
+		this.nodes.add(node);
+		this.depths.add(depth);
+		if(node == this.stopped) {
+			return Traversal.Action.STOP;
+		} else if(node == this.pruned) {
+			return Traversal.Action.PRUNE;
+		}
+		return Traversal.Action.CONTINUE;
+	}
+}
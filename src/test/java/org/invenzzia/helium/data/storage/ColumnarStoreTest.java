@@ -0,0 +1,112 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnarStoreTest {
+	private static final int POSITION = 0;
+	private static final int COUNT = 1;
+	private static final int WEIGHT = 2;
+	
+	@Test
+	public void testReadingAndWritingProperties() {
+		ColumnarStore store = this.createStore(4);
+		long first = store.create();
+		long second = store.create();
+		Assert.assertEquals(1L, first);
+		Assert.assertEquals(2L, second);
+		Assert.assertEquals(3L, store.getNextId());
+		
+		store.setLong(first, POSITION, 1234567890123L);
+		store.setInt(first, COUNT, 42);
+		store.setDouble(second, WEIGHT, 1.5);
+		Assert.assertEquals(1234567890123L, store.getLong(first, POSITION));
+		Assert.assertEquals(42, store.getInt(first, COUNT));
+		Assert.assertEquals(0, store.getInt(second, COUNT));
+		Assert.assertEquals(1.5, store.getDouble(second, WEIGHT), 0.0);
+	}
+	
+	@Test
+	public void testStoreGrowsAndKeepsTheValues() {
+		ColumnarStore store = this.createStore(2);
+		for(int i = 1; i <= 1000; i++) {
+			long id = store.create();
+			store.setInt(id, COUNT, i);
+			store.setDouble(id, WEIGHT, i * 0.5);
+		}
+		Assert.assertEquals(1000, store.size());
+		Assert.assertEquals(500500L, store.sumLong(COUNT));
+		Assert.assertEquals(250250.0, store.sumDouble(WEIGHT), 0.0001);
+		Assert.assertEquals(777, store.getInt(777L, COUNT));
+	}
+	
+	@Test
+	public void testRemovedRecordsAreSkipped() {
+		ColumnarStore store = this.createStore(16);
+		for(int i = 1; i <= 200; i++) {
+			store.setInt(store.create(), COUNT, i);
+		}
+		for(long id = 1; id <= 200; id += 2) {
+			Assert.assertTrue(store.remove(id));
+		}
+		Assert.assertFalse(store.remove(1L));
+		Assert.assertFalse(store.contains(3L));
+		Assert.assertEquals(100, store.size());
+		Assert.assertEquals(10100L, store.sumLong(COUNT));
+		
+		ColumnarStore.Cursor cursor = store.cursor();
+		long expected = 2L;
+		while(cursor.next()) {
+			Assert.assertEquals(expected, cursor.getId());
+			Assert.assertEquals((int) expected, cursor.getInt(COUNT));
+			cursor.setInt(COUNT, 0);
+			expected += 2L;
+		}
+		Assert.assertEquals(202L, expected);
+		Assert.assertEquals(0L, store.sumLong(COUNT));
+	}
+	
+	@Test
+	public void testCursorMovesToTheGivenRecord() {
+		ColumnarStore store = this.createStore(4);
+		store.insert(10L);
+		store.setLong(10L, POSITION, 5L);
+		Assert.assertEquals(11L, store.getNextId());
+		
+		ColumnarStore.Cursor cursor = store.cursor();
+		Assert.assertFalse(cursor.moveTo(9L));
+		Assert.assertTrue(cursor.moveTo(10L));
+		Assert.assertEquals(5L, cursor.getLong(POSITION));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testColumnTypeIsChecked() {
+		ColumnarStore store = this.createStore(4);
+		store.getInt(store.create(), POSITION);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAccessingMissingRecordThrowsException() {
+		ColumnarStore store = this.createStore(4);
+		store.getLong(1L, POSITION);
+	}
+	
+	private ColumnarStore createStore(int capacity) {
+		return new ColumnarStore(capacity, ColumnarStore.ColumnType.LONG, ColumnarStore.ColumnType.INT, ColumnarStore.ColumnType.DOUBLE);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DenseRecordStorageTest {
+	@Test
+	public void testSequentialIdsAreStored() {
+		DenseRecordStorage<String> storage = new DenseRecordStorage<>(2);
+		for(long i = 1; i <= 100; i++) {
+			Assert.assertNull(storage.put(i, "V"+i));
+		}
+		Assert.assertEquals(100, storage.size());
+		Assert.assertEquals("V1", storage.get(1L));
+		Assert.assertEquals("V100", storage.get(100L));
+		Assert.assertNull(storage.get(0L));
+		Assert.assertNull(storage.get(101L));
+	}
+	
+	@Test
+	public void testRemovalLeavesEmptySlots() {
+		DenseRecordStorage<String> storage = new DenseRecordStorage<>();
+		storage.put(1L, "Foo");
+		storage.put(2L, "Bar");
+		storage.put(3L, "Joe");
+		Assert.assertEquals("Bar", storage.remove(2L));
+		Assert.assertNull(storage.remove(2L));
+		Assert.assertEquals(2, storage.size());
+		Assert.assertFalse(storage.containsKey(2L));
+		Assert.assertEquals(ImmutableList.of("Foo", "Joe"), ImmutableList.copyOf(storage));
+	}
+	
+	@Test
+	public void testLowerIdsMoveTheBase() {
+		DenseRecordStorage<String> storage = new DenseRecordStorage<>();
+		storage.put(1000L, "Foo");
+		storage.put(1001L, "Bar");
+		storage.put(998L, "Joe");
+		Assert.assertEquals(3, storage.size());
+		Assert.assertEquals("Joe", storage.get(998L));
+		Assert.assertEquals("Foo", storage.get(1000L));
+		Assert.assertNull(storage.get(999L));
+		Assert.assertEquals(ImmutableList.of("Joe", "Foo", "Bar"), ImmutableList.copyOf(storage));
+	}
+	
+	@Test
+	public void testCompactionReclaimsLeadingSlots() {
+		DenseRecordStorage<String> storage = new DenseRecordStorage<>();
+		for(long i = 1; i <= 1000; i++) {
+			storage.put(i, "V"+i);
+		}
+		for(long i = 1; i <= 990; i++) {
+			storage.remove(i);
+		}
+		storage.compact();
+		Assert.assertEquals(10, storage.size());
+		Assert.assertEquals("V995", storage.get(995L));
+		Assert.assertNull(storage.get(990L));
+		storage.put(5L, "V5");
+		Assert.assertEquals("V5", storage.get(5L));
+		Assert.assertEquals("V995", storage.get(995L));
+	}
+	
+	@Test(timeout = 10000)
+	public void testSparseMiddleDoesNotTriggerCompaction() {
+		DenseRecordStorage<String> storage = new DenseRecordStorage<>();
+		for(long i = 1; i <= 200000; i++) {
+			storage.put(i, "V"+i);
+		}
+		long overhead = storage.estimateOverhead();
+		for(long i = 2; i < 200000; i++) {
+			storage.remove(i);
+		}
+		Assert.assertEquals(2, storage.size());
+		Assert.assertEquals(overhead, storage.estimateOverhead());
+		Assert.assertEquals("V1", storage.get(1L));
+		Assert.assertEquals("V200000", storage.get(200000L));
+		
+		storage.remove(1L);
+		Assert.assertTrue(storage.estimateOverhead() < overhead);
+		Assert.assertEquals("V200000", storage.get(200000L));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNeutralIdIsRejected() {
+		DenseRecordStorage<String> storage = new DenseRecordStorage<>();
+		storage.put(0L, "Foo");
+	}
+}
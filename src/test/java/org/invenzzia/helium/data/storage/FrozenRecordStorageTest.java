@@ -0,0 +1,91 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.invenzzia.helium.data.interfaces.IIdentifiable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrozenRecordStorageTest {
+	@Test
+	public void testFindingSequentialIds() {
+		List<Record> records = new ArrayList<>();
+		for(long i = 1; i <= 1000; i++) {
+			records.add(new Record(i));
+		}
+		FrozenRecordStorage<Record> storage = new FrozenRecordStorage<>(records, records.size());
+		Assert.assertEquals(1000, storage.size());
+		for(long i = 1; i <= 1000; i++) {
+			Assert.assertEquals(i, storage.get(i).getId());
+		}
+		Assert.assertNull(storage.get(0L));
+		Assert.assertNull(storage.get(1001L));
+	}
+	
+	@Test
+	public void testFindingIrregularIds() {
+		List<Record> records = new ArrayList<>();
+		for(long i = 1; i <= 500; i++) {
+			records.add(new Record(i * i * 37));
+		}
+		records.add(new Record(Long.MAX_VALUE - 1));
+		records.add(new Record(2L));
+		FrozenRecordStorage<Record> storage = new FrozenRecordStorage<>(records, records.size());
+		for(Record record: records) {
+			Assert.assertSame(record, storage.get(record.getId()));
+		}
+		Assert.assertFalse(storage.containsKey(38L));
+		Assert.assertFalse(storage.containsKey(Long.MAX_VALUE));
+		
+		long previous = Long.MIN_VALUE;
+		for(Record record: storage) {
+			Assert.assertTrue(previous < record.getId());
+			previous = record.getId();
+		}
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testModificationsAreRejected() {
+		FrozenRecordStorage<Record> storage = new FrozenRecordStorage<>(ImmutableList.of(new Record(1L)), 1);
+		storage.put(2L, new Record(2L));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicatedIdsAreRejected() {
+		new FrozenRecordStorage<>(ImmutableList.of(new Record(3L), new Record(1L), new Record(3L)), 3);
+	}
+}
+
+class Record implements IIdentifiable {
+	private long id;
+	
+	public Record(long id) {
+		this.id = id;
+	}
+	
+	@Override
+	public long getId() {
+		return this.id;
+	}
+	
+	@Override
+	public void setId(long id) {
+		this.id = id;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IdBitSetTest {
+	@Test
+	public void testAddingAndCheckingIds() {
+		IdBitSet set = new IdBitSet();
+		Assert.assertTrue(set.add(1L));
+		Assert.assertTrue(set.add(64L));
+		Assert.assertTrue(set.add(100000L));
+		Assert.assertFalse(set.add(64L));
+		Assert.assertEquals(3, set.cardinality());
+		Assert.assertTrue(set.contains(100000L));
+		Assert.assertFalse(set.contains(63L));
+		Assert.assertFalse(set.contains(-1L));
+		Assert.assertFalse(set.contains(1L << 40));
+		set.clear();
+		Assert.assertEquals(0, set.cardinality());
+		Assert.assertFalse(set.contains(1L));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeIdsAreRejected() {
+		new IdBitSet(128L).add(-5L);
+	}
+}
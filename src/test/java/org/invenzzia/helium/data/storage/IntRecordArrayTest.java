@@ -0,0 +1,59 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntRecordArrayTest {
+	@Test
+	public void testSequentialNumbersAreStored() {
+		IntRecordArray<String> storage = new IntRecordArray<>(2);
+		for(int i = 1; i <= 100; i++) {
+			Assert.assertNull(storage.put(i, "V"+i));
+		}
+		Assert.assertEquals(100, storage.size());
+		Assert.assertEquals("V1", storage.get(1));
+		Assert.assertEquals("V100", storage.get(100));
+		Assert.assertNull(storage.get(0));
+		Assert.assertNull(storage.get(-5));
+		Assert.assertNull(storage.get(101));
+	}
+	
+	@Test
+	public void testRemovalLeavesEmptySlots() {
+		IntRecordArray<String> storage = new IntRecordArray<>();
+		storage.put(1, "Foo");
+		storage.put(2, "Bar");
+		storage.put(3, "Joe");
+		Assert.assertEquals("Bar", storage.remove(2));
+		Assert.assertNull(storage.remove(2));
+		Assert.assertEquals(2, storage.size());
+		Assert.assertFalse(storage.containsKey(2));
+		Assert.assertEquals(ImmutableList.of("Foo", "Joe"), ImmutableList.copyOf(storage));
+		Assert.assertEquals("Joe", storage.remove(3));
+		storage.compact();
+		Assert.assertEquals(ImmutableList.of("Foo"), ImmutableList.copyOf(storage));
+		storage.put(5, "Moe");
+		Assert.assertEquals(ImmutableList.of("Foo", "Moe"), ImmutableList.copyOf(storage));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNeutralNumberIsRejected() {
+		new IntRecordArray<String>().put(0, "Foo");
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Helium - a set of useful stuff for java.
+ * 
+ * Helium is free software: you can redistribute it and/or modify
+ * it under the terms of the New BSD license as published by
+ * Invenzzia Group.
+ *
+ * Helium is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the new BSD license
+ * along with Helium. If not, see <http://invenzzia.org/license/new-bsd>.
+ */
+package org.invenzzia.helium.data.storage;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongRecordMapTest {
+	@Test
+	public void testPuttingAndGettingValues() {
+		LongRecordMap<String> map = new LongRecordMap<>();
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertNull(map.put(1L, "Foo"));
+		Assert.assertNull(map.put(2L, "Bar"));
+		Assert.assertEquals(2, map.size());
+		Assert.assertEquals("Foo", map.get(1L));
+		Assert.assertEquals("Bar", map.get(2L));
+		Assert.assertNull(map.get(3L));
+		Assert.assertTrue(map.containsKey(2L));
+		Assert.assertFalse(map.containsKey(3L));
+	}
+	
+	@Test
+	public void testReplacingValueKeepsThePosition() {
+		LongRecordMap<String> map = new LongRecordMap<>();
+		map.put(1L, "Foo");
+		map.put(2L, "Bar");
+		Assert.assertEquals("Foo", map.put(1L, "Joe"));
+		Assert.assertEquals(2, map.size());
+		Assert.assertEquals(ImmutableList.of("Joe", "Bar"), ImmutableList.copyOf(map));
+	}
+	
+	@Test
+	public void testInsertionOrderSurvivesRemovalsAndGrowth() {
+		LongRecordMap<Long> map = new LongRecordMap<>(2);
+		for(long i = 1; i <= 1000; i++) {
+			map.put(i * 1024, i);
+		}
+		for(long i = 1; i <= 1000; i += 2) {
+			Assert.assertEquals(Long.valueOf(i), map.remove(i * 1024));
+		}
+		for(long i = 1001; i <= 1500; i++) {
+			map.put(i * 1024, i);
+		}
+		Assert.assertEquals(1000, map.size());
+		
+		long expected = 2;
+		for(Long value: map) {
+			Assert.assertEquals(expected, value.longValue());
+			expected += (expected < 1000 ? 2 : 1);
+		}
+		Assert.assertEquals(1501L, expected);
+		for(long i = 1; i <= 1000; i++) {
+			Assert.assertEquals(i % 2 == 0, map.containsKey(i * 1024));
+		}
+	}
+	
+	@Test
+	public void testRemovingMissingKeyReturnsNull() {
+		LongRecordMap<String> map = new LongRecordMap<>();
+		map.put(5L, "Foo");
+		Assert.assertNull(map.remove(6L));
+		Assert.assertEquals("Foo", map.remove(5L));
+		Assert.assertNull(map.remove(5L));
+		Assert.assertTrue(map.isEmpty());
+	}
+	
+	@Test
+	public void testCompactionKeepsTheContent() {
+		LongRecordMap<String> map = new LongRecordMap<>();
+		for(long i = 1; i <= 100; i++) {
+			map.put(i, "V"+i);
+		}
+		for(long i = 1; i <= 90; i++) {
+			map.remove(i);
+		}
+		map.compact();
+		Assert.assertEquals(10, map.size());
+		List<String> values = ImmutableList.copyOf(map.values());
+		Assert.assertEquals("V91", values.get(0));
+		Assert.assertEquals("V100", values.get(9));
+		Assert.assertEquals("V95", map.get(95L));
+	}
+	
+	@Test(expected = ConcurrentModificationException.class)
+	public void testModificationDuringIterationIsDetected() {
+		LongRecordMap<String> map = new LongRecordMap<>();
+		map.put(1L, "Foo");
+		map.put(2L, "Bar");
+		Iterator<String> it = map.iterator();
+		it.next();
+		map.put(3L, "Joe");
+		it.next();
+	}
+	
+	@Test(expected = NullPointerException.class)
+	public void testNullValuesAreRejected() {
+		LongRecordMap<String> map = new LongRecordMap<>();
+		map.put(1L, null);
+	}
+}
@@ -15,9 +15,12 @@
  */
 package org.invenzzia.helium.history;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import java.util.List;
 import org.invenzzia.helium.annotations.CommandDetails;
+import org.invenzzia.helium.data.Footprint;
+import org.invenzzia.helium.data.FootprintEstimator;
 import org.invenzzia.helium.exception.CommandExecutionException;
 import org.junit.Assert;
 import org.junit.Test;
@@ -190,6 +193,25 @@ public class HistoryTest {
 		Assert.assertFalse(info.get(2).isBase());
 	}
 	
+	@Test
+	public void testFootprintIncludesCommands() throws CommandExecutionException {
+		History<ICommand> history = new History<>(new TestHistoryStrategy(), mock(EventBus.class));
+		history.setMaximumCapacity(100);
+		ICommand cmd1 = new HistoryTest.SampleCmd1();
+		ICommand cmd2 = new HistoryTest.SampleCmd2();
+		history.execute(cmd1);
+		history.execute(cmd2);
+		history.undo();
+		
+		Assert.assertEquals(ImmutableList.of(cmd1, cmd2), ImmutableList.copyOf(history.getCommands()));
+		FootprintEstimator estimator = new FootprintEstimator();
+		estimator.setDefaultSize(100L);
+		Footprint footprint = estimator.estimate("history", history);
+		Assert.assertEquals(2L, footprint.getEntryNum());
+		Assert.assertEquals(200L, footprint.getComponent("commands").getBytes());
+		Assert.assertTrue(footprint.getTotalBytes() > 200L);
+	}
+	
 	@Test
 	public void testOldHistoryIsDiscarded() throws CommandExecutionException {
 		History<ICommand> history = new History<>(new TestHistoryStrategy(), mock(EventBus.class));